@@ -0,0 +1,138 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.ExtraPinMode;
+import mcbmini.functions.SineFunction;
+import mcbmini.serial.SimulatedBus;
+
+/**
+ * Allocation regression check for the control loop, the control loop is supposed to run without allocating so that
+ * the GC never gets a reason to pause it.
+ *
+ * Drives a server over a SimulatedBus with no update thread, the harness calls internalUpdate() itself (that is the
+ * tick thread, it writes the frames and decodes the responses) followed by update() (the user thread, it hands out
+ * the responses). Both are measured with the per thread allocation counter of the JVM and the run fails if either
+ * goes over the ceiling on average. Needs a HotSpot based JVM, it is a development tool and never loaded by the server.
+ *
+ * Usage: AllocationHarness [ticks] [max bytes per tick]
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class AllocationHarness {
+
+	public static final int DEFAULT_TICKS = 20000;
+	public static final long DEFAULT_MAX_BYTES_PER_TICK = 64;
+
+	private static final int NR_BOARDS = 4;
+	private static final float UPDATE_RATE = 50f;
+	private static final int WARMUP_TICKS = 5000;
+	private static final int MAX_INITIALIZATION_TICKS = 1000;
+
+	public static void main(String[] args) throws Exception {
+		int ticks = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TICKS;
+		long max_bytes_per_tick = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_MAX_BYTES_PER_TICK;
+
+		java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if( !(mx instanceof com.sun.management.ThreadMXBean) ){
+			System.err.println("This JVM doesn't count allocations per thread");
+			System.exit(2);
+		}
+		com.sun.management.ThreadMXBean thread_mx = (com.sun.management.ThreadMXBean)mx;
+		if( !thread_mx.isThreadAllocatedMemorySupported() ){
+			System.err.println("This JVM doesn't count allocations per thread");
+			System.exit(2);
+		}
+		thread_mx.setThreadAllocatedMemoryEnabled(true);
+		long thread_id = Thread.currentThread().getId();
+
+		ArrayList<MCBMiniBoard> boards = new ArrayList<MCBMiniBoard>();
+		for(int i=0; i<NR_BOARDS; i++){
+			MCBMiniBoard board = new MCBMiniBoard(i+1);
+			board.setTargetFunction(Channel.A, new SineFunction(512, 200, 1000 + 250*i, 0));
+			boards.add(board);
+		}
+		boards.get(0).setExtraPinMode(Channel.A, ExtraPinMode.ANALOG);
+
+		SimulatedBus bus = new SimulatedBus(18);
+		MCBMiniServer server = new MCBMiniServer(new MCBMiniSerialManager(bus), boards, UPDATE_RATE, false);
+
+		int init_ticks = 0;
+		while( !server.isFirmwareConfirmed() ){
+			server.internalUpdate();
+			server.update();
+			if( ++init_ticks > MAX_INITIALIZATION_TICKS ){
+				System.err.println("The simulated boards never confirmed their firmware");
+				System.exit(2);
+			}
+		}
+
+		for(int i=0; i<WARMUP_TICKS; i++){
+			server.internalUpdate();
+			server.update();
+		}
+
+		// What reading the counter costs by itself
+		long overhead = thread_mx.getThreadAllocatedBytes(thread_id);
+		overhead = thread_mx.getThreadAllocatedBytes(thread_id) - overhead;
+
+		long tick_bytes = 0, update_bytes = 0;
+		long tick_worst = 0, update_worst = 0;
+		for(int i=0; i<ticks; i++){
+			long before = thread_mx.getThreadAllocatedBytes(thread_id);
+			server.internalUpdate();
+			long middle = thread_mx.getThreadAllocatedBytes(thread_id);
+			server.update();
+			long after = thread_mx.getThreadAllocatedBytes(thread_id);
+
+			long tick = Math.max(0, middle - before - overhead);
+			long update = Math.max(0, after - middle - overhead);
+			tick_bytes += tick;
+			update_bytes += update;
+			tick_worst = Math.max(tick_worst, tick);
+			update_worst = Math.max(update_worst, update);
+		}
+
+		double tick_avg = tick_bytes / (double)ticks;
+		double update_avg = update_bytes / (double)ticks;
+		System.out.println(String.format("%d ticks, %d boards, %d packets written, %d answered", ticks, NR_BOARDS, bus.getPacketsWritten(), bus.getPacketsAnswered()));
+		System.out.println(String.format("tick thread:   %.1f bytes/tick (worst tick %d bytes)", tick_avg, tick_worst));
+		System.out.println(String.format("update thread: %.1f bytes/tick (worst tick %d bytes)", update_avg, update_worst));
+
+		if( tick_avg > max_bytes_per_tick || update_avg > max_bytes_per_tick ){
+			System.out.println("FAILED, the ceiling is "+max_bytes_per_tick+" bytes/tick");
+			System.exit(1);
+		}
+		System.out.println("OK, the ceiling is "+max_bytes_per_tick+" bytes/tick");
+		System.exit(0);
+	}
+}
@@ -40,13 +40,13 @@ import java.util.ArrayList;
 import java.util.Properties;
 
 import mcbmini.serial.SerialEventHandler;
-import mcbmini.serial.iSerial;
+import mcbmini.serial.TimestampedSerial;
 
 /**
  * @author asetapen
  * @date Jul 18, 2011
  */
-public class AndroidIOIOPSerial implements iSerial {
+public class AndroidIOIOPSerial implements TimestampedSerial {
 
 	private int ioio_rx_pin;
 	private int ioio_tx_pin;
@@ -69,8 +69,11 @@ public class AndroidIOIOPSerial implements iSerial {
 	private ArrayList<SerialEventHandler> event_handlers;
 
 	byte buffer[] = new byte[32768];
+	// When each byte in buffer came in
+	long arrival_ns[] = new long[32768];
 	int bufferIndex;
 	int bufferLast;
+	long last_read_ns;
 
 	// defaults
 	static int drate = 115200;
@@ -154,6 +157,7 @@ public class AndroidIOIOPSerial implements iSerial {
 		if (bufferIndex == bufferLast) return -1;
 
 		synchronized (buffer) {
+			last_read_ns = arrival_ns[bufferIndex];
 			byte outgoing = buffer[bufferIndex++];
 			if (bufferIndex == bufferLast) {  // rewind
 				bufferIndex = 0;
@@ -163,6 +167,10 @@ public class AndroidIOIOPSerial implements iSerial {
 		}
 	}
 
+	public long getLastReadNanos() {
+		return last_read_ns;
+	}
+
 	public void write(byte bytes[]) throws IOException {
 		write(bytes, 0, bytes.length);
 	}
@@ -258,8 +266,13 @@ public class AndroidIOIOPSerial implements iSerial {
 							byte temp[] = new byte[bufferLast << 1];
 							System.arraycopy(buffer, 0, temp, 0, bufferLast);
 							buffer = temp;
+							long temp_ns[] = new long[bufferLast << 1];
+							System.arraycopy(arrival_ns, 0, temp_ns, 0, bufferLast);
+							arrival_ns = temp_ns;
 						}
-						buffer[bufferLast++] = (byte) input.read();
+						byte in = (byte) input.read();
+						arrival_ns[bufferLast] = System.nanoTime();
+						buffer[bufferLast++] = in;
 					}
 					// Here we notify all handlers
 					synchronized (event_handlers) {
@@ -0,0 +1,335 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import mcbmini.MCBMiniConstants.Command;
+import mcbmini.utils.RateMeter;
+import mcbmini.utils.RateMeter.Snapshot;
+import mcbmini.utils.RateMeter.Window;
+
+/**
+ * Accounts for where the bytes on the bus go, in both directions: payload (data, command and id bytes),
+ * escape bytes, 0xAA headers, checksums, the zero padding of short master packets and (RX only) bytes that were
+ * thrown away because they didn't form a valid packet. Wire bytes are also counted per command.
+ *
+ * The boards share one half duplex RS485 bus with the host, so the utilization counts TX and RX bytes together
+ * at 10 bits per byte (8N1) against the baud rate. From the bytes of an average tick it also estimates how high the
+ * update rate could go, and how many more boards like the current ones would fit at the current rate.
+ *
+ * Only the serial manager writes (from the update thread), the counters are single writer AtomicLongArrays
+ * so anyone can read them without a lock.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class BusAccounting {
+
+	public enum Category { PAYLOAD, ESCAPE, HEADER, CHECKSUM, PADDING, DISCARDED }
+
+	public static final int BITS_PER_BYTE = 10;
+
+	private static final Category[] CATEGORIES = Category.values();
+	private static final Command[] COMMANDS = Command.values();
+
+	private final int baud_rate;
+
+	private final AtomicLongArray tx_bytes = new AtomicLongArray(CATEGORIES.length);
+	private final AtomicLongArray rx_bytes = new AtomicLongArray(CATEGORIES.length);
+	private final AtomicLongArray tx_command_bytes = new AtomicLongArray(COMMANDS.length);
+	private final AtomicLongArray rx_command_bytes = new AtomicLongArray(COMMANDS.length);
+
+	// The bytes of the tick in progress and of the last completed one
+	private int tick_tx_bytes;
+	private int tick_rx_bytes;
+	private long last_tick_end_ns;
+	private volatile long tick_period_ns;
+	private volatile int last_tick_tx_bytes;
+	private volatile int last_tick_rx_bytes;
+	private volatile float last_tick_utilization;
+
+	// Per tick wire bytes (TX+RX) and utilization in per mille
+	private final RateMeter tick_bytes_meter = new RateMeter("bus.tick_bytes", true);
+	private final RateMeter utilization_meter = new RateMeter("bus.utilization", true);
+
+	public BusAccounting(int baud_rate){
+		this.baud_rate = baud_rate;
+	}
+
+	public int getBaudRate(){
+		return baud_rate;
+	}
+
+	/**
+	 * @return the bytes per second that the bus can carry
+	 */
+	public float getBytesPerSecondCapacity(){
+		return baud_rate / (float)BITS_PER_BYTE;
+	}
+
+	/**
+	 * Ticks are accounted over at least this period, so that two bursts in quick succession don't look like an overloaded bus
+	 */
+	public void setTickPeriodNanos(long tick_period_ns){
+		this.tick_period_ns = tick_period_ns;
+	}
+
+	/*
+	 * Accounting, only called by the serial manager from the update thread
+	 */
+
+	/**
+	 * @param command the command of the sub command
+	 * @param payload the data, command and id bytes
+	 * @param escapes the escape bytes, including one for the checksum if it needed escaping
+	 * @param padding the zero bytes that were added after the sub command
+	 */
+	void txSubCommand(Command command, int payload, int escapes, int padding){
+		add(tx_bytes, Category.PAYLOAD.ordinal(), payload);
+		add(tx_bytes, Category.ESCAPE.ordinal(), escapes);
+		add(tx_bytes, Category.HEADER.ordinal(), 1);
+		add(tx_bytes, Category.CHECKSUM.ordinal(), 1);
+		add(tx_bytes, Category.PADDING.ordinal(), padding);
+		int total = payload + escapes + 2 + padding;
+		if( command != null ) add(tx_command_bytes, command.ordinal(), total);
+		tick_tx_bytes += total;
+	}
+
+	/**
+	 * A packet that passed the size and checksum checks
+	 */
+	void rxPacket(Command command, int payload, int escapes){
+		add(rx_bytes, Category.PAYLOAD.ordinal(), payload);
+		add(rx_bytes, Category.CHECKSUM.ordinal(), 1);
+		if( command != null ) add(rx_command_bytes, command.ordinal(), payload + escapes + 2);
+	}
+
+	void rxHeader(){
+		add(rx_bytes, Category.HEADER.ordinal(), 1);
+		tick_rx_bytes++;
+	}
+
+	void rxEscape(){
+		add(rx_bytes, Category.ESCAPE.ordinal(), 1);
+		tick_rx_bytes++;
+	}
+
+	/**
+	 * @param data_bytes the unescaped non header bytes that were read, whether they end up in a packet or not
+	 */
+	void rxData(int data_bytes){
+		tick_rx_bytes += data_bytes;
+	}
+
+	void rxDiscarded(int bytes){
+		add(rx_bytes, Category.DISCARDED.ordinal(), bytes);
+	}
+
+	/**
+	 * Closes the tick when its TX buffer goes out, the RX bytes are the ones decoded since the last one
+	 */
+	void endTick(long now_ns){
+		int wire_bytes = tick_tx_bytes + tick_rx_bytes;
+		last_tick_tx_bytes = tick_tx_bytes;
+		last_tick_rx_bytes = tick_rx_bytes;
+		tick_tx_bytes = 0;
+		tick_rx_bytes = 0;
+
+		if( last_tick_end_ns != 0 && now_ns > last_tick_end_ns ){
+			long elapsed_ns = Math.max(now_ns - last_tick_end_ns, tick_period_ns);
+			double capacity = baud_rate / (double)BITS_PER_BYTE * elapsed_ns / 1.0E9;
+			float utilization = (float)(wire_bytes / capacity);
+			last_tick_utilization = utilization;
+			utilization_meter.record(Math.round(utilization * 1000));
+		}
+		last_tick_end_ns = now_ns;
+		tick_bytes_meter.record(wire_bytes);
+	}
+
+	private static void add(AtomicLongArray counters, int index, long n){
+		if( n != 0 ) counters.lazySet(index, counters.get(index) + n);
+	}
+
+	/*
+	 * Reading
+	 */
+
+	public long getTxBytes(Category category){
+		return tx_bytes.get(category.ordinal());
+	}
+
+	public long getRxBytes(Category category){
+		return rx_bytes.get(category.ordinal());
+	}
+
+	public long getTxBytes(){
+		return sum(tx_bytes);
+	}
+
+	public long getRxBytes(){
+		return sum(rx_bytes);
+	}
+
+	/**
+	 * @return the wire bytes (including escapes, header, checksum and padding) of the sub commands sent with this command
+	 */
+	public long getTxBytes(Command command){
+		return tx_command_bytes.get(command.ordinal());
+	}
+
+	/**
+	 * @return the wire bytes of the valid packets received with this command
+	 */
+	public long getRxBytes(Command command){
+		return rx_command_bytes.get(command.ordinal());
+	}
+
+	/**
+	 * @return the fraction of all the bytes on the bus (both directions) that belonged to this command
+	 */
+	public float getCommandShare(Command command){
+		long total = getTxBytes() + getRxBytes();
+		if( total == 0 ) return 0;
+		return (getTxBytes(command) + getRxBytes(command)) / (float)total;
+	}
+
+	/**
+	 * @return the fraction of the TX bytes that were payload
+	 */
+	public float getTxEfficiency(){
+		long total = getTxBytes();
+		return total == 0 ? 0 : getTxBytes(Category.PAYLOAD) / (float)total;
+	}
+
+	public int getLastTickTxBytes(){
+		return last_tick_tx_bytes;
+	}
+
+	public int getLastTickRxBytes(){
+		return last_tick_rx_bytes;
+	}
+
+	/**
+	 * @return the fraction of the bus capacity used between the last two TX bursts
+	 */
+	public float getLastTickUtilization(){
+		return last_tick_utilization;
+	}
+
+	/**
+	 * @return the meter of the per tick utilization, its values are in per mille
+	 */
+	public RateMeter getUtilizationMeter(){
+		return utilization_meter;
+	}
+
+	/**
+	 * @return the mean fraction of the bus capacity used over the window
+	 */
+	public float getUtilization(Window window){
+		return (float)(utilization_meter.getSnapshot(window).mean / 1000.0);
+	}
+
+	/**
+	 * @return the fraction of the bus capacity left over the window
+	 */
+	public float getHeadroom(Window window){
+		return Math.max(0, 1 - getUtilization(window));
+	}
+
+	/**
+	 * @return the average TX+RX bytes of a tick over the window
+	 */
+	public double getMeanTickBytes(Window window){
+		return tick_bytes_meter.getSnapshot(window).mean;
+	}
+
+	/**
+	 * @return the update rate at which the average tick of the window would fill the bus, 0 if unknown
+	 */
+	public float getMaxUpdateRate(Window window){
+		double tick_bytes = getMeanTickBytes(window);
+		if( tick_bytes <= 0 ) return 0;
+		return (float)(getBytesPerSecondCapacity() / tick_bytes);
+	}
+
+	/**
+	 * @param nr_boards the number of boards on the bus now
+	 * @param update_rate the update rate the bus runs at
+	 * @return how many boards like the current ones the bus could carry at that rate, 0 if unknown
+	 */
+	public int getMaxBoards(int nr_boards, float update_rate, Window window){
+		double tick_bytes = getMeanTickBytes(window);
+		if( tick_bytes <= 0 || nr_boards <= 0 ) return 0;
+		double bytes_per_board = tick_bytes / nr_boards;
+		return (int)Math.floor(getBytesPerSecondCapacity() / update_rate / bytes_per_board);
+	}
+
+	/**
+	 * @return a human readable summary over the last 10 seconds
+	 */
+	public String getReport(int nr_boards, float update_rate){
+		Window window = Window.TEN_SECONDS;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "Bus at %d baud, utilization %.1f%% (headroom %.1f%%), last tick %d TX + %d RX bytes%n",
+				baud_rate, 100 * getUtilization(window), 100 * getHeadroom(window), last_tick_tx_bytes, last_tick_rx_bytes));
+		Snapshot utilization = utilization_meter.getSnapshot(window);
+		sb.append(String.format(Locale.ROOT, "Per tick utilization p50 %.1f%% p99 %.1f%% max %.1f%%%n",
+				utilization.p50 / 10.0, utilization.p99 / 10.0, utilization.max / 10.0));
+		sb.append(String.format(Locale.ROOT, "At %.1f bytes per tick the bus fills at %.0f Hz, at %.0f Hz it fits %d boards like the current %d%n",
+				getMeanTickBytes(window), getMaxUpdateRate(window), update_rate, getMaxBoards(nr_boards, update_rate, window), nr_boards));
+
+		appendCategories(sb, "TX", tx_bytes);
+		appendCategories(sb, "RX", rx_bytes);
+
+		sb.append("Share of bus bytes by command:");
+		for (Command command : COMMANDS) {
+			float share = getCommandShare(command);
+			if( share > 0 ) sb.append(String.format(Locale.ROOT, " %s %.1f%%", command, 100 * share));
+		}
+		sb.append(String.format("%n"));
+		return sb.toString();
+	}
+
+	private static void appendCategories(StringBuilder sb, String direction, AtomicLongArray counters){
+		long total = sum(counters);
+		sb.append(direction).append(' ').append(total).append(" bytes:");
+		for (Category category : CATEGORIES) {
+			long bytes = counters.get(category.ordinal());
+			sb.append(String.format(Locale.ROOT, " %s %.1f%%", category.name().toLowerCase(Locale.ROOT), total == 0 ? 0 : 100.0 * bytes / total));
+		}
+		sb.append(String.format("%n"));
+	}
+
+	private static long sum(AtomicLongArray counters){
+		long sum = 0;
+		for(int i=0; i<counters.length(); i++) sum += counters.get(i);
+		return sum;
+	}
+}
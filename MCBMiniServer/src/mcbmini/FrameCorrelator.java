@@ -0,0 +1,312 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.Command;
+
+/**
+ * Ties every decoded response to the packet that asked for it. Every TX buffer is stamped with the server tick
+ * sequence it went out on (MCBMiniServer.getTickSequence(), the same number telemetry batches, motion groups and the
+ * JFR tick events carry), every packet that asks for a response leaves an expected-response record, and every decoded
+ * response closes the oldest open record of its board with the same command. Records that get passed over or that
+ * stay open for longer than the response window are lost, responses nobody asked for are unexpected.
+ *
+ * The bookkeeping lives on the update thread, which both writes the packets and decodes the responses, so it needs no
+ * locks. The outcomes go into per board counters and into a ring of the last TRACE_CAPACITY correlation records that
+ * any thread can read (getRecords(), dump()) without stopping the update thread.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class FrameCorrelator {
+
+	public enum Outcome{ MATCHED, LOST, UNEXPECTED }
+
+	/**
+	 * One closed expected-response record (or an unexpected response), immutable
+	 */
+	public static class Record{
+		// The server tick sequence of the TX buffer, -1 if the record was dropped before the buffer went out
+		public final long tx_sequence;
+		public final int board_id;
+		public final Channel channel;
+		public final Command command;
+		public final Outcome outcome;
+		public final long sent_ns;
+		public final long received_ns;
+
+		private Record(long tx_sequence, int board_id, Channel channel, Command command, Outcome outcome, long sent_ns, long received_ns){
+			this.tx_sequence = tx_sequence;
+			this.board_id = board_id;
+			this.channel = channel;
+			this.command = command;
+			this.outcome = outcome;
+			this.sent_ns = sent_ns;
+			this.received_ns = received_ns;
+		}
+
+		/**
+		 * @return the time from the TX buffer going out to the response being decoded, -1 unless matched
+		 */
+		public long getLatencyNanos(){
+			return outcome == Outcome.MATCHED ? received_ns - sent_ns : -1;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("tx ").append(tx_sequence).append(" board ").append(board_id).append(' ').append(channel).append(' ').append(command).append(' ').append(outcome);
+			if( outcome == Outcome.MATCHED ) sb.append(' ').append(getLatencyNanos() / 1000).append("us");
+			return sb.toString();
+		}
+	}
+
+	public static final int TRACE_CAPACITY = 1024;
+	private static final int TRACE_MASK = TRACE_CAPACITY - 1;
+	private static final int TRACE_FIELDS = 4;
+
+	private static final int NR_IDS = 128;
+	// Open records per board, a board that has more than this outstanding loses the oldest
+	private static final int PENDING_CAPACITY = 16;
+	private static final int SENT_HISTORY = 64;
+	private static final int DEFAULT_RESPONSE_WINDOW = 3;
+	// The open records of the TX buffer that is being built, they get the tick sequence when it goes out
+	private static final long UNSENT = -1;
+
+	private static final Command[] COMMANDS = Command.values();
+	private static final Channel[] CHANNELS = Channel.values();
+	private static final Outcome[] OUTCOMES = Outcome.values();
+
+	// Open records, only touched by the update thread
+	private final long[] pending_tx = new long[NR_IDS * PENDING_CAPACITY];
+	private final int[] pending_info = new int[NR_IDS * PENDING_CAPACITY];
+	private final int[] pending_head = new int[NR_IDS];
+	private final int[] pending_size = new int[NR_IDS];
+	private final long[] tx_sent_ns = new long[SENT_HISTORY];
+	private volatile long tx_sequence;
+	private volatile int response_window = DEFAULT_RESPONSE_WINDOW;
+
+	// Outcomes per board id
+	private final AtomicLongArray expected = new AtomicLongArray(NR_IDS);
+	private final AtomicLongArray matched = new AtomicLongArray(NR_IDS);
+	private final AtomicLongArray lost = new AtomicLongArray(NR_IDS);
+	private final AtomicLongArray unexpected = new AtomicLongArray(NR_IDS);
+
+	// The trace ring, a slot is consistent while its published sequence is the same before and after reading it
+	private final AtomicLongArray trace = new AtomicLongArray(TRACE_CAPACITY * TRACE_FIELDS);
+	private final AtomicLongArray published = new AtomicLongArray(TRACE_CAPACITY);
+	private volatile long trace_head;
+
+	FrameCorrelator(){
+		for(int i=0; i<TRACE_CAPACITY; i++) published.set(i, -1);
+	}
+
+	/*
+	 * Writers, update thread only
+	 */
+
+	/**
+	 * A packet asking for a response was put into the TX buffer that is being built
+	 */
+	void expect(int board_id, Channel channel, Command command){
+		int id = board_id & (NR_IDS-1);
+		expected.incrementAndGet(id);
+		if( pending_size[id] == PENDING_CAPACITY ) closeOldest(id, Outcome.LOST, 0);
+		int slot = id * PENDING_CAPACITY + (pending_head[id] + pending_size[id]) % PENDING_CAPACITY;
+		pending_tx[slot] = UNSENT;
+		pending_info[slot] = info(id, channel, command, Outcome.MATCHED);
+		pending_size[id]++;
+	}
+
+	/**
+	 * The TX buffer went out, records that have been open for longer than the response window are lost
+	 * @param seq the server tick sequence the buffer went out on
+	 */
+	void endTx(long seq, long now_ns){
+		tx_sent_ns[(int)(seq % SENT_HISTORY)] = now_ns;
+		tx_sequence = seq;
+
+		long oldest_allowed = seq - response_window;
+		for(int id=0; id<NR_IDS; id++){
+			int base = id * PENDING_CAPACITY;
+			for(int k=0; k<pending_size[id]; k++){
+				int slot = base + (pending_head[id] + k) % PENDING_CAPACITY;
+				if( pending_tx[slot] == UNSENT ) pending_tx[slot] = seq;
+			}
+			while( pending_size[id] > 0 && pending_tx[base + pending_head[id]] < oldest_allowed ){
+				closeOldest(id, Outcome.LOST, 0);
+			}
+		}
+	}
+
+	/**
+	 * A response was decoded, it closes the oldest open record of the board with the same command. Boards answer in
+	 * order so the open records in front of it were lost.
+	 */
+	void received(int board_id, Channel channel, Command command, long received_ns){
+		int id = board_id & (NR_IDS-1);
+		int size = pending_size[id];
+		int head = pending_head[id];
+		int k = 0;
+		while( k < size && commandOf(pending_info[id * PENDING_CAPACITY + (head + k) % PENDING_CAPACITY]) != command ) k++;
+
+		if( k == size ){
+			unexpected.incrementAndGet(id);
+			trace(tx_sequence, info(id, channel, command, Outcome.UNEXPECTED), 0, received_ns);
+			return;
+		}
+		for(int i=0; i<k; i++) closeOldest(id, Outcome.LOST, 0);
+		closeOldest(id, Outcome.MATCHED, received_ns);
+	}
+
+	private void closeOldest(int id, Outcome outcome, long received_ns){
+		int slot = id * PENDING_CAPACITY + pending_head[id];
+		long tx = pending_tx[slot];
+		int info = (pending_info[slot] & 0x00ffffff) | (outcome.ordinal() << 24);
+		pending_head[id] = (pending_head[id] + 1) % PENDING_CAPACITY;
+		pending_size[id]--;
+
+		if( outcome == Outcome.MATCHED ) matched.incrementAndGet(id);
+		else lost.incrementAndGet(id);
+		long sent_ns = tx != UNSENT && tx <= tx_sequence && tx_sequence - tx < SENT_HISTORY ? tx_sent_ns[(int)(tx % SENT_HISTORY)] : 0;
+		trace(tx, info, sent_ns, received_ns);
+	}
+
+	private void trace(long tx, int info, long sent_ns, long received_ns){
+		long seq = trace_head;
+		int slot = (int)(seq & TRACE_MASK);
+		published.set(slot, -1);
+		int base = slot * TRACE_FIELDS;
+		trace.set(base, tx);
+		trace.set(base+1, info);
+		trace.set(base+2, sent_ns);
+		trace.set(base+3, received_ns);
+		published.set(slot, seq);
+		trace_head = seq + 1;
+	}
+
+	// Board id in the low byte, then channel (0xff for none), command and outcome
+	private static int info(int id, Channel channel, Command command, Outcome outcome){
+		int ch = channel == null ? 0xff : channel.ordinal();
+		int cmd = command == null ? 0xff : command.ordinal();
+		return id | (ch << 8) | (cmd << 16) | (outcome.ordinal() << 24);
+	}
+
+	private static Command commandOf(int info){
+		int cmd = (info >> 16) & 0xff;
+		return cmd == 0xff ? null : COMMANDS[cmd];
+	}
+
+	/*
+	 * Readers, any thread
+	 */
+
+	/**
+	 * @param window how many ticks a response may take to come back before its record counts as lost, defaults to 3
+	 */
+	public void setResponseWindow(int window){
+		if( window < 1 || window >= SENT_HISTORY ) throw new IllegalArgumentException("Response window must be within 1 and "+(SENT_HISTORY-1));
+		this.response_window = window;
+	}
+
+	public int getResponseWindow(){
+		return response_window;
+	}
+
+	/**
+	 * @return the server tick sequence of the last TX buffer that went out
+	 */
+	public long getTxSequence(){
+		return tx_sequence;
+	}
+
+	public long getExpected(int board_id){ return expected.get(board_id & (NR_IDS-1)); }
+	public long getMatched(int board_id){ return matched.get(board_id & (NR_IDS-1)); }
+	public long getLost(int board_id){ return lost.get(board_id & (NR_IDS-1)); }
+	public long getUnexpected(int board_id){ return unexpected.get(board_id & (NR_IDS-1)); }
+
+	/**
+	 * @return the fraction of the closed expected-response records of the board that were lost
+	 */
+	public float getLossRate(int board_id){
+		long l = getLost(board_id);
+		long closed = l + getMatched(board_id);
+		return closed == 0 ? 0 : l / (float)closed;
+	}
+
+	public long getTotalLost(){
+		long sum = 0;
+		for(int i=0; i<NR_IDS; i++) sum += lost.get(i);
+		return sum;
+	}
+
+	public long getTotalUnexpected(){
+		long sum = 0;
+		for(int i=0; i<NR_IDS; i++) sum += unexpected.get(i);
+		return sum;
+	}
+
+	/**
+	 * @return the last (up to TRACE_CAPACITY) correlation records, oldest first. Slots that get overwritten while
+	 * being read are left out
+	 */
+	public List<Record> getRecords(){
+		long head = trace_head;
+		long start = Math.max(0, head - TRACE_CAPACITY);
+		List<Record> records = new ArrayList<Record>((int)(head - start));
+		for(long seq=start; seq<head; seq++){
+			int slot = (int)(seq & TRACE_MASK);
+			if( published.get(slot) != seq ) continue;
+			int base = slot * TRACE_FIELDS;
+			long tx = trace.get(base);
+			int info = (int)trace.get(base+1);
+			long sent_ns = trace.get(base+2);
+			long received_ns = trace.get(base+3);
+			if( published.get(slot) != seq ) continue;
+
+			int ch = (info >> 8) & 0xff;
+			records.add(new Record(tx, info & 0xff, ch == 0xff ? null : CHANNELS[ch], commandOf(info), OUTCOMES[(info >>> 24) & 0xff], sent_ns, received_ns));
+		}
+		return records;
+	}
+
+	/**
+	 * @return the last correlation records one per line, oldest first, for when the bus acts up
+	 */
+	public String dump(){
+		StringBuilder sb = new StringBuilder();
+		for (Record record : getRecords()) {
+			sb.append(record).append('\n');
+		}
+		return sb.toString();
+	}
+}
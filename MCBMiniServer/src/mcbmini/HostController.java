@@ -0,0 +1,50 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini;
+
+/**
+ * A control loop that runs on the host at the bus rate, inside the server tick. It runs after the feedback of the
+ * tick has been decoded and the target functions have been evaluated and before the targets go out, so a controller
+ * that reads feedback (MCBMiniBoard.getActualTick(), getMotorCurrent() ...) and writes targets closes its loop
+ * within a single tick.
+ *
+ * Targets should be written with MCBMiniBoard.overrideTarget(), which keeps any target function on the channel
+ * running (the controller can e.g. add compliance on top of what the function commands).
+ *
+ * Controllers run on the update thread and must not block, see MCBMiniServer.addHostController() for the time budget.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public interface HostController {
+
+	/**
+	 * @param tickNanos the scheduled bus time of this tick (System.nanoTime() based)
+	 * @param tickIndex the tick sequence number
+	 */
+	public void update(long tickNanos, long tickIndex);
+}
@@ -0,0 +1,133 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini;
+
+import mcbmini.utils.AsyncLog;
+
+/**
+ * A HostController added to the server along with its time budget and execution time metrics.
+ *
+ * A controller that goes over its budget MAX_CONSECUTIVE_OVERRUNS ticks in a row, or throws, gets disabled so that it
+ * can't keep delaying the bus. Controllers that are still due when the whole controller stage is over its budget are
+ * skipped for that tick.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class HostControllerRegistration {
+
+	public static final int MAX_CONSECUTIVE_OVERRUNS = 5;
+
+	private static final AsyncLog.Event LOG_THREW = AsyncLog.event("A host controller threw on tick {}, disabling it (see HostControllerRegistration.getFailure())", true, 10);
+	private static final AsyncLog.Event LOG_OVER_BUDGET = AsyncLog.event("A host controller went over its budget of {}us {} ticks in a row on tick {}, disabling it", true, 10);
+
+	private final HostController controller;
+	private final long budget_ns;
+
+	private volatile boolean enabled = true;
+	private volatile RuntimeException failure;
+	private int consecutive_overruns;
+
+	// Metrics, written by the update thread only
+	private volatile long last_ns;
+	private volatile long max_ns;
+	private volatile long total_ns;
+	private volatile long runs;
+	private volatile long overruns;
+	private volatile long skipped;
+
+	HostControllerRegistration(HostController controller, long budget_ns) {
+		if( budget_ns <= 0 ) throw new IllegalArgumentException("Budget must be > 0");
+		this.controller = controller;
+		this.budget_ns = budget_ns;
+	}
+
+	/**
+	 * Runs the controller and records how long it took, called from the update thread
+	 */
+	void run(long tick_ns, long tick){
+		long start = System.nanoTime();
+		try {
+			controller.update(tick_ns, tick);
+		} catch (RuntimeException e) {
+			enabled = false;
+			failure = e;
+			AsyncLog.log(LOG_THREW, tick);
+		}
+		long duration = System.nanoTime() - start;
+
+		last_ns = duration;
+		if( duration > max_ns ) max_ns = duration;
+		total_ns += duration;
+		runs++;
+
+		if( duration > budget_ns ){
+			overruns++;
+			if( ++consecutive_overruns >= MAX_CONSECUTIVE_OVERRUNS && enabled ){
+				enabled = false;
+				AsyncLog.log(LOG_OVER_BUDGET, budget_ns/1000, consecutive_overruns, tick);
+			}
+		}
+		else{
+			consecutive_overruns = 0;
+		}
+	}
+
+	void skip(){
+		skipped++;
+	}
+
+	public HostController getController(){ return controller; }
+	public long getBudgetNanos(){ return budget_ns; }
+
+	public boolean isEnabled(){ return enabled; }
+
+	/**
+	 * @return what the controller threw when it got disabled, null if it didn't throw
+	 */
+	public RuntimeException getFailure(){
+		return failure;
+	}
+
+	/**
+	 * Re-enables a controller that got disabled
+	 */
+	public void setEnabled(boolean enabled){
+		if( enabled ){
+			consecutive_overruns = 0;
+			failure = null;
+		}
+		this.enabled = enabled;
+	}
+
+	public long getLastExecutionNanos(){ return last_ns; }
+	public long getMaxExecutionNanos(){ return max_ns; }
+	public double getMeanExecutionNanos(){ long n = runs; return n == 0 ? 0 : (double)total_ns / n; }
+	public long getNumberOfRuns(){ return runs; }
+	public long getNumberOfOverruns(){ return overruns; }
+	public long getNumberOfSkippedTicks(){ return skipped; }
+}
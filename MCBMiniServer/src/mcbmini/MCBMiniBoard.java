@@ -26,9 +26,11 @@
 
  package mcbmini;
 
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import mcbmini.MCBMiniConstants.Channel;
 import mcbmini.MCBMiniConstants.ChannelParameter;
@@ -40,6 +42,8 @@ import mcbmini.MCBMiniConstants.FeedbackMode;
 import mcbmini.MCBMiniConstants.MotorPolarity;
 import mcbmini.MCBMiniConstants.ControlMode;
 import mcbmini.functions.TargetFunction;
+import mcbmini.telemetry.SampleRingBuffer;
+import mcbmini.utils.RateMeter;
 
 /**
  * @author siggi
@@ -47,7 +51,7 @@ import mcbmini.functions.TargetFunction;
  */
 public class MCBMiniBoard {
 
-	private int id;
+	private final int id;
 	private boolean[] params_dirty;
 	private boolean[] fresh_target;
 
@@ -56,46 +60,118 @@ public class MCBMiniBoard {
 	private EnumMap<ChannelParameter, Integer>[] params;
 	private EnumMap<ChannelParameter, Integer>[] params_in_use;
 
-	private EnumMap<Error, Integer>[] error_counts;
+	// Indexed by Error ordinal, atomic so that monitoring can read them without taking the board lock
+	private AtomicIntegerArray[] error_counts;
 
-	protected long last_received_message_ms;
+	/*
+	 * The target and its limits are used every tick so they live in primitive arrays instead of the parameter maps.
+	 * Writers hold the board lock, the update thread reads them without it (it takes the lock every tick in getFreshTargetTick anyway)
+	 */
+	private int[] target_tick;
+	private int[] min_target;
+	private int[] max_target;
+
+	public static final int DEFAULT_HISTORY_LENGTH = 512;
+
+	// These are the feedback fields that we keep a history of
+	private static final ChannelParameter[] HISTORY_FIELDS = new ChannelParameter[]{
+		ChannelParameter.ACTUAL_TICK, ChannelParameter.MOTOR_CURRENT, ChannelParameter.ACTUAL_POT, ChannelParameter.ACTUAL_ENCODER
+	};
+	private static final int[] HISTORY_INDEX = new int[ChannelParameter.values().length];
+	static{
+		Arrays.fill(HISTORY_INDEX, -1);
+		for(int i=0; i<HISTORY_FIELDS.length; i++) HISTORY_INDEX[HISTORY_FIELDS[i].ordinal()] = i;
+	}
+
+	private SampleRingBuffer[][] history;
+
+	// The feedback fields get written every tick so they live outside the parameter maps, which would box them
+	private static final ChannelParameter[] FEEDBACK_FIELDS = new ChannelParameter[]{
+		ChannelParameter.ACTUAL_TICK, ChannelParameter.MOTOR_CURRENT, ChannelParameter.ACTUAL_POT, ChannelParameter.ACTUAL_ENCODER, ChannelParameter.EXTRA_PIN_VALUE
+	};
+	private static final int[] FEEDBACK_INDEX = new int[ChannelParameter.values().length];
+	static{
+		Arrays.fill(FEEDBACK_INDEX, -1);
+		for(int i=0; i<FEEDBACK_FIELDS.length; i++) FEEDBACK_INDEX[FEEDBACK_FIELDS[i].ordinal()] = i;
+	}
+
+	private final int[][] feedback = new int[2][FEEDBACK_FIELDS.length];
+
+	protected volatile long last_received_message_ms;
+
+	// When the last frame with a feedback request went out to the board (0 once answered), and the smoothed round trip
+	protected long request_sent_ns;
+	private volatile long round_trip_ns;
+
+	// Counts the responses from this board, the round trip samples are recorded as its values
+	private final RateMeter response_meter;
+
+	// Liveness, only written by the update thread. Feedback polls that went out since the last feedback response,
+	// the smoothed time between feedback responses and how long a poll may go unanswered before it counts as missed
+	protected int polls_unanswered;
+	protected long last_poll_tick;
+	protected int backoff_ticks;
+	// The last tick a motion group put something on this board, the board gets polled on that tick even when backing off
+	protected long motion_group_tick = -1;
+	private long last_feedback_ns;
+	private volatile long interarrival_ns;
+	private volatile long interarrival_dev_ns;
+	private volatile long round_trip_dev_ns;
+	private volatile int missed_responses;
+	private volatile boolean suspect;
+	private volatile long suspect_since_ns;
+	private volatile int times_suspected;
 
 	public MCBMiniBoard(int id){
+		this(id, DEFAULT_HISTORY_LENGTH);
+	}
+
+	/**
+	 * @param id
+	 * @param history_length the number of feedback samples to keep for each channel and feedback field
+	 */
+	public MCBMiniBoard(int id, int history_length){
 		if( id < 0 || id > 126 ){
 			throw new IllegalArgumentException("Id needs to be within 0 and 127");
 		}
 
 		this.id = id;
+		response_meter = new RateMeter("board."+id, true);
 		params = new EnumMap[2];
 		params_in_use = new EnumMap[2];
 		fresh_target = new boolean[2];
-		error_counts = new EnumMap[2];
+		error_counts = new AtomicIntegerArray[2];
 
 		target_functions = new TargetFunction[2];
+		target_tick = new int[]{ Integer.MAX_VALUE, Integer.MAX_VALUE };
+		min_target = new int[2];
+		max_target = new int[2];
 
 		params_dirty = new boolean[2];
 
+		history = new SampleRingBuffer[2][HISTORY_FIELDS.length];
+		for(int i=0; i<2; i++){
+			for(int j=0; j<HISTORY_FIELDS.length; j++){
+				history[i][j] = new SampleRingBuffer(history_length);
+			}
+		}
+
 		/*
 		 * Here we set the default parameters
 		 */
 		for (Channel channel : Channel.values()) {
 			params[channel.index] = new EnumMap<ChannelParameter, Integer>(ChannelParameter.class);
 			params_in_use[channel.index] = new EnumMap<ChannelParameter, Integer>(ChannelParameter.class);
-			error_counts[channel.index] = new EnumMap<Error, Integer>(Error.class);
+			error_counts[channel.index] = new AtomicIntegerArray(Error.values().length);
 			fresh_target[channel.index] = true;
 			params_dirty[channel.index] = true;
 
 			for (ChannelParameter param : ChannelParameter.values()) {
 				// Here we are marking some parameters that shouldn't be synchronized unless they get explicitly set with a setter method
-				params[channel.index].put(param, Integer.MAX_VALUE);
+				// (the feedback fields start out at 0 in their own array)
+				if( FEEDBACK_INDEX[param.ordinal()] == -1 ) params[channel.index].put(param, Integer.MAX_VALUE);
 			}
 
-			params[channel.index].put(ChannelParameter.ACTUAL_TICK, 0);
-			params[channel.index].put(ChannelParameter.ACTUAL_POT, 0);
-			params[channel.index].put(ChannelParameter.ACTUAL_ENCODER, 0);
-			params[channel.index].put(ChannelParameter.MOTOR_CURRENT, 0);
-			params[channel.index].put(ChannelParameter.EXTRA_PIN_VALUE, 0);
-
 			setEnabled(channel, false);
 
 			setPositionPGain(channel, 50);
@@ -129,15 +205,36 @@ public class MCBMiniBoard {
 	 * @param value
 	 */
 	protected synchronized void setChannelParameter(Channel channel, ChannelParameter param, int value){
+		int feedback_index = FEEDBACK_INDEX[param.ordinal()];
+		if( feedback_index != -1 ){
+			feedback[channel.index][feedback_index] = value;
+			return;
+		}
+
 		params[channel.index].put(param, value);
 
+		switch (param) {
+		case TARGET_TICK:	target_tick[channel.index] = value; break;
+		case TARGET_MIN:	min_target[channel.index] = value; break;
+		case TARGET_MAX:	max_target[channel.index] = value; break;
+		default: break;
+		}
+
 		if( param.forward_to_board_on_change ) params_dirty[channel.index] = true;
 	}
 	protected synchronized void setChannelAParameter(ChannelParameter param, int value){ setChannelParameter(Channel.A, param, value); }
 	protected synchronized void setChannelBParameter(ChannelParameter param, int value){ setChannelParameter(Channel.B, param, value); }
 
 	protected synchronized int getChannelParameter(Channel channel, ChannelParameter param){
-		return params[channel.index].get(param);
+		switch (param) {
+		case TARGET_TICK:	return target_tick[channel.index];
+		case TARGET_MIN:	return min_target[channel.index];
+		case TARGET_MAX:	return max_target[channel.index];
+		default:
+			int feedback_index = FEEDBACK_INDEX[param.ordinal()];
+			if( feedback_index != -1 ) return feedback[channel.index][feedback_index];
+			return params[channel.index].get(param);
+		}
 	}
 	protected synchronized int getChannelAParameter(ChannelParameter param){ return getChannelParameter(Channel.A, param); }
 	protected synchronized int getChannelBParameter(ChannelParameter param){ return getChannelParameter(Channel.B, param); }
@@ -152,8 +249,8 @@ public class MCBMiniBoard {
 	 */
 	public void setTargetFunction(Channel channel, TargetFunction function){
 		if( function != null ){
+			// The function gets initialized on the first tick that evaluates it
 			function.setOwner(this, channel);
-			function.initialize();
 		}
 		this.target_functions[ channel.index ] = function;
 	}
@@ -163,15 +260,207 @@ public class MCBMiniBoard {
 	}
 
 	public void applyTargetFunction(Channel channel){
+		applyTargetFunction(channel, System.nanoTime(), -1);
+	}
+
+	/**
+	 * @param channel
+	 * @param tickNanos the time that the frame carrying the target is scheduled to go out on the bus
+	 * @param tickIndex the server tick index
+	 */
+	public void applyTargetFunction(Channel channel, long tickNanos, long tickIndex){
 		TargetFunction targetFunction = target_functions[channel.index];
 		if( targetFunction != null ){
-			int value = targetFunction.applyFunction();
-			value = Math.max(getMinTarget(channel), value);
-			value = Math.min(getMaxTarget(channel), value);
+			if( !targetFunction.isInitialized() ) targetFunction.initialize(tickNanos, tickIndex);
+			int value = targetFunction.applyFunction(tickNanos, tickIndex);
+			value = Math.max(min_target[channel.index], value);
+			value = Math.min(max_target[channel.index], value);
+			setFunctionTarget(channel, value);
+		}
+	}
 
-			params[channel.index].put(ChannelParameter.TARGET_TICK, value);
-			fresh_target[channel.index] = true;
+	/**
+	 * Overrides the target of this tick without removing the target function of the channel, for host controllers
+	 * running on the update thread (the function computes the target again next tick)
+	 * @param channel
+	 * @param value gets clamped to the target limits
+	 */
+	public void overrideTarget(Channel channel, int value){
+		value = Math.max(min_target[channel.index], value);
+		value = Math.min(max_target[channel.index], value);
+		setFunctionTarget(channel, value);
+	}
+
+	/**
+	 * Sets a target that a target function computed, only to be called from the server update thread
+	 * @param channel
+	 * @param value needs to be clamped to the target limits already
+	 */
+	public void setFunctionTarget(Channel channel, int value){
+		target_tick[channel.index] = value;
+		fresh_target[channel.index] = true;
+	}
+
+	/*
+	 * Round trip related stuff
+	 */
+
+	/**
+	 * The smoothed (EWMA, 1/8 gain) time from a target frame being handed to the port to the last byte of its feedback
+	 * response coming in. Ports that don't timestamp their bytes (see TimestampedSerial) report when the server read
+	 * the response instead, which adds up to a tick of waiting on the host.
+	 * @return the round trip in nanoseconds, 0 until measured
+	 */
+	public long getRoundTripNanos(){
+		return round_trip_ns;
+	}
+
+	/**
+	 * @return the meter counting the responses from this board, its values are round trip samples in nanoseconds
+	 */
+	public RateMeter getResponseMeter(){
+		return response_meter;
+	}
+
+	/**
+	 * @return System.currentTimeMillis() of the last response from this board, 0 if it never responded
+	 */
+	public long getLastResponseMillis(){
+		return last_received_message_ms;
+	}
+
+	/**
+	 * Called by the server when a feedback response from the board is decoded
+	 */
+	protected void updateRoundTrip(long received_ns){
+		polls_unanswered = 0;
+		missed_responses = 0;
+
+		// Same gains as the TCP retransmit timer, 1/8 for the mean and 1/4 for the mean deviation.
+		// The gap across a silence says nothing about the schedule so it is left out
+		if( last_feedback_ns != 0 && !suspect ){
+			long gap = received_ns - last_feedback_ns;
+			long mean = interarrival_ns;
+			if( mean == 0 ) interarrival_ns = gap;
+			else{
+				interarrival_dev_ns += (Math.abs(gap - mean) - interarrival_dev_ns) / 4;
+				interarrival_ns = mean + (gap - mean) / 8;
+			}
 		}
+		last_feedback_ns = received_ns;
+
+		if( request_sent_ns == 0 ){
+			response_meter.mark();
+			return;
+		}
+		long sample = received_ns - request_sent_ns;
+		request_sent_ns = 0;
+		response_meter.record(sample);
+		long rtt = round_trip_ns;
+		if( rtt == 0 ) round_trip_ns = sample;
+		else{
+			round_trip_dev_ns += (Math.abs(sample - rtt) - round_trip_dev_ns) / 4;
+			round_trip_ns = rtt + (sample - rtt) / 8;
+		}
+	}
+
+	/*
+	 * Liveness related stuff
+	 */
+
+	/**
+	 * The smoothed (EWMA, 1/8 gain) time between two feedback responses from this board, this follows the
+	 * schedule the board is actually polled at (update rate, watchdog degradation, backoff)
+	 * @return the inter-arrival time in nanoseconds, 0 until measured
+	 */
+	public long getInterArrivalNanos(){
+		return interarrival_ns;
+	}
+
+	/**
+	 * @return the smoothed mean deviation of the inter-arrival time in nanoseconds
+	 */
+	public long getInterArrivalDeviationNanos(){
+		return interarrival_dev_ns;
+	}
+
+	/**
+	 * @return how long a feedback poll may go unanswered before it counts as missed, the smoothed round trip plus four mean deviations
+	 */
+	public long getResponseDeadlineNanos(){
+		return round_trip_ns + 4 * round_trip_dev_ns;
+	}
+
+	/**
+	 * @return the number of feedback polls in a row that went unanswered, as of the start of the last tick
+	 */
+	public int getMissedResponses(){
+		return missed_responses;
+	}
+
+	/**
+	 * A board is suspect when it has missed MCBMiniServer.getSuspectThreshold() feedback responses in a row, the server
+	 * then only polls it with an exponential backoff until it responds again
+	 */
+	public boolean isSuspect(){
+		return suspect;
+	}
+
+	/**
+	 * @return System.nanoTime() of when the board became suspect, 0 if it isn't
+	 */
+	public long getSuspectSinceNanos(){
+		return suspect_since_ns;
+	}
+
+	/**
+	 * @return how many times this board became suspect
+	 */
+	public int getTimesSuspected(){
+		return times_suspected;
+	}
+
+	/**
+	 * @return System.nanoTime() of the last feedback response from this board, 0 if it never responded
+	 */
+	public long getLastFeedbackNanos(){
+		return last_feedback_ns;
+	}
+
+	protected void setMissedResponses(int missed){
+		missed_responses = missed;
+	}
+
+	protected void setSuspect(boolean suspect, long now_ns){
+		if( suspect && !this.suspect ) times_suspected++;
+		this.suspect = suspect;
+		suspect_since_ns = suspect ? now_ns : 0;
+		if( !suspect ) backoff_ticks = 0;
+	}
+
+	/*
+	 * Feedback history related stuff
+	 */
+
+	/**
+	 * Returns the history of received values for one of the feedback fields (ACTUAL_TICK, MOTOR_CURRENT, ACTUAL_POT, ACTUAL_ENCODER)
+	 * The timestamps are in System.nanoTime() time
+	 * @param channel
+	 * @param field
+	 * @return the history buffer or null if no history is kept for the field
+	 */
+	public SampleRingBuffer getHistory(Channel channel, ChannelParameter field){
+		int index = HISTORY_INDEX[field.ordinal()];
+		if( index == -1 ) return null;
+		return history[channel.index][index];
+	}
+
+	/**
+	 * Appends a feedback sample to the history, only to be called from the server update thread
+	 */
+	protected void appendHistory(Channel channel, ChannelParameter field, int value, long timestamp_ns){
+		int index = HISTORY_INDEX[field.ordinal()];
+		if( index != -1 ) history[channel.index][index].append(timestamp_ns, value);
 	}
 
 	public ChannelParameter getDirtyParameter(Channel channel){
@@ -216,10 +505,10 @@ public class MCBMiniBoard {
 	public int getDefaultTarget(Channel channel){ return getChannelParameter(channel, ChannelParameter.TARGET_DEFAULT); }
 	public void setDefaultTarget(Channel channel, int value){ setChannelParameter(channel, ChannelParameter.TARGET_DEFAULT, value); }
 
-	public int getMinTarget(Channel channel){ return getChannelParameter(channel, ChannelParameter.TARGET_MIN); }
+	public int getMinTarget(Channel channel){ return min_target[channel.index]; }
 	public void setMinTarget(Channel channel, int value){ setChannelParameter(channel, ChannelParameter.TARGET_MIN, value); }
 
-	public int getMaxTarget(Channel channel){ return getChannelParameter(channel, ChannelParameter.TARGET_MAX); }
+	public int getMaxTarget(Channel channel){ return max_target[channel.index]; }
 	public void setMaxTarget(Channel channel, int value){ setChannelParameter(channel, ChannelParameter.TARGET_MAX, value); }
 
 	public int getPositionPGain(Channel channel){ return getChannelParameter(channel, ChannelParameter.POS_P_GAIN); }
@@ -255,28 +544,37 @@ public class MCBMiniBoard {
 	public int getMaxAcceleration(Channel channel){ return getChannelParameter(channel, ChannelParameter.MAX_ACCELERATION); }
 	public void setMaxAcceleration(Channel channel, int value){ limitCheckLow(value, 0); setChannelParameter(channel, ChannelParameter.MAX_ACCELERATION, value); }
 
-	public int getTargetTick(Channel channel){ return getChannelParameter(channel, ChannelParameter.TARGET_TICK); }
+	public int getTargetTick(Channel channel){ return target_tick[channel.index]; }
 
 	public synchronized void setTargetTick(Channel channel, int value){
 		target_functions[channel.index] = null;	// If someone sets the target position manually, then we disable any function that might be in control
 		
-		value = Math.max(getMinTarget(channel), value);
-		value = Math.min(getMaxTarget(channel), value);
+		value = Math.max(min_target[channel.index], value);
+		value = Math.min(max_target[channel.index], value);
 		
-		params[channel.index].put(ChannelParameter.TARGET_TICK, value);	// This is a bit faster
+		target_tick[channel.index] = value;
 		fresh_target[channel.index] = true;
 	}
 
 	public synchronized Integer getFreshTargetTick(Channel channel){
+		int target = takeFreshTargetTick(channel);
+		return target == Integer.MAX_VALUE ? null : Integer.valueOf(target);
+	}
+
+	/**
+	 * Like getFreshTargetTick() without the boxing, for the update thread
+	 * @return the target if it changed since the last call, Integer.MAX_VALUE otherwise (the value that tells the board to keep its target)
+	 */
+	protected synchronized int takeFreshTargetTick(Channel channel){
 		if( fresh_target[channel.index] ){
 			fresh_target[channel.index] = false;
-			return params[channel.index].get(ChannelParameter.TARGET_TICK);	// This is a bit faster
+			return target_tick[channel.index];
 		}
-		return null;
+		return Integer.MAX_VALUE;
 	}
 
 	public synchronized int getActualTick(Channel channel){
-		return params[channel.index].get(ChannelParameter.ACTUAL_TICK); // This is a bit faster
+		return feedback[channel.index][FEEDBACK_INDEX[ChannelParameter.ACTUAL_TICK.ordinal()]]; // This is a bit faster
 	}
 	public int getMotorCurrent(Channel channel){ return getChannelParameter(channel, ChannelParameter.MOTOR_CURRENT); }
 
@@ -351,7 +649,7 @@ public class MCBMiniBoard {
 		params_dirty[channel.index] = true;
 	}
 
-	public synchronized int getId() {
+	public int getId() {
 		return id;
 	}
 
@@ -361,13 +659,12 @@ public class MCBMiniBoard {
 	 * @param channel
 	 * @return
 	 */
-	public synchronized int getErrorCount(Error error, Channel channel){
+	public int getErrorCount(Error error, Channel channel){
 		if( channel == null ){
 			if( error.channel_specific ) throw new RuntimeException("Can't get non-channel specific error count for Error: "+error);
 			channel = Channel.A;
 		}
-		Integer val = error_counts[channel.index].get(error);
-		return val==null?0:val;
+		return error_counts[channel.index].get(error.ordinal());
 	}
 
 	/**
@@ -375,7 +672,7 @@ public class MCBMiniBoard {
 	 * @param error
 	 * @return
 	 */
-	public synchronized int getErrorCount(Error error){
+	public int getErrorCount(Error error){
 		return getErrorCount(error, null);
 	}
 
@@ -385,18 +682,12 @@ public class MCBMiniBoard {
 	 * @param channel
 	 * @return
 	 */
-	public synchronized void increaseErrorCount(Error error, Channel channel){
+	public void increaseErrorCount(Error error, Channel channel){
 		if( channel == null ){
 			if( error.channel_specific ) throw new RuntimeException("Can't increase non-channel specific error count for Error: "+error);
 			channel = Channel.A;
 		}
-		Integer val = error_counts[channel.index].get(error);
-		if( val == null ){
-			error_counts[channel.index].put(error, 1);
-		}
-		else{
-			error_counts[channel.index].put(error, (val+1));
-		}
+		error_counts[channel.index].incrementAndGet(error.ordinal());
 	}
 
 	/**
@@ -404,7 +695,7 @@ public class MCBMiniBoard {
 	 * @param error
 	 * @return
 	 */
-	public synchronized void increaseErrorCount(Error error){
+	public void increaseErrorCount(Error error){
 		increaseErrorCount(error, null);
 	}
 
@@ -263,15 +263,17 @@ public interface MCBMiniConstants {
 			this.id = id;
 		}
 
-		private static HashMap<Integer, ExtraPinMode> id_to_command;
+		// An array rather than a map, this gets called for every board on every tick
+		private static ExtraPinMode[] id_to_command;
 		public static ExtraPinMode getForId(int id){
 			if( id_to_command==null ){
-				id_to_command = new HashMap<Integer, ExtraPinMode>();
+				id_to_command = new ExtraPinMode[256];
 				for (ExtraPinMode cmd : ExtraPinMode.values()) {
-					id_to_command.put(Integer.valueOf( cmd.id&0xff ), cmd);
+					id_to_command[cmd.id & 0xff] = cmd;
 				}
 			}
-			return id_to_command.get( Integer.valueOf( id ));
+			if( id < 0 || id > 0xff ) return null;
+			return id_to_command[id];
 		}
 
 		public static ExtraPinMode getExtraPinMode(MCBMiniBoard board, Channel channel){
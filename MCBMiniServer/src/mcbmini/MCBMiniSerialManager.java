@@ -30,6 +30,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -41,10 +42,15 @@ import mcbmini.MCBMiniConstants.ChannelParameter;
 import mcbmini.MCBMiniConstants.Command;
 import mcbmini.MCBMiniConstants.DataSize;
 import mcbmini.MCBMiniConstants.Id;
+import mcbmini.jfr.JfrEvents;
+import mcbmini.jfr.JfrSupport;
 import mcbmini.serial.PSerial;
+import mcbmini.serial.TimestampedSerial;
 import mcbmini.serial.iSerial;
+import mcbmini.utils.AsyncLog;
 import mcbmini.utils.ByteBufferUtils;
 import mcbmini.utils.Log;
+import mcbmini.utils.RateMeter;
 
 
 /**
@@ -64,15 +70,40 @@ public class MCBMiniSerialManager {
 	public static final int MIN_MASTER_PACKET_SIZE_NEW_FIRMWARE = 17;
 	private int minMasterPacketSize = MIN_MASTER_PACKET_SIZE_OLD_FIRMWARE;
 	
+	public static final int DEFAULT_BAUD_RATE = 115200;
+
 	public static final byte HEADER_BYTE = (byte)0xAA;
 	public static final byte ESCAPE_BYTE = (byte)0x55;
 
-	private long escape_bytes_received;
-	private long total_bytes_received;
+	// Only written by the update thread, volatile so that monitoring can read them
+	private volatile long escape_bytes_received;
+	private volatile long total_bytes_received;
+	private volatile long raw_bytes_received;
+	private volatile long bytes_sent;
+	private volatile long packets_received;
+
+	private final RateMeter tx_meter = new RateMeter("tx_bytes");
+	private final RateMeter rx_meter = new RateMeter("rx_bytes");
+
+	private final String port_name;
+	private final BusAccounting bus_accounting;
+	private final FrameCorrelator frame_correlator = new FrameCorrelator();
+
+	// The escapes of the sub command being written and of the packet being received
+	private int sub_command_escapes;
+	private Command sub_command;
+	private int packet_escapes;
 	
 	private ByteBuffer read_bb;
 //	private byte checksum = 0;
 
+	// Reused by handleBufferedSerialData() so that decoding doesn't allocate per packet
+	private final ArrayList<ByteBuffer> rx_packets = new ArrayList<ByteBuffer>();
+	private final ArrayList<ByteBuffer> rx_packet_pool = new ArrayList<ByteBuffer>();
+	// When the last byte of each of the packets in rx_packets came in, and of the packet being received
+	private long[] rx_packet_arrival_ns = new long[16];
+	private long packet_last_byte_ns;
+
 	private byte[] temp_buffer_bytes;
 	private ByteBuffer temp_buffer;
 
@@ -83,16 +114,20 @@ public class MCBMiniSerialManager {
 
 	protected iSerial ser;
 
-	protected int bad_checksum_received_counter;
+	protected volatile int bad_checksum_received_counter;
 
 	public MCBMiniSerialManager(String port_name, int baud_rate) throws IOException{
 
 		ser = new PSerial(port_name, baud_rate);
+		this.port_name = port_name;
+		this.bus_accounting = new BusAccounting(baud_rate);
 		init();
 	}
 	
 	public MCBMiniSerialManager(iSerial pSerial){
 		this.ser = pSerial;
+		this.port_name = pSerial.getClass().getSimpleName();
+		this.bus_accounting = new BusAccounting(DEFAULT_BAUD_RATE);
 		init();
 	}
 
@@ -120,13 +155,94 @@ public class MCBMiniSerialManager {
 		return bad_checksum_received_counter;
 	}
 
+	/**
+	 * @return the name of the serial port, or the type of the serial implementation if it wasn't opened by name
+	 */
+	public String getPortName(){
+		return port_name;
+	}
+
+	public long getBytesSent(){
+		return bytes_sent;
+	}
+
+	/**
+	 * @return all bytes read off the bus including headers and escape bytes
+	 */
+	public long getBytesReceived(){
+		return raw_bytes_received;
+	}
+
+	public long getEscapeBytesReceived(){
+		return escape_bytes_received;
+	}
+
+	/**
+	 * @return the number of packets that passed the size and checksum checks
+	 */
+	public long getPacketsReceived(){
+		return packets_received;
+	}
+
+	/**
+	 * @return where the bytes on the bus go, by category and command
+	 */
+	public BusAccounting getBusAccounting(){
+		return bus_accounting;
+	}
+
+	/**
+	 * @return the TX sequence numbers and the matching of responses to the packets that asked for them
+	 */
+	public FrameCorrelator getFrameCorrelator(){
+		return frame_correlator;
+	}
+
+	/**
+	 * @return the meter counting bytes written to the bus
+	 */
+	public RateMeter getTxMeter(){
+		return tx_meter;
+	}
+
+	/**
+	 * @return the meter counting bytes read off the bus
+	 */
+	public RateMeter getRxMeter(){
+		return rx_meter;
+	}
+
 	private boolean next_byte_should_be_transformed = false;
 
+	// These can come in at a high rate when the bus is noisy, so they go through the async logger
+	private static final AsyncLog.Event LOG_STUB = AsyncLog.event("Packet stub received", false, 10);
+	private static final AsyncLog.Event LOG_IMPROPER_SIZE = AsyncLog.event("Improper packet size, expected {} but received {}", false, 10);
+	private static final AsyncLog.Event LOG_BAD_CHECKSUM = AsyncLog.event("Packet with bad checksum received ! calculated: {}, received: {}", false, 10);
+
+	/**
+	 * @param index the index of a packet in the list last returned by handleBufferedSerialData()
+	 * @return the System.nanoTime() at which the last byte of that packet came in (when it was read if the port doesn't timestamp bytes)
+	 */
+	public long getPacketArrivalNanos(int index){
+		return rx_packet_arrival_ns[index];
+	}
+
+	/**
+	 * Decodes whatever has come in on the bus since the last call
+	 * @return the complete packets, the list and the buffers in it are reused so they are only valid until the next call
+	 */
 	public List<ByteBuffer> handleBufferedSerialData() {
-		ArrayList<ByteBuffer> return_buffers = new ArrayList<ByteBuffer>(1);
+		ArrayList<ByteBuffer> return_buffers = rx_packets;
+		return_buffers.clear();
+		int bytes_read = 0;
+
+		// Ports that don't timestamp their bytes get the time they are read at
+		TimestampedSerial timestamped_ser = ser instanceof TimestampedSerial ? (TimestampedSerial)ser : null;
+		long read_ns = System.nanoTime();
 
 		while( ser.available() > 0 ){
 			byte in = ser.readByte();
+			bytes_read++;
 
 			if( PRINT_RX_BYTES ){
 				Log.println("Received byte "+(in&0xff), true);
@@ -134,8 +250,15 @@ public class MCBMiniSerialManager {
 
 			// We might have a ready packet !
 			if( in == HEADER_BYTE ){
+				bus_accounting.rxHeader();
+				int escapes = packet_escapes;
+				packet_escapes = 0;
+				int data_bytes = read_bb.position();
+				bus_accounting.rxData(data_bytes);
+
 				if( read_bb.position() < 3 ){
-					Log.println("Packet stub received");
+					AsyncLog.log(LOG_STUB);
+					bus_accounting.rxDiscarded(data_bytes);
 					read_bb.clear();
 					continue;
 				}
@@ -151,8 +274,9 @@ public class MCBMiniSerialManager {
 				int expectedNumberOfBytes = 2 + command.datasize.number_of_bytes;
 				
 				if( read_bb.position() < expectedNumberOfBytes ){
-					Log.println("Improper packet size, expected "+expectedNumberOfBytes+" but received "+read_bb.position());
-					ByteBufferUtils.printByteBuffer(read_bb, read_bb.position());
+					AsyncLog.log(LOG_IMPROPER_SIZE, expectedNumberOfBytes, read_bb.position());
+					if( DEBUG ) ByteBufferUtils.printByteBuffer(read_bb, read_bb.position());
+					bus_accounting.rxDiscarded(data_bytes);
 					read_bb.clear();
 					continue;
 				}
@@ -160,8 +284,13 @@ public class MCBMiniSerialManager {
 				// Make a new packet
 				read_bb.limit( read_bb.position() );
 				read_bb.position( read_bb.position()-expectedNumberOfBytes );
-				ByteBuffer packet = ByteBuffer.allocate(64);
-				packet.order(ByteOrder.LITTLE_ENDIAN);
+				if( rx_packet_pool.size() == return_buffers.size() ){
+					ByteBuffer pooled = ByteBuffer.allocate(64);
+					pooled.order(ByteOrder.LITTLE_ENDIAN);
+					rx_packet_pool.add( pooled );
+				}
+				ByteBuffer packet = rx_packet_pool.get( return_buffers.size() );
+				packet.clear();
 				packet.put( read_bb );
 				packet.flip();
 				
@@ -173,14 +302,25 @@ public class MCBMiniSerialManager {
 				
 				// If the checksums don't match up
 				if( checksum_calculated != checksum_rcv ){
-					Log.println("Packet with bad checksum received ! calculated: "+ByteBufferUtils.byte2int(checksum_calculated)+", received: "+ByteBufferUtils.byte2int(checksum_rcv));
-					ByteBufferUtils.printByteBuffer(packet, packet.limit());
+					AsyncLog.log(LOG_BAD_CHECKSUM, ByteBufferUtils.byte2int(checksum_calculated), ByteBufferUtils.byte2int(checksum_rcv));
+					if( DEBUG ) ByteBufferUtils.printByteBuffer(packet, packet.limit());
 					bad_checksum_received_counter++;
+					if( JfrSupport.AVAILABLE ) JfrEvents.checksumFailure(cmd, ByteBufferUtils.byte2int(checksum_calculated), ByteBufferUtils.byte2int(checksum_rcv));
+					bus_accounting.rxDiscarded(data_bytes);
 					read_bb.clear();
 					continue;
 				}
 
+				// Anything in front of the packet was junk
+				bus_accounting.rxPacket(command, expectedNumberOfBytes, escapes);
+				bus_accounting.rxDiscarded(data_bytes - expectedNumberOfBytes - 1);
+
 				// Add the packet buffer to be handled
+				packets_received++;
+				if( rx_packet_arrival_ns.length == return_buffers.size() ){
+					rx_packet_arrival_ns = Arrays.copyOf(rx_packet_arrival_ns, 2 * rx_packet_arrival_ns.length);
+				}
+				rx_packet_arrival_ns[ return_buffers.size() ] = packet_last_byte_ns;
 				return_buffers.add( packet );
 				read_bb.clear();
 				continue;
@@ -188,6 +328,8 @@ public class MCBMiniSerialManager {
 
 			if( in == ESCAPE_BYTE ){
 				escape_bytes_received++;
+				packet_escapes++;
+				bus_accounting.rxEscape();
 				next_byte_should_be_transformed = true;
 				continue;
 			}
@@ -198,8 +340,13 @@ public class MCBMiniSerialManager {
 			}
 
 			total_bytes_received++;
+			packet_last_byte_ns = timestamped_ser != null ? timestamped_ser.getLastReadNanos() : read_ns;
 			read_bb.put(in);
 		}
+		if( bytes_read > 0 ){
+			raw_bytes_received += bytes_read;
+			rx_meter.mark(bytes_read);
+		}
 		return return_buffers;
 	}
 
@@ -207,9 +354,18 @@ public class MCBMiniSerialManager {
 	 * Sending functions
 	 */
 
-	public void sendTxBuffer(){
+	/**
+	 * @param tick_sequence the server tick sequence the buffer goes out on, the frame correlator stamps its records with it
+	 */
+	public void sendTxBuffer(long tick_sequence){
 		try {
+			// Taken before the write, the responses can start arriving while the write is still going on
+			long now_ns = System.nanoTime();
 			ser.write(write_buffer_bytes, 0, write_buffer.position());
+			bytes_sent += write_buffer.position();
+			tx_meter.mark(write_buffer.position());
+			bus_accounting.endTick(now_ns);
+			frame_correlator.endTx(tick_sequence, now_ns);
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.exit(1);
@@ -219,9 +375,11 @@ public class MCBMiniSerialManager {
 	}
 
 	private byte write_checksum = 0;
-	private void startSubCommand(){
+	private void startSubCommand(Command command){
 		temp_buffer.clear();
 		write_checksum = 0;
+		sub_command = command;
+		sub_command_escapes = 0;
 	}
 
 	private void finishSubCommandAndAddToBuffer(){
@@ -239,9 +397,12 @@ public class MCBMiniSerialManager {
 
 		// Pad with zeros because of slave bus contention issues
 		// This ensures that no master write packet is smaller than MIN_MASTER_PACKET_SIZE
+		int padding = 0;
 		if( temp_buffer.position() < minMasterPacketSize ){
-			write_buffer.put(zero_bytes, 0, minMasterPacketSize-temp_buffer.position());
+			padding = minMasterPacketSize-temp_buffer.position();
+			write_buffer.put(zero_bytes, 0, padding);
 		}
+		bus_accounting.txSubCommand(sub_command, temp_buffer.position() - sub_command_escapes - 2, sub_command_escapes, padding);
 
 		// Put the subcommand into the buffer
 		temp_buffer.flip();
@@ -253,6 +414,7 @@ public class MCBMiniSerialManager {
 		if( in == HEADER_BYTE || in == ESCAPE_BYTE ){
 			in ^= 1;
 			temp_buffer.put(ESCAPE_BYTE);
+			sub_command_escapes++;
 		}
 		temp_buffer.put(in);
 	}
@@ -293,7 +455,7 @@ public class MCBMiniSerialManager {
 	 * @param targetB
 	 */
 	protected void writeSpecializedPacket(MCBMiniBoard board, ResponseType feedback_type, Channel feedback_channel, int targetA, int targetB){
-		startSubCommand();
+		startSubCommand(feedback_type.feedbackCommand);
 
 		byte command_byte = feedback_type.feedbackCommand.command;
 
@@ -310,6 +472,7 @@ public class MCBMiniSerialManager {
 		putByteInSubCommand(id_byte);
 
 		finishSubCommandAndAddToBuffer();
+		frame_correlator.expect(board.getId(), feedback_channel, feedback_type.feedbackCommand);
 	}
 
 	/**
@@ -321,7 +484,7 @@ public class MCBMiniSerialManager {
 	 * @param value
 	 */
 	protected void writeGenericPacket(MCBMiniBoard board, Channel channel, Command command, boolean request_response, int value){
-		startSubCommand();
+		startSubCommand(command);
 
 		if(DEBUG){
 			if( board != null )
@@ -372,6 +535,7 @@ public class MCBMiniSerialManager {
 		putByteInSubCommand(id_byte);
 
 		finishSubCommandAndAddToBuffer();
+		if( request_response && board != null ) frame_correlator.expect(board.getId(), channel, command);
 	}
 
 	/**
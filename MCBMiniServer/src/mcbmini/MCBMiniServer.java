@@ -31,8 +31,10 @@ import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -53,10 +55,19 @@ import mcbmini.MCBMiniConstants.Error;
 import mcbmini.MCBMiniConstants.ExtraPinMode;
 import mcbmini.MCBMiniConstants.Id;
 import mcbmini.MCBMiniSerialManager.ResponseType;
+import mcbmini.functions.BatchTargetFunction;
 import mcbmini.functions.TargetFunction;
+import mcbmini.functions.TargetFunctionBatch;
+import mcbmini.jfr.JfrEvents;
+import mcbmini.jfr.JfrSupport;
+import mcbmini.telemetry.ChannelSelector;
+import mcbmini.telemetry.TelemetryListener;
+import mcbmini.telemetry.TelemetrySubscription;
+import mcbmini.utils.AsyncLog;
 import mcbmini.utils.ByteBufferUtils;
-import mcbmini.utils.FramerateMonitor;
 import mcbmini.utils.Log;
+import mcbmini.utils.RateMeter;
+import mcbmini.utils.RateMeter.Window;
 
 import org.jdom.Element;
 
@@ -115,6 +126,15 @@ public class MCBMiniServer{
 		public void handleBoardDisableEvent(MCBMiniBoard board, Channel ch);
 	}
 
+	/**
+	 * Gets told right away (from the update thread, so keep it short) when a board stops answering its feedback polls
+	 * and when it answers again. A handler that throws gets removed
+	 */
+	public interface MCBMiniBoardSuspectHandler{
+		public void handleBoardSuspect(MCBMiniBoard board, int missed_responses);
+		public void handleBoardRecovered(MCBMiniBoard board, long silence_ns);
+	}
+
 	private class BoardDisabledEvent{
 		public MCBMiniBoard board;
 		public Channel channel;
@@ -127,15 +147,50 @@ public class MCBMiniServer{
 
 	protected ArrayList<MCBMiniBoard> boards;
 
+	private float update_rate;
+
 	private long last_check_for_timeouts_ms;
 
 	private MCBMiniSerialManager ser_manager;
 	private String portName;
 	
 	private List<Request> incoming_requests;
+	private List<MotionGroup> committed_motion_groups;
+
+	// One batch per batchable target function type, only used from the update thread
+	private final ArrayList<Object> function_batch_types = new ArrayList<Object>();
+	private final ArrayList<TargetFunctionBatch> function_batches = new ArrayList<TargetFunctionBatch>();
 
 	private static final Channel[] CHANNELS = Channel.values();
 
+	/*
+	 * Events that can happen at a high rate during bus faults go through the async logger
+	 */
+	private static final AsyncLog.ArgFormatter COMMAND_NAME = new AsyncLog.ArgFormatter() {
+		@Override
+		public void append(StringBuilder sb, long value) { sb.append(Command.getForCmdId((int)value)); }
+	};
+	private static final AsyncLog.ArgFormatter ERROR_NAME = new AsyncLog.ArgFormatter() {
+		@Override
+		public void append(StringBuilder sb, long value) { sb.append(Error.getForId((int)value)); }
+	};
+	private static final AsyncLog.Event LOG_NO_RESPONSE = AsyncLog.event("No response from board ID: {}", false, 10);
+	private static final AsyncLog.Event LOG_SMALL_BUFFER = AsyncLog.event("Weird, got small bb. pos:{} lim:{} cap:{}", false, 10);
+	private static final AsyncLog.Event LOG_UNKNOWN_BOARD = AsyncLog.event("Received response {} from board id {} that is not in our list, ignoring", false, 10, new AsyncLog.ArgFormatter[]{ COMMAND_NAME });
+	private static final AsyncLog.Event LOG_UNKNOWN_COMMAND = AsyncLog.event("Received unknown command with CMD byte: {}", false, 10);
+	private static final AsyncLog.Event LOG_BOARD_ERROR = AsyncLog.event("Error/Warning from board: {} : {} ", true, 20, new AsyncLog.ArgFormatter[]{ null, ERROR_NAME });
+	private static final AsyncLog.Event LOG_BOARD_SUSPECT = AsyncLog.event("Board {} missed {} feedback responses in a row, backing off", true, 10);
+	private static final AsyncLog.Event LOG_BOARD_RECOVERED = AsyncLog.event("Board {} is responding again after {} ms", false, 10);
+	private static final AsyncLog.Event LOG_SUSPECT_HANDLER_FAILED = AsyncLog.event("A board suspect handler threw while handling board {}, removing it", true, 10);
+	private static final AsyncLog.Event LOG_TELEMETRY_LISTENER_FAILED = AsyncLog.event("A telemetry listener threw on tick {}, cancelling its subscription (see TelemetrySubscription.getFailure())", true, 10);
+
+	// The responses to the per tick target frames, these close a round trip
+	private static final EnumSet<Command> TARGET_RESPONSES = EnumSet.of(
+			Command.TWO_TARGET_TICK_ACTUAL, Command.TWO_TARGET_TICK_VELOCITY, Command.TWO_TARGET_TICK_MOTOR_CURRENT,
+			Command.TWO_TARGET_TICK_POT, Command.TWO_TARGET_TICK_ENCODER, Command.TWO_TARGET_TICK_TWO_ACTUAL,
+			Command.TWO_TARGET_TICK_TWO_VELOCITY, Command.TWO_TARGET_TICK_TWO_MOTOR_CURRENT, Command.TWO_TARGET_TICK_TWO_POT,
+			Command.TWO_TARGET_TICK_TWO_ENCODER);
+
 	private ResponseType[] response_types;
 
 	private List<MCBMiniBoardDisabledHandler> board_disable_event_handlers;
@@ -143,18 +198,55 @@ public class MCBMiniServer{
 
 
 	private List<Request> responses_to_be_handled;
+	private final ArrayList<Request> free_responses = new ArrayList<Request>();
+	private RequestWrapper response_lookup;
 	private HashMap<RequestWrapper, ArrayList<TimestampedResponseHandler>> response_handlers;
 	private ArrayList<TimestampedIDResponseHandler> id_packet_handlers;
 
 	private HashMap<Integer, MCBMiniBoard> board_id_to_board_map;
 
-	private FramerateMonitor internal_upd_fm = new FramerateMonitor(2);
-	private FramerateMonitor all_board_upd_fm = new FramerateMonitor(2);
+	// The tick meter records the period between tick starts, the response meters count decoded responses
+	private final RateMeter tick_meter = new RateMeter("tick", true);
+	private final RateMeter response_meter = new RateMeter("responses");
+	private final RateMeter[] command_meters = new RateMeter[Command.values().length];
+	private long last_tick_start_ns;
+
+	// Cheap state for monitoring, only written by the update thread
+	private volatile long last_tick_duration_ns;
+	private volatile int requests_forwarded;
+	private volatile int boards_skipped;
+	private volatile int responses_pending;
+
+	// What the last tick did, for the tick events
+	private int boards_serviced;
+	private boolean tick_sent_parameters;
+
+	// Boards that miss this many feedback responses in a row become suspect and get polled with a backoff
+	private static final int DEFAULT_SUSPECT_THRESHOLD = 3;
+	private static final int MAX_BACKOFF_TICKS = 16;
+	private volatile int suspect_threshold = DEFAULT_SUSPECT_THRESHOLD;
+	private final Object suspect_handler_lock = new Object();
+	private volatile MCBMiniBoardSuspectHandler[] suspect_handlers = new MCBMiniBoardSuspectHandler[0];
+
+	// Degrades the bus load when ticks keep overrunning, the update thread follows its period
+	private TickWatchdog tick_watchdog;
+	private boolean[] board_skipped;
+
+	private final Object telemetry_lock = new Object();
+	private volatile TelemetrySubscription[] telemetry_subscriptions = new TelemetrySubscription[0];
+
+	private final Object host_controller_lock = new Object();
+	private volatile HostControllerRegistration[] host_controllers = new HostControllerRegistration[0];
+	private volatile long host_controller_budget_ns = -1;
+	private volatile long host_controller_stage_ns;
+	private volatile long host_controller_stage_max_ns;
 
 	public enum FaultHandlingPolicy {DO_NOTHING, RE_ENABLE};
 
 	private FaultHandlingPolicy fault_handling_policy = FaultHandlingPolicy.DO_NOTHING;
 
+	private boolean should_start_update_thread = true;
+
 	public MCBMiniServer(String port_name, ArrayList<MCBMiniBoard> boards) throws IOException{
 		this(port_name, boards, false);
 	}
@@ -180,9 +272,25 @@ public class MCBMiniServer{
 		init(ser_manager, boards, update_rate, false);
 	}
 
+	/**
+	 * A server without its update thread, the caller drives the ticks through internalUpdate() (for the allocation harness)
+	 */
+	MCBMiniServer(MCBMiniSerialManager ser_manager, ArrayList<MCBMiniBoard> boards, float update_rate, boolean should_start_update_thread) throws IOException{
+		this.should_start_update_thread = should_start_update_thread;
+		init(ser_manager, boards, update_rate, false);
+	}
+
 	private void init(MCBMiniSerialManager serial_manager, final ArrayList<MCBMiniBoard> boards, final float update_rate, boolean should_skip_firmware_check) throws IOException{
 		this.boards = boards;
+		this.update_rate = update_rate;
+		this.tick_period_ns = (long)(1.0E9 / (double)update_rate);
+		this.tick_watchdog = new TickWatchdog(tick_period_ns);
+		this.board_skipped = new boolean[boards.size()];
 		this.should_skip_firmware_checking = should_skip_firmware_check;
+
+		for (Command command : Command.values()) {
+			command_meters[command.ordinal()] = new RateMeter("responses."+command.name());
+		}
 		
 		should_resend_last_enabled_value_on_reset = true;
 		should_resend_last_known_ticks_on_reset = true;
@@ -204,6 +312,7 @@ public class MCBMiniServer{
 		last_check_for_timeouts_ms = -1;
 
 		this.ser_manager = serial_manager;
+		if( ser_manager != null ) ser_manager.getBusAccounting().setTickPeriodNanos(tick_period_ns);
 
 		if(ser_manager == null){
 			Log.println("Can't instantiate serial manager for mcbminiserver");
@@ -211,8 +320,10 @@ public class MCBMiniServer{
 		}
 
 		incoming_requests = Collections.synchronizedList( new ArrayList<MCBMiniServer.Request>() );
+		committed_motion_groups = Collections.synchronizedList( new ArrayList<MotionGroup>() );
 		responses_to_be_handled = Collections.synchronizedList( new ArrayList<MCBMiniServer.Request>() );
 		response_handlers = new HashMap<RequestWrapper, ArrayList<TimestampedResponseHandler>>();
+		response_lookup = new RequestWrapper();
 		id_packet_handlers = new ArrayList<TimestampedIDResponseHandler>();
 
 		board_disable_event_handlers = new ArrayList<MCBMiniBoardDisabledHandler>();
@@ -243,7 +354,6 @@ public class MCBMiniServer{
 		/*
 		 * This is our update thread that guarantees our motor framerate
 		 */
-		final long target_nanosecs_wait = (long)(1.0E9 / (double)update_rate);
 		Thread t2 = new Thread(new Runnable() {
 
 			double i_error = 0;
@@ -256,6 +366,7 @@ public class MCBMiniServer{
 			public void run() {
 
 				while(true){
+					long target_nanosecs_wait = tick_watchdog.getPeriodNanos();
 					long start_time = System.nanoTime();
 					long last_duration;
 					if( last_time == -1 ) last_duration = target_nanosecs_wait;
@@ -272,8 +383,28 @@ public class MCBMiniServer{
 					actual_nanosecs_wait = Math.max((long)(0.2*target_nanosecs_wait), actual_nanosecs_wait);
 
 					// Here we do our magic
+					Object tick_event = JfrSupport.AVAILABLE ? JfrEvents.beginTick() : null;
+					long bytes_before = tick_event == null ? 0 : ser_manager.getBytesSent();
+
 					internalUpdate();
 
+					if( tick_event != null ){
+						JfrEvents.endTick(tick_event, internal_update_counter, ser_manager.getBytesSent() - bytes_before, boards_serviced, tick_sent_parameters);
+					}
+
+					long tick_duration = System.nanoTime() - start_time;
+					last_tick_duration_ns = tick_duration;
+					if( tick_watchdog.tick(tick_duration) && JfrSupport.AVAILABLE ){
+						JfrEvents.tickOverrun(internal_update_counter, tick_duration, target_nanosecs_wait);
+					}
+					if( tick_watchdog.getPeriodNanos() != tick_period_ns ){
+						// The period changed, start over on a new tick grid
+						tick_period_ns = tick_watchdog.getPeriodNanos();
+						tick_origin_ns = -1;
+						i_error = 0;
+						ser_manager.getBusAccounting().setTickPeriodNanos(tick_period_ns);
+					}
+
 					try {
 						// Sleep for the requested amount of time (minus a millisecond or two)
 						Thread.sleep( Math.max(0, (actual_nanosecs_wait - (System.nanoTime()-start_time)) / 1000000 - 2 ));
@@ -292,7 +423,7 @@ public class MCBMiniServer{
 			}
 		});
 		t2.setPriority(Thread.MAX_PRIORITY);
-		t2.start();
+		if( should_start_update_thread ) t2.start();
 
 		/*
 		 * Start by sending all the boards an empty message, this could clear out the RX buffers (and flush bad checksums)
@@ -392,6 +523,13 @@ public class MCBMiniServer{
 		return ser_manager.getNumberOfBadChecksums();
 	}
 
+	/**
+	 * @return whether all the boards have reported a firmware version this server can talk to
+	 */
+	boolean isFirmwareConfirmed(){
+		return board_firmware_has_been_confirmed;
+	}
+
 	public void waitForServerInitialization(){
 		int count = 0;
 		while( !board_firmware_has_been_confirmed ){
@@ -416,17 +554,43 @@ public class MCBMiniServer{
 	/**
 	 * This method gets called at the update rate of the controllers from within the update thread
 	 */
-	private int internal_update_counter = 0;
-	private void internalUpdate(){
+	private volatile long internal_update_counter = 0;
+	private long tick_start_ns;
+
+	// The nominal tick grid that target functions get evaluated against, re-anchored if the loop falls off it
+	private long tick_period_ns;
+	private long tick_origin_ns = -1;
+	private long tick_origin_counter;
+	private volatile long tick_scheduled_ns;
+
+	// Nothing in here may allocate per tick, AllocationHarness keeps an eye on that
+	void internalUpdate(){
 		internal_update_counter++;
-		internal_upd_fm.update();
+		tick_start_ns = System.nanoTime();
+		tick_scheduled_ns = scheduledTickTime(tick_start_ns);
+		boolean sent_targets = false;
+		boards_serviced = 0;
+		tick_sent_parameters = false;
+		if( last_tick_start_ns != 0 ) tick_meter.record(tick_start_ns - last_tick_start_ns);
+		last_tick_start_ns = tick_start_ns;
 
 		/*
 		 * Handle all commands received from the boards
 		 */
-		for (ByteBuffer buffer : ser_manager.handleBufferedSerialData()) {
-			handleCommandInBuffer( buffer );
+		List<ByteBuffer> packets = ser_manager.handleBufferedSerialData();
+		for(int p=0; p<packets.size(); p++){
+			handleCommandInBuffer( packets.get(p), ser_manager.getPacketArrivalNanos(p) );
 		}
+
+		/*
+		 * Count the feedback polls that should have been answered by now
+		 */
+		checkForMissedResponses(System.nanoTime());
+
+		/*
+		 * Hand the feedback that arrived during this tick to the telemetry subscribers
+		 */
+		deliverTelemetry();
 		
 		if( should_skip_firmware_checking || board_firmware_has_been_confirmed ){
 			/*
@@ -435,9 +599,10 @@ public class MCBMiniServer{
 			long cur_time = System.currentTimeMillis();
 			if( last_check_for_timeouts_ms == -1 ) last_check_for_timeouts_ms = cur_time;
 			if( cur_time - last_check_for_timeouts_ms > 1000 ){
-				for (MCBMiniBoard board : boards) {
+				for(int b=0; b<boards.size(); b++){
+					MCBMiniBoard board = boards.get(b);
 					if( cur_time - board.last_received_message_ms  > 500 ){
-						Log.println("No response from board ID: "+board.getId());
+						AsyncLog.log(LOG_NO_RESPONSE, board.getId());
 						board.increaseErrorCount(Error.NO_RESPONSE);
 					}
 				}
@@ -460,8 +625,10 @@ public class MCBMiniServer{
 //			}
 			
 			boolean isSendingParameters = false;
-			for (MCBMiniBoard board : boards) {
-				for (Channel channel : Channel.values()) {
+			for(int b=0; b<boards.size(); b++){
+				MCBMiniBoard board = boards.get(b);
+				for(int c=0; c<CHANNELS.length; c++){
+					Channel channel = CHANNELS[c];
 					ChannelParameter dirtyParameter = board.getDirtyParameter(channel);
 					if( dirtyParameter != null ){
 						isSendingParameters = true;
@@ -470,7 +637,8 @@ public class MCBMiniServer{
 				}
 			}
 			if( isSendingParameters ){
-				ser_manager.sendTxBuffer();
+				tick_sent_parameters = true;
+				ser_manager.sendTxBuffer(internal_update_counter);
 				return;
 			}
 
@@ -478,56 +646,99 @@ public class MCBMiniServer{
 			 * Then we send updated positions and get positions and currents back
 			 */
 			// Alternate feedback from the two channels of all boards
-			Channel response_channel = CHANNELS[ internal_update_counter % 2 ];
+			Channel response_channel = CHANNELS[ (int)(internal_update_counter % 2) ];
 
 			// Every Xth time, we get electric current information instead of position feedback
-			ResponseType response_type = response_types[ internal_update_counter % response_types.length ];
+			ResponseType response_type = response_types[ (int)(internal_update_counter % response_types.length) ];
+
+			/*
+			 * Motion groups get applied all at once so that they go out in this frame
+			 */
+			synchronized (committed_motion_groups) {
+				for(int i=0; i<committed_motion_groups.size(); i++){
+					committed_motion_groups.get(i).apply(internal_update_counter);
+				}
+				committed_motion_groups.clear();
+			}
+
+			sent_targets = true;
+
+			/*
+			 * Evaluate the active target functions of all boards
+			 */
+			evaluateTargetFunctions(tick_scheduled_ns, internal_update_counter);
+
+			/*
+			 * Host side control loops get the last word on the targets
+			 */
+			runHostControllers(tick_scheduled_ns, internal_update_counter);
 
 			/*
 			 * For older firmware we just stream positions all the time
 			 */
-			for (MCBMiniBoard board : boards) {
-				/*
-				 * Here we check to see if either channel has an active target function, if so then we apply its value
-				 */
-				for (Channel channel : Channel.values()) {
-					board.applyTargetFunction(channel);
+			boolean skip_idle = tick_watchdog.isSkippingIdleFeedback() && minimum_firmware_version >= 16;
+			boolean shed_extra_pins = tick_watchdog.isSheddingExtraPinPolling();
+			int skipped = 0;
+			for(int b=0; b<boards.size(); b++){
+				MCBMiniBoard board = boards.get(b);
+
+				// Suspect boards only get polled with a backoff so they don't eat up bus time, their fresh targets wait,
+				// unless a motion group was applied to them this tick, the whole group goes out together
+				if( board.isSuspect() && board.motion_group_tick != internal_update_counter
+						&& internal_update_counter - board.last_poll_tick < board.backoff_ticks ){
+					board_skipped[b] = true;
+					skipped++;
+					continue;
 				}
 
 				/*
 				 * Now we apply the actual positions
 				 */
-				Integer target_A, target_B;
+				int target_A, target_B;
 				if( minimum_firmware_version < 16 ){
 					target_A = board.getTargetTick(Channel.A);
 					target_B = board.getTargetTick(Channel.B);
+					board_skipped[b] = false;
 				}
 				// Otherwise we send a special value when the target position hasn't changed
 				else{
-					target_A = board.getFreshTargetTick(Channel.A);
-					target_B = board.getFreshTargetTick(Channel.B);
-					if( target_A == null ) target_A = Integer.MAX_VALUE;
-					if( target_B == null ) target_B = Integer.MAX_VALUE;
+					target_A = board.takeFreshTargetTick(Channel.A);
+					target_B = board.takeFreshTargetTick(Channel.B);
+					// When degraded, boards that are holding still only get polled every few ticks
+					board_skipped[b] = skip_idle && target_A == Integer.MAX_VALUE && target_B == Integer.MAX_VALUE
+							&& (internal_update_counter + board.getId()) % TickWatchdog.IDLE_FEEDBACK_DIVISOR != 0;
 				}
 
-				ser_manager.writeSpecializedPacket(board, response_type, response_channel, target_A, target_B);
+				// The targets that actually go out are part of the telemetry too
+				if( target_A != Integer.MAX_VALUE ) recordTelemetry(board, Channel.A, ChannelParameter.TARGET_TICK, target_A, tick_start_ns);
+				if( target_B != Integer.MAX_VALUE ) recordTelemetry(board, Channel.B, ChannelParameter.TARGET_TICK, target_B, tick_start_ns);
+
+				if( board_skipped[b] ){
+					skipped++;
+				}
+				else{
+					ser_manager.writeSpecializedPacket(board, response_type, response_channel, target_A, target_B);
+					boards_serviced++;
+				}
 
 				/*
 				 * Here we handle the Extra pin functionality
 				 */
 				ExtraPinMode extraPinMode = board.getExtraPinMode(response_channel);
 				if( extraPinMode == ExtraPinMode.ANALOG ){
-					ser_manager.writeGenericPacket(board, response_channel, Command.EXTRA_PIN_VALUE, true, 0);
+					// Polling the analog value is the first thing to go when the bus is overloaded
+					if( !shed_extra_pins ) ser_manager.writeGenericPacket(board, response_channel, Command.EXTRA_PIN_VALUE, true, 0);
 				}
 				else if( extraPinMode == ExtraPinMode.SERVO ){
 					ser_manager.writeGenericPacket(board, response_channel, Command.EXTRA_PIN_VALUE, false, board.getExtraPinValue(response_channel));
 				}
 			}
+			boards_skipped = skipped;
 		}
 		// Otherwise we just send empty packets
 		else{
-			for (MCBMiniBoard board : boards) {
-				ser_manager.writeGenericPacket(board, CHANNELS[ internal_update_counter % 2 ], Command.EMPTY_RESPONSE, false, 0);
+			for(int b=0; b<boards.size(); b++){
+				ser_manager.writeGenericPacket(boards.get(b), CHANNELS[ (int)(internal_update_counter % 2) ], Command.EMPTY_RESPONSE, false, 0);
 			}
 		}
 
@@ -535,31 +746,421 @@ public class MCBMiniServer{
 		 * Now we see if we need to forward any requests
 		 */
 		synchronized (incoming_requests) {
-			Iterator<Request> i = incoming_requests.iterator();
-			while(i.hasNext()){
-				Request r = i.next();
+			requests_forwarded = incoming_requests.size();
+			for(int i=0; i<incoming_requests.size(); i++){
+				Request r = incoming_requests.get(i);
 				ser_manager.writeGenericPacket(r.board, r.channel, r.command, r.should_get_response, r.value);
-				i.remove();
 			}
+			incoming_requests.clear();
 		}
 
+		// The round trip of the feedback requests starts when the frames are handed to the port
+		long sent_ns = System.nanoTime();
+
 		// Send out whole buffer over serial
-		ser_manager.sendTxBuffer();
+		ser_manager.sendTxBuffer(internal_update_counter);
+
+		if( sent_targets ){
+			for(int b=0; b<boards.size(); b++){
+				if( board_skipped[b] ) continue;
+				MCBMiniBoard board = boards.get(b);
+				board.request_sent_ns = sent_ns;
+				board.polls_unanswered++;
+				board.last_poll_tick = internal_update_counter;
+				if( board.isSuspect() ) board.backoff_ticks = Math.min(2 * board.backoff_ticks, MAX_BACKOFF_TICKS);
+			}
+		}
 	}
 
 	public List<MCBMiniBoard> getBoards(){
 		return Collections.unmodifiableList(boards);
 	}
 
+	/**
+	 * @return the rate (Hz) that the update thread is trying to run at
+	 */
+	public float getUpdateRate(){
+		return update_rate;
+	}
+
+	/**
+	 * @return the rate (Hz) that the update thread is running at after the tick watchdog had its say
+	 */
+	public float getEffectiveUpdateRate(){
+		return tick_watchdog.getUpdateRate();
+	}
+
+	/**
+	 * @return the watchdog that degrades the bus load when ticks overrun, configure its policy and listen to it here
+	 */
+	public TickWatchdog getTickWatchdog(){
+		return tick_watchdog;
+	}
+
+	/**
+	 * @return the sequence number of the last tick of the update thread, every TX buffer goes out on its own tick
+	 */
+	public long getTickSequence(){
+		return internal_update_counter;
+	}
+
+	/**
+	 * Functions that support batching are grouped by type and evaluated one batch at a time, the rest get applied one by one
+	 */
+	private void evaluateTargetFunctions(long tick_ns, long tick){
+		for(int b=0; b<boards.size(); b++){
+			MCBMiniBoard board = boards.get(b);
+			for(int c=0; c<CHANNELS.length; c++){
+				Channel channel = CHANNELS[c];
+				TargetFunction function = board.getTargetFunction(channel);
+				if( function instanceof BatchTargetFunction ){
+					BatchTargetFunction batch_function = (BatchTargetFunction)function;
+					if( !batch_function.isInitialized() ) batch_function.initialize(tick_ns, tick);
+					batchFor(batch_function).add(batch_function, board, channel);
+				}
+				else if( function != null ){
+					board.applyTargetFunction(channel, tick_ns, tick);
+				}
+			}
+		}
+
+		for(int i=0; i<function_batches.size(); i++){
+			TargetFunctionBatch batch = function_batches.get(i);
+			if( batch.size() == 0 ) continue;
+			batch.evaluate(tick_ns, tick);
+			batch.applyTargets();
+			batch.clear();
+		}
+	}
+
+	private TargetFunctionBatch batchFor(BatchTargetFunction function){
+		Object type = function.getBatchType();
+		for(int i=0; i<function_batch_types.size(); i++){
+			if( function_batch_types.get(i) == type ) return function_batches.get(i);
+		}
+		TargetFunctionBatch batch = function.createBatch();
+		function_batch_types.add(type);
+		function_batches.add(batch);
+		return batch;
+	}
+
+	/**
+	 * Called by MotionGroup.commit(), the group gets applied on the next tick that sends targets
+	 */
+	void commitMotionGroup(MotionGroup group){
+		committed_motion_groups.add(group);
+	}
+
+	public MotionGroup createMotionGroup(){
+		return new MotionGroup(this);
+	}
+
+	/**
+	 * @return the scheduled bus time (System.nanoTime() based) of the current tick, this is what target functions are evaluated against
+	 */
+	public long getTickTimestampNanos(){
+		return tick_scheduled_ns;
+	}
+
+	/**
+	 * The update loop holds the average rate but each tick starts with some jitter, so instead of the measured start
+	 * we give the tick its slot on a fixed grid. If the loop gets more than a period off the grid (stalls, overload)
+	 * then the grid is moved to where the loop actually is.
+	 */
+	private long scheduledTickTime(long now_ns){
+		if( tick_origin_ns != -1 ){
+			long scheduled = tick_origin_ns + (internal_update_counter - tick_origin_counter) * tick_period_ns;
+			if( Math.abs(now_ns - scheduled) <= tick_period_ns ) return scheduled;
+		}
+		tick_origin_ns = now_ns;
+		tick_origin_counter = internal_update_counter;
+		return now_ns;
+	}
+
+	/**
+	 * A feedback poll counts as missed when it is unanswered and older than the board's response deadline, the newest
+	 * poll is usually still on its way. Boards that miss suspect_threshold polls in a row become suspect.
+	 */
+	private void checkForMissedResponses(long now_ns){
+		int threshold = suspect_threshold;
+		for(int b=0; b<boards.size(); b++){
+			MCBMiniBoard board = boards.get(b);
+			int polls = board.polls_unanswered;
+			if( polls == 0 ) continue;
+
+			int missed = now_ns - board.request_sent_ns < board.getResponseDeadlineNanos() ? polls-1 : polls;
+			board.setMissedResponses(missed);
+			if( missed >= threshold && !board.isSuspect() ){
+				board.setSuspect(true, now_ns);
+				board.backoff_ticks = 2;
+				long last_ns = board.getLastFeedbackNanos();
+				long silence_ns = last_ns == 0 ? 0 : now_ns - last_ns;
+				AsyncLog.log(LOG_BOARD_SUSPECT, board.getId(), missed);
+				if( JfrSupport.AVAILABLE ) JfrEvents.boardSuspect(board.getId(), missed, silence_ns);
+				MCBMiniBoardSuspectHandler[] handlers = suspect_handlers;
+				for(int i=0; i<handlers.length; i++){
+					try {
+						handlers[i].handleBoardSuspect(board, missed);
+					} catch (RuntimeException e) {
+						suspectHandlerFailed(handlers[i], board);
+					}
+				}
+			}
+		}
+	}
+
+	private void boardRecovered(MCBMiniBoard board, long now_ns){
+		long silence_ns = now_ns - board.getSuspectSinceNanos();
+		board.setSuspect(false, now_ns);
+		AsyncLog.log(LOG_BOARD_RECOVERED, board.getId(), silence_ns / 1000000);
+		MCBMiniBoardSuspectHandler[] handlers = suspect_handlers;
+		for(int i=0; i<handlers.length; i++){
+			try {
+				handlers[i].handleBoardRecovered(board, silence_ns);
+			} catch (RuntimeException e) {
+				suspectHandlerFailed(handlers[i], board);
+			}
+		}
+	}
+
+	/**
+	 * The handlers run on the update thread, one that throws gets removed instead of taking the control loop down with it
+	 */
+	private void suspectHandlerFailed(MCBMiniBoardSuspectHandler handler, MCBMiniBoard board){
+		removeBoardSuspectHandler(handler);
+		AsyncLog.log(LOG_SUSPECT_HANDLER_FAILED, board.getId());
+	}
+
+	/**
+	 * @param threshold how many feedback responses in a row a board may miss before it becomes suspect, defaults to 3
+	 */
+	public void setSuspectThreshold(int threshold){
+		if( threshold < 1 ) throw new IllegalArgumentException("Suspect threshold must be >= 1");
+		this.suspect_threshold = threshold;
+	}
+
+	public int getSuspectThreshold(){
+		return suspect_threshold;
+	}
+
+	public void addBoardSuspectHandler(MCBMiniBoardSuspectHandler handler){
+		synchronized (suspect_handler_lock) {
+			MCBMiniBoardSuspectHandler[] handlers = new MCBMiniBoardSuspectHandler[suspect_handlers.length+1];
+			System.arraycopy(suspect_handlers, 0, handlers, 0, suspect_handlers.length);
+			handlers[handlers.length-1] = handler;
+			suspect_handlers = handlers;
+		}
+	}
+
+	public boolean removeBoardSuspectHandler(MCBMiniBoardSuspectHandler handler){
+		synchronized (suspect_handler_lock) {
+			ArrayList<MCBMiniBoardSuspectHandler> handlers = new ArrayList<MCBMiniBoardSuspectHandler>(Arrays.asList(suspect_handlers));
+			boolean ret = handlers.remove(handler);
+			suspect_handlers = handlers.toArray(new MCBMiniBoardSuspectHandler[handlers.size()]);
+			return ret;
+		}
+	}
+
+	/**
+	 * Adds a control loop that runs every tick between the feedback decoding and the sending of the targets
+	 * @param controller
+	 * @param budget_ns how long the controller may take per tick, it gets disabled if it goes over this too many ticks in a row
+	 * @return the registration, holds the execution time metrics
+	 */
+	public HostControllerRegistration addHostController(HostController controller, long budget_ns){
+		HostControllerRegistration registration = new HostControllerRegistration(controller, budget_ns);
+		synchronized (host_controller_lock) {
+			HostControllerRegistration[] controllers = new HostControllerRegistration[host_controllers.length+1];
+			System.arraycopy(host_controllers, 0, controllers, 0, host_controllers.length);
+			controllers[controllers.length-1] = registration;
+			host_controllers = controllers;
+		}
+		return registration;
+	}
+
+	public void removeHostController(HostControllerRegistration registration){
+		synchronized (host_controller_lock) {
+			ArrayList<HostControllerRegistration> controllers = new ArrayList<HostControllerRegistration>();
+			for (HostControllerRegistration reg : host_controllers) {
+				if( reg != registration ) controllers.add(reg);
+			}
+			host_controllers = controllers.toArray(new HostControllerRegistration[controllers.size()]);
+		}
+	}
+
+	/**
+	 * @param budget_ns the time all host controllers together may take per tick, controllers that are due after it is used up are skipped. Defaults to a quarter of the tick period
+	 */
+	public void setHostControllerBudget(long budget_ns){
+		this.host_controller_budget_ns = budget_ns;
+	}
+
+	public long getHostControllerBudget(){
+		long budget = host_controller_budget_ns;
+		return budget > 0 ? budget : tick_period_ns / 4;
+	}
+
+	/**
+	 * @return how long the host controller stage took in the last tick and at most, in nanoseconds
+	 */
+	public long getHostControllerStageNanos(){ return host_controller_stage_ns; }
+	public long getHostControllerStageMaxNanos(){ return host_controller_stage_max_ns; }
+
+	private void runHostControllers(long tick_ns, long tick){
+		HostControllerRegistration[] controllers = host_controllers;
+		if( controllers.length == 0 ) return;
+
+		long budget = getHostControllerBudget();
+		long stage_start = System.nanoTime();
+		for(int i=0; i<controllers.length; i++){
+			HostControllerRegistration controller = controllers[i];
+			if( !controller.isEnabled() ) continue;
+			if( System.nanoTime() - stage_start > budget ){
+				controller.skip();
+				continue;
+			}
+			controller.run(tick_ns, tick);
+		}
+		long duration = System.nanoTime() - stage_start;
+		host_controller_stage_ns = duration;
+		if( duration > host_controller_stage_max_ns ) host_controller_stage_max_ns = duration;
+	}
+
+	/**
+	 * Subscribes to feedback samples, the listener gets called once per tick (from the update thread) with the samples
+	 * of the requested fields that arrived during that tick for the channels picked out by the selector
+	 * @param selector which board channels to receive samples for, null for all of them
+	 * @param fields which feedback fields to receive (ACTUAL_TICK, MOTOR_CURRENT, ACTUAL_POT, ACTUAL_ENCODER, EXTRA_PIN_VALUE) and TARGET_TICK for the targets sent out (those show up in the batch of the following tick)
+	 * @param listener
+	 * @return the subscription, cancel it to stop receiving batches
+	 */
+	public TelemetrySubscription subscribe(ChannelSelector selector, EnumSet<ChannelParameter> fields, TelemetryListener listener){
+		TelemetrySubscription subscription = new TelemetrySubscription(boards, selector, fields, listener);
+		synchronized (telemetry_lock) {
+			TelemetrySubscription[] subscriptions = new TelemetrySubscription[telemetry_subscriptions.length+1];
+			System.arraycopy(telemetry_subscriptions, 0, subscriptions, 0, telemetry_subscriptions.length);
+			subscriptions[subscriptions.length-1] = subscription;
+			telemetry_subscriptions = subscriptions;
+		}
+		return subscription;
+	}
+
+	public void unsubscribe(TelemetrySubscription subscription){
+		subscription.cancel();
+		synchronized (telemetry_lock) {
+			ArrayList<TelemetrySubscription> subscriptions = new ArrayList<TelemetrySubscription>();
+			for (TelemetrySubscription sub : telemetry_subscriptions) {
+				if( sub != subscription ) subscriptions.add(sub);
+			}
+			telemetry_subscriptions = subscriptions.toArray(new TelemetrySubscription[subscriptions.size()]);
+		}
+	}
+
+	private void deliverTelemetry(){
+		TelemetrySubscription[] subscriptions = telemetry_subscriptions;
+		for(int i=0; i<subscriptions.length; i++){
+			if( subscriptions[i].isCancelled() ){
+				unsubscribe(subscriptions[i]);
+				continue;
+			}
+			if( !subscriptions[i].deliver(internal_update_counter, tick_start_ns) ){
+				AsyncLog.log(LOG_TELEMETRY_LISTENER_FAILED, internal_update_counter);
+			}
+		}
+	}
+
+	/**
+	 * Stores a feedback value that was decoded from a board response and passes it on to the telemetry subscribers
+	 */
+	private void updateFeedback(MCBMiniBoard board, Channel channel, ChannelParameter field, int value, long timestamp_ns){
+		board.setChannelParameter(channel, field, value);
+		board.appendHistory(channel, field, value, timestamp_ns);
+		recordTelemetry(board, channel, field, value, timestamp_ns);
+	}
+
+	private void recordTelemetry(MCBMiniBoard board, Channel channel, ChannelParameter field, int value, long timestamp_ns){
+		TelemetrySubscription[] subscriptions = telemetry_subscriptions;
+		for(int i=0; i<subscriptions.length; i++){
+			subscriptions[i].record(board.getId(), channel, field, value, timestamp_ns);
+		}
+	}
+
 
 	public float[] getUpdateRates(float[] in){
 		if( in == null ) in = new float[2];
 
-		in[0] = internal_upd_fm.getFPS();
-		in[1] = all_board_upd_fm.getFPS();
+		in[0] = tick_meter.getRate(Window.ONE_SECOND);
+		in[1] = response_meter.getRate(Window.ONE_SECOND);
 		return in;
 	}
 
+	public MCBMiniSerialManager getSerialManager(){
+		return ser_manager;
+	}
+
+	/**
+	 * @return a summary of where the bus bytes go and how much room is left, over the last 10 seconds
+	 */
+	public String getBusReport(){
+		return ser_manager.getBusAccounting().getReport(boards.size(), update_rate);
+	}
+
+	/**
+	 * @return how long the last tick took including writing to the bus
+	 */
+	public long getLastTickDurationNanos(){
+		return last_tick_duration_ns;
+	}
+
+	/**
+	 * @return the number of ticks that took longer than the update period, the one the tick watchdog is running at
+	 */
+	public long getTickOverruns(){
+		return tick_watchdog.getNumberOfOverruns();
+	}
+
+	/**
+	 * @return the number of idle boards that the last tick didn't poll because the tick watchdog is skipping idle feedback
+	 */
+	public int getBoardsSkippedLastTick(){
+		return boards_skipped;
+	}
+
+	/**
+	 * @return the number of queued requests that went out with the last tick
+	 */
+	public int getRequestsForwardedLastTick(){
+		return requests_forwarded;
+	}
+
+	/**
+	 * @return the number of decoded responses waiting for update() to hand them to their handlers
+	 */
+	public int getPendingResponses(){
+		return responses_pending;
+	}
+
+	/**
+	 * @return the meter of the update thread, its values are the periods between tick starts in nanoseconds
+	 */
+	public RateMeter getTickMeter(){
+		return tick_meter;
+	}
+
+	/**
+	 * @return the meter counting all responses decoded from the bus
+	 */
+	public RateMeter getResponseMeter(){
+		return response_meter;
+	}
+
+	/**
+	 * @return the meter counting the decoded responses of one command type
+	 */
+	public RateMeter getCommandMeter(Command command){
+		return command_meters[command.ordinal()];
+	}
+
 	/**
 	 * This method posts a request down to a motorboard and when a reply arrives, it calls all registered broadcast handlers with the response
 	 */
@@ -646,9 +1247,8 @@ public class MCBMiniServer{
 		 * Take all messages to be handled and pass them to all the handlers
 		 */
 		synchronized (responses_to_be_handled) {
-			Iterator<Request> i = responses_to_be_handled.iterator();
-			while(i.hasNext()){
-				Request req = i.next();
+			for(int r=0; r<responses_to_be_handled.size(); r++){
+				Request req = responses_to_be_handled.get(r);
 				boolean handled = false;
 
 				// If this is an ID response then call the ID handlers
@@ -663,8 +1263,9 @@ public class MCBMiniServer{
 
 				// Otherwise just send it to the designated handlers
 				else{
-					ArrayList<TimestampedResponseHandler> handlers = response_handlers.get( new RequestWrapper(req) );
-					if( handlers != null ){
+					response_lookup.set(req.command, req.board, req.channel);
+					ArrayList<TimestampedResponseHandler> handlers = response_handlers.get( response_lookup );
+					if( handlers != null && !handlers.isEmpty() ){
 						ArrayList<TimestampedResponseHandler> handlers_use = new ArrayList<MCBMiniServer.TimestampedResponseHandler>(handlers);
 						handlers.clear();
 						for (TimestampedResponseHandler ts_handler : handlers_use) {
@@ -678,8 +1279,10 @@ public class MCBMiniServer{
 				//				if( !handled ){
 				//					Log.println("ERROR: received response from board "+req.board.getId()+" but no handler was subscribed to it ("+req.command+")");
 				//				}
-				i.remove();
+				free_responses.add(req);
 			}
+			responses_to_be_handled.clear();
+			responses_pending = 0;
 		}
 
 		/*
@@ -688,30 +1291,34 @@ public class MCBMiniServer{
 		if( update_counter % 50 ==0 ){
 			long now = System.currentTimeMillis();
 
-			Iterator<TimestampedIDResponseHandler> ii = id_packet_handlers.iterator();
-			List<TimestampedIDResponseHandler> timedout_id = new ArrayList<MCBMiniServer.TimestampedIDResponseHandler>();
-			while(ii.hasNext()){
-				TimestampedIDResponseHandler ts_handler = ii.next();
+			List<TimestampedIDResponseHandler> timedout_id = null;
+			for(int h=id_packet_handlers.size()-1; h>=0; h--){
+				TimestampedIDResponseHandler ts_handler = id_packet_handlers.get(h);
 				if( now - ts_handler.timestamp > 1000 ){
-					timedout_id.add( ts_handler );
-					ii.remove();
+					if( timedout_id == null ) timedout_id = new ArrayList<MCBMiniServer.TimestampedIDResponseHandler>();
+					timedout_id.add( 0, ts_handler );
+					id_packet_handlers.remove(h);
 				}
 			}
-			for (TimestampedIDResponseHandler ts_handler : timedout_id) {
+			if( timedout_id != null ) for (TimestampedIDResponseHandler ts_handler : timedout_id) {
+				if( JfrSupport.AVAILABLE ) JfrEvents.requestTimeout(ts_handler.original_request.board==null?Id.BROADCAST.getIDInt():ts_handler.original_request.board.getId(), null, Command.ID);
 				ts_handler.handler.handleTimeout(ts_handler.original_request.board==null?Id.BROADCAST.getIDInt():ts_handler.original_request.board.getId());
 			}
 
-			List<TimestampedResponseHandler> timedout = new ArrayList<MCBMiniServer.TimestampedResponseHandler>();
+			List<TimestampedResponseHandler> timedout = null;
 			for (ArrayList<TimestampedResponseHandler> list : response_handlers.values()) {
-				Iterator<TimestampedResponseHandler> iii = list.iterator();
-				while(iii.hasNext()){
-					TimestampedResponseHandler ts_handler = iii.next();
+				for(int h=0; h<list.size(); h++){
+					TimestampedResponseHandler ts_handler = list.get(h);
 					if( now - ts_handler.timestamp > 1000 ){
+						if( timedout == null ) timedout = new ArrayList<MCBMiniServer.TimestampedResponseHandler>();
 						timedout.add( ts_handler );
-						iii.remove();
+						list.remove(h--);
 					}
 				}
+				if( timedout == null ) continue;
 				for (TimestampedResponseHandler ts_handler : timedout) {
+					Request request = ts_handler.original_request;
+					if( JfrSupport.AVAILABLE ) JfrEvents.requestTimeout(request.board.getId(), request.channel, request.command);
 					ts_handler.handler.handleTimeout(ts_handler.original_request.board, ts_handler.original_request.channel, ts_handler.original_request.command);
 				}
 				timedout.clear();
@@ -722,24 +1329,33 @@ public class MCBMiniServer{
 		 * Notify handlers that boards were disabled
 		 */
 		synchronized (board_disable_event_handlers) {
-			for (BoardDisabledEvent ev : board_disable_events) {
-				for (MCBMiniBoardDisabledHandler handler : board_disable_event_handlers) {
-					handler.handleBoardDisableEvent(ev.board, ev.channel);
+			for(int e=0; e<board_disable_events.size(); e++){
+				BoardDisabledEvent ev = board_disable_events.get(e);
+				for(int h=0; h<board_disable_event_handlers.size(); h++){
+					board_disable_event_handlers.get(h).handleBoardDisableEvent(ev.board, ev.channel);
 				}
 			}
 			board_disable_events.clear();
 		}
+
+		/*
+		 * Notify handlers that the tick watchdog changed its level
+		 */
+		tick_watchdog.deliverChanges();
 	}
 
 	/**
 	 * Internal method for handling a single command that is placed in the front of the buffer
 	 * @param bb
 	 */
-	private void handleCommandInBuffer(ByteBuffer bb){
+	/**
+	 * @param received_ns when the last byte of the packet came in off the bus
+	 */
+	private void handleCommandInBuffer(ByteBuffer bb, long received_ns){
 		int handler_value = Integer.MAX_VALUE;
 
 		if(bb.limit()-bb.position()<1){
-			Log.println("Weird, got small bb. pos:"+bb.position()+" lim:"+bb.limit()+" cap:"+bb.capacity());
+			AsyncLog.log(LOG_SMALL_BUFFER, bb.position(), bb.limit(), bb.capacity());
 		}
 		int id = ByteBufferUtils.getFromBack(bb) & 0xff;
 		Channel ch = ((id >> 7) & 0x01)==0 ? Channel.A : Channel.B;		// Here we pick out the channel bit
@@ -752,8 +1368,11 @@ public class MCBMiniServer{
 		Command command = Command.getForCmdId( cmd_byte );
 		MCBMiniBoard board = board_id_to_board_map.get( id );
 
+		// ID responses answer broadcasts so they aren't correlated
+		if( command != Command.ID ) ser_manager.getFrameCorrelator().received(id, ch, command, received_ns);
+
 		if( board == null && command != Command.ID ){
-			Log.println("Received response "+command+" from board id "+id+" that is not in our list, ignoring");
+			AsyncLog.log(LOG_UNKNOWN_BOARD, cmd_byte, id);
 			return;
 		}
 
@@ -766,55 +1385,65 @@ public class MCBMiniServer{
 			sendRequestForResponse(board, ch, Command.REQUEST_MESSAGE, null);
 		}
 
-		all_board_upd_fm.update();
+		response_meter.mark();
+		if( command != null ) command_meters[command.ordinal()].mark();
+		if( JfrSupport.AVAILABLE ) JfrEvents.frameDecoded(id, ch, command, bb.limit());
+
+		if( board != null ){
+			if( TARGET_RESPONSES.contains(command) ){
+				board.updateRoundTrip(received_ns);
+				if( board.isSuspect() ) boardRecovered(board, received_ns);
+			}
+			else board.getResponseMeter().mark();
+		}
 
 		// If this is a response to our target pos special then just put current data into the motor objects
 		if( command == Command.TWO_TARGET_TICK_ACTUAL || command == Command.TWO_TARGET_TICK_VELOCITY ){
 			int tick = ByteBufferUtils.getIntFromBack(bb);
 			if( tick != Integer.MAX_VALUE ){
-				board.setChannelParameter(ch, ChannelParameter.ACTUAL_TICK, tick );
+				updateFeedback(board, ch, ChannelParameter.ACTUAL_TICK, tick, received_ns );
 			}
 		}
 		else if( command == Command.TWO_TARGET_TICK_TWO_ACTUAL || command == Command.TWO_TARGET_TICK_TWO_VELOCITY ){
 			int tick = ByteBufferUtils.getIntFromBack(bb);
 			if( tick != Integer.MAX_VALUE ){
-				board.setChannelParameter(Channel.A, ChannelParameter.ACTUAL_TICK,  tick );
+				updateFeedback(board, Channel.A, ChannelParameter.ACTUAL_TICK, tick, received_ns );
 			}
 			tick = ByteBufferUtils.getIntFromBack(bb);
 			if( tick != Integer.MAX_VALUE ){
-				board.setChannelParameter(Channel.B, ChannelParameter.ACTUAL_TICK,  tick );
+				updateFeedback(board, Channel.B, ChannelParameter.ACTUAL_TICK, tick, received_ns );
 			}
 		}
 		else if( command == Command.TWO_TARGET_TICK_TWO_ENCODER ){
-			board.setChannelParameter(Channel.A, ChannelParameter.ACTUAL_ENCODER,  ByteBufferUtils.getIntFromBack(bb) );
-			board.setChannelParameter(Channel.B, ChannelParameter.ACTUAL_ENCODER,  ByteBufferUtils.getIntFromBack(bb) );
+			updateFeedback(board, Channel.A, ChannelParameter.ACTUAL_ENCODER, ByteBufferUtils.getIntFromBack(bb), received_ns );
+			updateFeedback(board, Channel.B, ChannelParameter.ACTUAL_ENCODER, ByteBufferUtils.getIntFromBack(bb), received_ns );
 		}
 		else if( command == Command.TWO_TARGET_TICK_TWO_POT ){
-			board.setChannelParameter(Channel.A, ChannelParameter.ACTUAL_POT,  ByteBufferUtils.getIntFromBack(bb) );
-			board.setChannelParameter(Channel.B, ChannelParameter.ACTUAL_POT,  ByteBufferUtils.getIntFromBack(bb) );
+			updateFeedback(board, Channel.A, ChannelParameter.ACTUAL_POT, ByteBufferUtils.getIntFromBack(bb), received_ns );
+			updateFeedback(board, Channel.B, ChannelParameter.ACTUAL_POT, ByteBufferUtils.getIntFromBack(bb), received_ns );
 		}
 		else if( command == Command.TWO_TARGET_TICK_TWO_MOTOR_CURRENT ){
-			board.setChannelParameter(Channel.A, ChannelParameter.MOTOR_CURRENT,  ByteBufferUtils.getIntFromBack(bb) );
-			board.setChannelParameter(Channel.B, ChannelParameter.MOTOR_CURRENT,  ByteBufferUtils.getIntFromBack(bb) );
+			updateFeedback(board, Channel.A, ChannelParameter.MOTOR_CURRENT, ByteBufferUtils.getIntFromBack(bb), received_ns );
+			updateFeedback(board, Channel.B, ChannelParameter.MOTOR_CURRENT, ByteBufferUtils.getIntFromBack(bb), received_ns );
 		}
 		// If this is a response to our target pos special then just put current data into the motor objects
 		else if( command == Command.TWO_TARGET_TICK_MOTOR_CURRENT ){
-			board.setChannelParameter(ch, ChannelParameter.MOTOR_CURRENT,  ByteBufferUtils.getIntFromBack(bb) );
+			updateFeedback(board, ch, ChannelParameter.MOTOR_CURRENT, ByteBufferUtils.getIntFromBack(bb), received_ns );
 		}
 		else if( command == Command.TWO_TARGET_TICK_ENCODER ){
-			board.setChannelParameter(ch, ChannelParameter.ACTUAL_ENCODER,  ByteBufferUtils.getIntFromBack(bb) );
+			updateFeedback(board, ch, ChannelParameter.ACTUAL_ENCODER, ByteBufferUtils.getIntFromBack(bb), received_ns );
 		}
 		else if( command == Command.TWO_TARGET_TICK_POT ){
-			board.setChannelParameter(ch, ChannelParameter.ACTUAL_POT,  ByteBufferUtils.getIntFromBack(bb) );
+			updateFeedback(board, ch, ChannelParameter.ACTUAL_POT, ByteBufferUtils.getIntFromBack(bb), received_ns );
 		}
 		else if( command == Command.ACTUAL_TICK ){
 			handler_value = ByteBufferUtils.getIntFromBack(bb);
-			board.setChannelParameter(ch, ChannelParameter.ACTUAL_TICK, handler_value );
+			updateFeedback(board, ch, ChannelParameter.ACTUAL_TICK, handler_value, received_ns );
 		}
 		// If it is a the value of our extra pin (switch or analog)
 		else if( command == Command.EXTRA_PIN_VALUE ){
 			handler_value = ByteBufferUtils.getIntFromBack(bb);
-			board.setChannelParameter(ch, ChannelParameter.EXTRA_PIN_VALUE, handler_value );
+			updateFeedback(board, ch, ChannelParameter.EXTRA_PIN_VALUE, handler_value, received_ns );
 		}
 		// If it is a simple empty response to let us know that the board is active, do nothing
 		else if( command == Command.DEBUG ){
@@ -826,7 +1455,7 @@ public class MCBMiniServer{
 			;
 		}
 		else if( command == null ){
-			Log.println("Received unknown command with CMD byte: "+cmd_byte);
+			AsyncLog.log(LOG_UNKNOWN_COMMAND, cmd_byte);
 		}
 		/*
 		 * Here we handle all kinds of errors from the boards
@@ -843,7 +1472,8 @@ public class MCBMiniServer{
 			}
 
 			Error error = Error.getForId( error_code );
-			Log.println("Error/Warning from board: "+board.getId()+" : "+error+" ", true);
+			AsyncLog.log(LOG_BOARD_ERROR, board.getId(), error_code);
+			if( JfrSupport.AVAILABLE ) JfrEvents.boardError(board.getId(), ch, error_code);
 
 			if( error == null ){
 				Log.println("\nError message not recognized", true);
@@ -857,9 +1487,7 @@ public class MCBMiniServer{
 					switch( fault_handling_policy ){
 					case DO_NOTHING:
 						// Notify about the disable
-						synchronized (board_disable_event_handlers) {
-							board_disable_events.add( new BoardDisabledEvent(board, ch) );
-						}
+						notifyBoardDisabled(board, ch);
 						break;
 					case RE_ENABLE:
 						if( board.getEnabled(Channel.A) ){
@@ -881,19 +1509,15 @@ public class MCBMiniServer{
 					Log.println("\nParameters set while bridge is enabled, bridge was disabled as a result", true);
 
 					// Notify about the disable
-					synchronized (board_disable_event_handlers) {
-						board_disable_events.add( new BoardDisabledEvent(board, ch) );
-					}
+					notifyBoardDisabled(board, ch);
 				}
 				else if( error == Error.TIMEOUT_DISABLE ){
 					board.setChannelAParameter(ChannelParameter.ENABLED, 0);
 					board.setChannelBParameter(ChannelParameter.ENABLED, 0);
 
 					// Notify about the disable
-					synchronized (board_disable_event_handlers) {
-						board_disable_events.add( new BoardDisabledEvent(board, Channel.A) );
-						board_disable_events.add( new BoardDisabledEvent(board, Channel.B) );
-					}
+					notifyBoardDisabled(board, Channel.A);
+					notifyBoardDisabled(board, Channel.B);
 				}
 
 				// This happens when the motorboard hears the first packet ever, lets us know if it gets reset
@@ -906,9 +1530,7 @@ public class MCBMiniServer{
 					else{
 						Log.println("\tSetting channel to DISABLED", true);
 						// Notify about the disable
-						synchronized (board_disable_event_handlers) {
-							if( board.getChannelParameter(ch, ChannelParameter.ENABLED) == 1 ) board_disable_events.add( new BoardDisabledEvent(board, ch) );
-						}
+						if( board.getChannelParameter(ch, ChannelParameter.ENABLED) == 1 ) notifyBoardDisabled(board, ch);
 						board.setChannelParameter(ch, ChannelParameter.ENABLED, 0);
 					}
 
@@ -961,13 +1583,38 @@ public class MCBMiniServer{
 		 */
 		if( handler_value != Integer.MAX_VALUE ){
 			synchronized (responses_to_be_handled) {
-				Request resp =  new Request( board, ch, command, false, 0);
+				Request resp = obtainResponse(board, ch, command);
 				resp.return_value = handler_value;
 				responses_to_be_handled.add(resp);
+				responses_pending = responses_to_be_handled.size();
 			}
 		}
 	}
 
+	/**
+	 * Responses are recycled once update() has handed them over, only call while holding responses_to_be_handled
+	 */
+	private Request obtainResponse(MCBMiniBoard board, Channel ch, Command command){
+		if( free_responses.isEmpty() ) return new Request(board, ch, command, false, 0);
+		Request resp = free_responses.remove(free_responses.size()-1);
+		resp.board = board;
+		resp.channel = ch;
+		resp.command = command;
+		resp.should_get_response = false;
+		resp.value = 0;
+		return resp;
+	}
+
+	/**
+	 * Queues a disable event for the handlers, they get it in the next update()
+	 */
+	private void notifyBoardDisabled(MCBMiniBoard board, Channel ch){
+		synchronized (board_disable_event_handlers) {
+			board_disable_events.add( new BoardDisabledEvent(board, ch) );
+		}
+		if( JfrSupport.AVAILABLE ) JfrEvents.boardDisabled(board.getId(), ch);
+	}
+
 	private class TimestampedIDResponseHandler{
 		public MCBMiniIDResponseHandler handler;
 		long timestamp;
@@ -995,11 +1642,20 @@ public class MCBMiniServer{
 	private class RequestWrapper{
 		private int hash_value;
 
+		// An empty key, to be filled in with set()
+		public RequestWrapper(){
+		}
+
 		public RequestWrapper(Request req){
 			this(req.command, req.board, req.channel);
 		}
 
 		public RequestWrapper(Command cmd, MCBMiniBoard board, Channel channel){
+			set(cmd, board, channel);
+		}
+
+		// So that update() can look up handlers with one reused wrapper
+		void set(Command cmd, MCBMiniBoard board, Channel channel){
 			hash_value = board.getId() + 100*cmd.hashCode() + 1000* channel.hashCode();
 		}
 
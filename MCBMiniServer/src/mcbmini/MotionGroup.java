@@ -0,0 +1,151 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini;
+
+import java.util.ArrayList;
+
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.functions.TargetFunction;
+
+/**
+ * Stages targets and target functions for many channels (across boards) and hands them to the server in one go.
+ * The server applies a committed group at the start of a tick that sends targets, so everything in the group goes
+ * out in the same TX frame and all the functions in it are first evaluated on that same tick. Boards in the group
+ * that are suspect and backing off get polled on that tick anyway.
+ *
+ * A group is committed once, after commit() it can no longer be changed.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class MotionGroup {
+
+	private final MCBMiniServer server;
+
+	private final ArrayList<MCBMiniBoard> boards = new ArrayList<MCBMiniBoard>();
+	private final ArrayList<Channel> channels = new ArrayList<Channel>();
+	private final ArrayList<TargetFunction> functions = new ArrayList<TargetFunction>();
+	// Entries either set a target or a function
+	private int[] targets = new int[16];
+	private boolean[] is_target = new boolean[16];
+
+	private boolean committed;
+	private long tick_sequence = -1;
+
+	public MotionGroup(MCBMiniServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * Stages a target, like MCBMiniBoard.setTargetTick() this removes any function on the channel
+	 */
+	public synchronized MotionGroup setTargetTick(MCBMiniBoard board, Channel channel, int value){
+		stage(board, channel, null, true, value);
+		return this;
+	}
+
+	/**
+	 * Stages a target function, null removes any function on the channel
+	 */
+	public synchronized MotionGroup setTargetFunction(MCBMiniBoard board, Channel channel, TargetFunction function){
+		stage(board, channel, function, false, 0);
+		return this;
+	}
+
+	private void stage(MCBMiniBoard board, Channel channel, TargetFunction function, boolean target, int value){
+		if( committed ) throw new IllegalStateException("Motion group has already been committed");
+		int i = boards.size();
+		if( i == targets.length ){
+			int[] grown_targets = new int[targets.length * 2];
+			boolean[] grown_is_target = new boolean[targets.length * 2];
+			System.arraycopy(targets, 0, grown_targets, 0, i);
+			System.arraycopy(is_target, 0, grown_is_target, 0, i);
+			targets = grown_targets;
+			is_target = grown_is_target;
+		}
+		boards.add(board);
+		channels.add(channel);
+		functions.add(function);
+		targets[i] = value;
+		is_target[i] = target;
+	}
+
+	/**
+	 * Hands the group to the server, it goes out on the next tick that sends targets
+	 */
+	public void commit(){
+		synchronized (this) {
+			if( committed ) throw new IllegalStateException("Motion group has already been committed");
+			committed = true;
+		}
+		server.commitMotionGroup(this);
+	}
+
+	/**
+	 * Called by the server from within the update thread
+	 */
+	synchronized void apply(long tick){
+		for(int i=0; i<boards.size(); i++){
+			boards.get(i).motion_group_tick = tick;
+			if( is_target[i] ){
+				boards.get(i).setTargetTick(channels.get(i), targets[i]);
+			}
+			else{
+				boards.get(i).setTargetFunction(channels.get(i), functions.get(i));
+			}
+		}
+		tick_sequence = tick;
+		notifyAll();
+	}
+
+	public synchronized boolean isCommitted(){
+		return committed;
+	}
+
+	/**
+	 * @return the server tick sequence number (MCBMiniServer.getTickSequence()) that the group went out on, -1 if it hasn't yet
+	 */
+	public synchronized long getTickSequence(){
+		return tick_sequence;
+	}
+
+	/**
+	 * Blocks until the group has gone out on the bus
+	 * @param timeout_ms
+	 * @return the tick sequence number the group went out on, -1 on timeout
+	 * @throws InterruptedException
+	 */
+	public synchronized long waitUntilSent(long timeout_ms) throws InterruptedException{
+		long deadline = System.currentTimeMillis() + timeout_ms;
+		while( tick_sequence == -1 ){
+			long remaining = deadline - System.currentTimeMillis();
+			if( remaining <= 0 ) break;
+			wait(remaining);
+		}
+		return tick_sequence;
+	}
+}
@@ -0,0 +1,291 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mcbmini.utils.AsyncLog;
+
+/**
+ * Watches the duration of every tick of the update thread and degrades the bus load in steps when ticks keep
+ * overrunning their period, instead of the update loop silently falling behind.
+ *
+ * The policy is a ladder of DegradationSteps. After getOverrunThreshold() overruns in a row the watchdog climbs one
+ * step, after getRecoveryTicks() ticks in a row that would have fit within getRecoveryFraction() of the period one step
+ * down it climbs back down. Steps can repeat, every LOWER_UPDATE_RATE that is active scales the update rate by RATE_STEP.
+ * Note that a lower update rate also slows down anything that plays back one sample per tick (TrajectoryPlayer), so
+ * RECOMMENDED_POLICY leaves it out, add it to a policy only if nothing depends on the ticks keeping wall clock time.
+ *
+ * The default policy only raises the alarm, use setPolicy(RECOMMENDED_POLICY) to let the watchdog shed load.
+ * Level changes are logged and handed to the DegradationHandlers from within MCBMiniServer.update(). The overruns
+ * counted here are the ones the server reports (MCBMiniServer.getTickOverruns()), against the effective period.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class TickWatchdog {
+
+	public enum DegradationStep{
+		/** Stop requesting the analog extra pin values */
+		SHED_EXTRA_PIN_POLLING,
+		/** Boards without a fresh target only get a frame (and give feedback) every IDLE_FEEDBACK_DIVISOR ticks */
+		SKIP_IDLE_FEEDBACK,
+		/** Scale the update rate by RATE_STEP */
+		LOWER_UPDATE_RATE,
+		/** Nothing changes on the bus, the handlers get told */
+		ALARM
+	}
+
+	public interface DegradationHandler{
+		/**
+		 * @param level the new level, 0 is fully recovered
+		 * @param step the step that was taken or undone
+		 * @param escalated true if the watchdog climbed up to the step, false if it recovered from it
+		 */
+		public void handleDegradation(int level, DegradationStep step, boolean escalated);
+	}
+
+	public static final List<DegradationStep> DEFAULT_POLICY = Collections.unmodifiableList(Arrays.asList(DegradationStep.ALARM));
+	public static final List<DegradationStep> RECOMMENDED_POLICY = Collections.unmodifiableList(Arrays.asList(
+		DegradationStep.SHED_EXTRA_PIN_POLLING, DegradationStep.SKIP_IDLE_FEEDBACK, DegradationStep.ALARM
+	));
+
+	public static final float RATE_STEP = 0.8f;
+	public static final int IDLE_FEEDBACK_DIVISOR = 4;
+
+	private static final AsyncLog.ArgFormatter STEP_NAME = new AsyncLog.ArgFormatter() {
+		@Override
+		public void append(StringBuilder sb, long value) { sb.append(DegradationStep.values()[(int)value]); }
+	};
+	private static final AsyncLog.Event LOG_ESCALATE = AsyncLog.event("Tick watchdog: {} overruns in a row, degrading to level {} ({})", true, 5, new AsyncLog.ArgFormatter[]{ null, null, STEP_NAME });
+	private static final AsyncLog.Event LOG_RECOVER = AsyncLog.event("Tick watchdog: headroom is back, recovering to level {} (undid {})", false, 5, new AsyncLog.ArgFormatter[]{ null, STEP_NAME });
+
+	private final long nominal_period_ns;
+
+	private volatile DegradationStep[] policy = DEFAULT_POLICY.toArray(new DegradationStep[0]);
+	private volatile int overrun_threshold = 3;
+	private volatile float recovery_fraction = 0.7f;
+	private volatile int recovery_ticks = 250;
+
+	// The state of the ladder, written by the update thread
+	private volatile int level;
+	private volatile long period_ns;
+	private volatile boolean shed_extra_pin_polling;
+	private volatile boolean skip_idle_feedback;
+	private int consecutive_overruns;
+	private int consecutive_recovered;
+
+	private volatile long overruns;
+	private volatile int max_consecutive_overruns;
+	private volatile long escalations;
+	private volatile long recoveries;
+
+	private final List<int[]> pending_changes = new ArrayList<int[]>();
+	private final List<DegradationHandler> handlers = new ArrayList<DegradationHandler>();
+
+	TickWatchdog(long nominal_period_ns){
+		this.nominal_period_ns = nominal_period_ns;
+		this.period_ns = nominal_period_ns;
+	}
+
+	/*
+	 * Configuration
+	 */
+
+	/**
+	 * Like setPolicy(DegradationStep...), takes the presets DEFAULT_POLICY and RECOMMENDED_POLICY
+	 */
+	public void setPolicy(List<DegradationStep> policy){
+		setPolicy(policy == null ? null : policy.toArray(new DegradationStep[policy.size()]));
+	}
+
+	/**
+	 * Sets the ladder of steps, resets the watchdog to level 0. The handlers get told about every step that gets undone
+	 */
+	public synchronized void setPolicy(DegradationStep... policy){
+		if( policy == null ) policy = new DegradationStep[0];
+		DegradationStep[] old_policy = this.policy;
+		for(int i=level-1; i>=0; i--){
+			queueChange(i, old_policy[i], false);
+		}
+		this.policy = policy.clone();
+		level = 0;
+		consecutive_overruns = 0;
+		consecutive_recovered = 0;
+		applyLevel();
+	}
+
+	public DegradationStep[] getPolicy(){
+		return policy.clone();
+	}
+
+	/**
+	 * @param overrun_threshold how many overruns in a row it takes to climb a step
+	 */
+	public void setOverrunThreshold(int overrun_threshold){
+		if( overrun_threshold < 1 ) throw new IllegalArgumentException("Threshold must be >= 1");
+		this.overrun_threshold = overrun_threshold;
+	}
+
+	public int getOverrunThreshold(){ return overrun_threshold; }
+
+	/**
+	 * @param fraction a tick counts towards recovery if it took less than this fraction of the period one step down
+	 * @param ticks how many such ticks in a row it takes to come down a step
+	 */
+	public void setRecovery(float fraction, int ticks){
+		if( fraction <= 0 || fraction > 1 ) throw new IllegalArgumentException("Recovery fraction must be within (0, 1]");
+		if( ticks < 1 ) throw new IllegalArgumentException("Recovery ticks must be >= 1");
+		this.recovery_fraction = fraction;
+		this.recovery_ticks = ticks;
+	}
+
+	public float getRecoveryFraction(){ return recovery_fraction; }
+	public int getRecoveryTicks(){ return recovery_ticks; }
+
+	public void addDegradationHandler(DegradationHandler handler){
+		synchronized (handlers) {
+			handlers.add(handler);
+		}
+	}
+
+	public boolean removeDegradationHandler(DegradationHandler handler){
+		synchronized (handlers) {
+			return handlers.remove(handler);
+		}
+	}
+
+	/*
+	 * State
+	 */
+
+	public int getLevel(){ return level; }
+	public boolean isDegraded(){ return level > 0; }
+	public long getPeriodNanos(){ return period_ns; }
+	public float getUpdateRate(){ return (float)(1.0E9 / period_ns); }
+	public boolean isSheddingExtraPinPolling(){ return shed_extra_pin_polling; }
+	public boolean isSkippingIdleFeedback(){ return skip_idle_feedback; }
+
+	public long getNumberOfOverruns(){ return overruns; }
+	public int getMaxConsecutiveOverruns(){ return max_consecutive_overruns; }
+	public long getNumberOfEscalations(){ return escalations; }
+	public long getNumberOfRecoveries(){ return recoveries; }
+
+	/**
+	 * Called by the update thread after every tick, the update thread picks up period changes through getPeriodNanos()
+	 * (setPolicy() can change it as well)
+	 * @param duration_ns how long the tick took including the bus write
+	 * @return whether the tick overran the period
+	 */
+	synchronized boolean tick(long duration_ns){
+		DegradationStep[] steps = policy;
+
+		boolean overrun = duration_ns > period_ns;
+		if( overrun ){
+			overruns++;
+			consecutive_recovered = 0;
+			if( ++consecutive_overruns > max_consecutive_overruns ) max_consecutive_overruns = consecutive_overruns;
+			if( consecutive_overruns >= overrun_threshold && level < steps.length ){
+				DegradationStep step = steps[level];
+				level++;
+				escalations++;
+				applyLevel();
+				queueChange(level, step, true);
+				AsyncLog.log(LOG_ESCALATE, consecutive_overruns, level, step.ordinal());
+				consecutive_overruns = 0;
+			}
+		}
+		else{
+			consecutive_overruns = 0;
+			if( level > 0 && duration_ns < recovery_fraction * periodForLevel(steps, level-1) ){
+				if( ++consecutive_recovered >= recovery_ticks ){
+					level--;
+					DegradationStep step = steps[level];
+					recoveries++;
+					applyLevel();
+					queueChange(level, step, false);
+					AsyncLog.log(LOG_RECOVER, level, step.ordinal());
+					consecutive_recovered = 0;
+				}
+			}
+			else{
+				consecutive_recovered = 0;
+			}
+		}
+		return overrun;
+	}
+
+	private void applyLevel(){
+		DegradationStep[] steps = policy;
+		boolean shed = false, skip = false;
+		for(int i=0; i<level; i++){
+			if( steps[i] == DegradationStep.SHED_EXTRA_PIN_POLLING ) shed = true;
+			else if( steps[i] == DegradationStep.SKIP_IDLE_FEEDBACK ) skip = true;
+		}
+		shed_extra_pin_polling = shed;
+		skip_idle_feedback = skip;
+		period_ns = periodForLevel(steps, level);
+	}
+
+	private long periodForLevel(DegradationStep[] steps, int level){
+		double period = nominal_period_ns;
+		for(int i=0; i<level; i++){
+			if( steps[i] == DegradationStep.LOWER_UPDATE_RATE ) period /= RATE_STEP;
+		}
+		return (long)period;
+	}
+
+	private void queueChange(int level, DegradationStep step, boolean escalated){
+		synchronized (pending_changes) {
+			pending_changes.add(new int[]{ level, step.ordinal(), escalated ? 1 : 0 });
+		}
+	}
+
+	/**
+	 * Hands the level changes to the handlers, called from MCBMiniServer.update()
+	 */
+	void deliverChanges(){
+		int[][] changes;
+		synchronized (pending_changes) {
+			if( pending_changes.isEmpty() ) return;
+			changes = pending_changes.toArray(new int[pending_changes.size()][]);
+			pending_changes.clear();
+		}
+		DegradationHandler[] to_call;
+		synchronized (handlers) {
+			to_call = handlers.toArray(new DegradationHandler[handlers.size()]);
+		}
+		for (int[] change : changes) {
+			for (DegradationHandler handler : to_call) {
+				handler.handleDegradation(change[0], DegradationStep.values()[change[1]], change[2] == 1);
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.choreography;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * A memory mapped choreography file. Opening only reads the header and the channel map, the frames are
+ * mapped in regions on demand and paged in by the OS, so the heap footprint stays the same no matter the file size.
+ *
+ * getTarget() is meant to be called from the update thread, it remaps when a frame falls outside the current region.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class ChoreographyFile {
+
+	private static final long MAP_REGION_SIZE = 1L << 28;
+	private static final Channel[] CHANNELS = Channel.values();
+
+	private final RandomAccessFile raf;
+	private final FileChannel file_channel;
+
+	private final float tick_rate;
+	private final int nr_channels;
+	private final long nr_frames;
+	private final int data_offset;
+	private final int frame_size;
+	private final int[] board_ids;
+	private final Channel[] channels;
+
+	// The currently mapped frames are [region_first_frame, region_first_frame + region_frames)
+	private final long frames_per_region;
+	private MappedByteBuffer region;
+	private long region_first_frame = -1;
+	private long region_frames;
+
+	public ChoreographyFile(File file) throws IOException{
+		raf = new RandomAccessFile(file, "r");
+		try {
+			file_channel = raf.getChannel();
+
+			ByteBuffer header = ByteBuffer.allocate(ChoreographyFormat.HEADER_SIZE);
+			readFully(header, 0);
+			if( header.getInt() != ChoreographyFormat.MAGIC ) throw new IOException("Not a choreography file: "+file);
+			int version = header.getInt();
+			if( version != ChoreographyFormat.VERSION ) throw new IOException("Unsupported choreography version: "+version);
+			tick_rate = header.getFloat();
+			nr_channels = header.getInt();
+			long frames = header.getLong();
+			data_offset = header.getInt();
+			if( tick_rate <= 0 || nr_channels <= 0 ) throw new IOException("Corrupt choreography header: "+file);
+			frame_size = ChoreographyFormat.frameSize(nr_channels);
+
+			// Trust the file size over the header if the writer didn't get to close the file
+			long frames_in_file = (file_channel.size() - data_offset) / frame_size;
+			nr_frames = frames == 0 ? frames_in_file : Math.min(frames, frames_in_file);
+
+			ByteBuffer map = ByteBuffer.allocate(nr_channels * ChoreographyFormat.CHANNEL_ENTRY_SIZE);
+			readFully(map, ChoreographyFormat.HEADER_SIZE);
+			board_ids = new int[nr_channels];
+			channels = new Channel[nr_channels];
+			for(int i=0; i<nr_channels; i++){
+				board_ids[i] = map.getInt();
+				int channel_index = map.getInt();
+				if( channel_index < 0 || channel_index >= CHANNELS.length ) throw new IOException("Corrupt channel map: "+file);
+				channels[i] = CHANNELS[channel_index];
+			}
+
+			frames_per_region = Math.max(1, MAP_REGION_SIZE / frame_size);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException{
+		while( buffer.hasRemaining() ){
+			if( file_channel.read(buffer, position + buffer.position()) < 0 ) throw new IOException("Unexpected end of choreography file");
+		}
+		buffer.flip();
+	}
+
+	/**
+	 * @param frame
+	 * @param channel_index index into the channel map
+	 * @return the target, or ChoreographyFormat.HOLD if the channel has no new target in that frame
+	 */
+	public int getTarget(long frame, int channel_index){
+		if( frame < region_first_frame || frame >= region_first_frame + region_frames ){
+			mapRegion(frame);
+		}
+		return region.getInt( (int)(frame - region_first_frame) * frame_size + channel_index * 4 );
+	}
+
+	private void mapRegion(long frame){
+		if( frame < 0 || frame >= nr_frames ) throw new IndexOutOfBoundsException("Frame "+frame+" of "+nr_frames);
+		long first = (frame / frames_per_region) * frames_per_region;
+		long count = Math.min(frames_per_region, nr_frames - first);
+		try {
+			region = file_channel.map(FileChannel.MapMode.READ_ONLY, data_offset + first * frame_size, count * frame_size);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to map choreography frames", e);
+		}
+		region_first_frame = first;
+		region_frames = count;
+	}
+
+	public float getTickRate(){
+		return tick_rate;
+	}
+
+	public int getNumberOfChannels(){
+		return nr_channels;
+	}
+
+	public long getNumberOfFrames(){
+		return nr_frames;
+	}
+
+	public double getDurationSeconds(){
+		return nr_frames / (double)tick_rate;
+	}
+
+	public int getBoardId(int channel_index){
+		return board_ids[channel_index];
+	}
+
+	public Channel getChannel(int channel_index){
+		return channels[channel_index];
+	}
+
+	public void close() throws IOException{
+		region = null;
+		raf.close();
+	}
+}
@@ -0,0 +1,66 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.choreography;
+
+/**
+ * Constants of the binary choreography format.
+ *
+ * The file is a fixed size header, a channel map and then fixed width frames, one frame per tick:
+ *   header:      magic, version, tick rate (float), number of channels, number of frames (long), offset of the first frame
+ *   channel map: (board id, channel index) as two ints per channel
+ *   frames:      one int target per channel, HOLD means that the channel has no new target in that frame
+ * Everything is big endian. Since every frame has the same size, frame n of a file can be found without reading
+ * anything but the header.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class ChoreographyFormat {
+
+	public static final int MAGIC = 0x4D434348;		// "MCCH"
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 4;
+	public static final int CHANNEL_ENTRY_SIZE = 4 + 4;
+
+	// Offsets of the header fields
+	public static final int NR_FRAMES_OFFSET = 16;
+
+	public static final int HOLD = Integer.MAX_VALUE;
+
+	/**
+	 * @return the offset of the first frame, aligned to 8 bytes
+	 */
+	public static int dataOffset(int nr_channels){
+		int offset = HEADER_SIZE + nr_channels * CHANNEL_ENTRY_SIZE;
+		return (offset + 7) & ~7;
+	}
+
+	public static int frameSize(int nr_channels){
+		return nr_channels * 4;
+	}
+}
@@ -0,0 +1,271 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.choreography;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.functions.TargetFunction;
+import mcbmini.utils.AsyncLog;
+import mcbmini.utils.Log;
+
+/**
+ * Plays a ChoreographyFile back through the target function mechanism, one TargetFunction per channel in the file.
+ * All channels start on the same tick, the playback position is derived from the tick timestamp so that every channel
+ * reads the same frame within a tick and playback keeps wall clock time even if the server changes its update rate.
+ * Supports seeking, looping and playing back faster or slower than authored, positions between frames are linearly
+ * interpolated.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class ChoreographyPlayer {
+
+	/*
+	 * Where the playback is: frame position = position + (tick_ns - anchor_ns) * frames_per_second.
+	 * An unanchored timing anchors on the first tick that evaluates it.
+	 */
+	private static class Timing{
+		final boolean anchored;
+		final long anchor_ns;
+		final double position;
+		final double frames_per_second;
+
+		Timing(boolean anchored, long anchor_ns, double position, double frames_per_second){
+			this.anchored = anchored;
+			this.anchor_ns = anchor_ns;
+			this.position = position;
+			this.frames_per_second = frames_per_second;
+		}
+
+		double positionAt(long tick_ns){
+			if( !anchored ) return position;
+			return position + (tick_ns - anchor_ns) / 1.0E9 * frames_per_second;
+		}
+	}
+
+	private static final AsyncLog.Event LOG_READ_FAILED = AsyncLog.event("Choreography channel {} couldn't be read, holding its last target and stopping it", true, 10);
+
+	private final ChoreographyFile file;
+	private final ChoreographyFunction[] functions;
+	private final AtomicReference<Timing> timing;
+
+	private volatile boolean looping;
+	private volatile double rate_scale = 1;
+
+	/**
+	 * Playback follows the tick timestamps, so the file doesn't need to have been authored at the update rate of the server
+	 * @param file
+	 * @param boards the boards to play on, channels in the file for boards that aren't in the list are skipped
+	 */
+	public ChoreographyPlayer(ChoreographyFile file, ArrayList<MCBMiniBoard> boards) {
+		if( file.getNumberOfFrames() == 0 ) throw new IllegalArgumentException("Choreography has no frames");
+		this.file = file;
+		this.timing = new AtomicReference<Timing>(new Timing(false, 0, 0, framesPerSecond(1)));
+
+		ArrayList<ChoreographyFunction> list = new ArrayList<ChoreographyFunction>();
+		for(int i=0; i<file.getNumberOfChannels(); i++){
+			MCBMiniBoard board = null;
+			for (MCBMiniBoard b : boards) {
+				if( b.getId() == file.getBoardId(i) ) board = b;
+			}
+			if( board == null ){
+				Log.println("Choreography channel "+i+" is for board ID "+file.getBoardId(i)+" which isn't on the bus, skipping it", true);
+				continue;
+			}
+			list.add( new ChoreographyFunction(board, file.getChannel(i), i) );
+		}
+		functions = list.toArray(new ChoreographyFunction[list.size()]);
+	}
+
+	private double framesPerSecond(double rate_scale){
+		return rate_scale * file.getTickRate();
+	}
+
+	/**
+	 * Installs the functions on all the channels, playback starts from the current position on the next tick
+	 */
+	public void start(){
+		Timing t = timing.get();
+		timing.set( new Timing(false, 0, t.positionAt(System.nanoTime()), t.frames_per_second) );
+		for (ChoreographyFunction function : functions) {
+			function.target_board.setTargetFunction(function.target_channel, function);
+		}
+	}
+
+	/**
+	 * Removes the functions from all the channels and remembers the position, start() resumes from there
+	 */
+	public void stop(){
+		for (ChoreographyFunction function : functions) {
+			if( function.target_board.getTargetFunction(function.target_channel) == function ){
+				function.target_board.setTargetFunction(function.target_channel, null);
+			}
+		}
+		Timing t = timing.get();
+		timing.set( new Timing(false, 0, clampPosition(t.positionAt(System.nanoTime())), t.frames_per_second) );
+	}
+
+	/**
+	 * Jumps to a position in the choreography, takes effect on the next tick
+	 * @param seconds from the start, in authored time
+	 */
+	public void seek(double seconds){
+		Timing t = timing.get();
+		double position = clampPosition(seconds * file.getTickRate());
+		timing.set( new Timing(t.anchored, System.nanoTime(), position, t.frames_per_second) );
+	}
+
+	/**
+	 * @param rate_scale 1 plays back at the authored rate, 2 twice as fast etc.
+	 */
+	public void setRateScale(double rate_scale){
+		if( rate_scale <= 0 ) throw new IllegalArgumentException("Rate scale must be > 0");
+		this.rate_scale = rate_scale;
+		Timing t = timing.get();
+		long now_ns = System.nanoTime();
+		timing.set( new Timing(t.anchored, now_ns, t.positionAt(now_ns), framesPerSecond(rate_scale)) );
+	}
+
+	public double getRateScale(){
+		return rate_scale;
+	}
+
+	public void setLooping(boolean looping){
+		this.looping = looping;
+	}
+
+	public boolean isLooping(){
+		return looping;
+	}
+
+	/**
+	 * @return the current playback position in seconds from the start, in authored time
+	 */
+	public double getPositionSeconds(){
+		return wrapPosition( timing.get().positionAt(System.nanoTime()) ) / file.getTickRate();
+	}
+
+	public boolean isFinished(){
+		if( looping ) return false;
+		Timing t = timing.get();
+		return t.anchored && t.positionAt(System.nanoTime()) >= file.getNumberOfFrames()-1;
+	}
+
+	public ChoreographyFile getFile(){
+		return file;
+	}
+
+	private double clampPosition(double position){
+		return Math.max(0, Math.min(file.getNumberOfFrames()-1, wrapPosition(position)));
+	}
+
+	private double wrapPosition(double position){
+		if( !looping ) return position;
+		double n = file.getNumberOfFrames();
+		position %= n;
+		return position < 0 ? position + n : position;
+	}
+
+	/**
+	 * The timing of a tick, the first function that gets evaluated after a start() anchors the playback on its tick
+	 */
+	private Timing timingFor(long tick_ns){
+		Timing t = timing.get();
+		if( !t.anchored ){
+			Timing anchored = new Timing(true, tick_ns, t.position, t.frames_per_second);
+			if( !timing.compareAndSet(t, anchored) ) return timing.get();
+			return anchored;
+		}
+		return t;
+	}
+
+	private class ChoreographyFunction extends TargetFunction{
+		private final MCBMiniBoard target_board;
+		private final Channel target_channel;
+		private final int index;
+		private int last_target;
+
+		public ChoreographyFunction(MCBMiniBoard board, Channel channel, int index) {
+			this.target_board = board;
+			this.target_channel = channel;
+			this.index = index;
+		}
+
+		@Override
+		protected void initializeInternal() {
+			last_target = board.getTargetTick(channel);
+		}
+
+		/**
+		 * The file gets read on the update thread, a failing read must not take it down so the channel holds still instead
+		 */
+		@Override
+		public int applyFunction(long tickNanos, long tickIndex) {
+			try {
+				return playFrame(tickNanos);
+			} catch (RuntimeException e) {
+				AsyncLog.log(LOG_READ_FAILED, index);
+				terminateFunction();
+				return last_target;
+			}
+		}
+
+		private int playFrame(long tickNanos){
+			long nr_frames = file.getNumberOfFrames();
+			double position = timingFor(tickNanos).positionAt(tickNanos);
+
+			if( looping ){
+				position = wrapPosition(position);
+			}
+			else if( position >= nr_frames-1 ){
+				int target = file.getTarget(nr_frames-1, index);
+				if( target != ChoreographyFormat.HOLD ) last_target = target;
+				terminateFunction();
+				return last_target;
+			}
+			if( position < 0 ) position = 0;
+
+			long frame = (long)position;
+			double fraction = position - frame;
+			int target = file.getTarget(frame, index);
+			if( target == ChoreographyFormat.HOLD ) return last_target;
+
+			if( fraction > 0 ){
+				long next_frame = frame+1 < nr_frames ? frame+1 : 0;
+				int next = file.getTarget(next_frame, index);
+				if( next != ChoreographyFormat.HOLD ){
+					target = (int)Math.round( target + (next - target) * fraction );
+				}
+			}
+			last_target = target;
+			return target;
+		}
+	}
+}
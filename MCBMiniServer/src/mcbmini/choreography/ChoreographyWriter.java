@@ -0,0 +1,119 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.choreography;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * Writes choreography files frame by frame, the frame count in the header is filled in on close()
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class ChoreographyWriter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	private final int nr_channels;
+	private final ByteBuffer buffer;
+	private long nr_frames;
+
+	/**
+	 * @param file
+	 * @param tick_rate the rate (Hz) that the frames were authored at
+	 * @param board_ids the board id of every channel in the frames
+	 * @param channels the board channel of every channel in the frames
+	 * @throws IOException
+	 */
+	public ChoreographyWriter(File file, float tick_rate, int[] board_ids, Channel[] channels) throws IOException{
+		if( tick_rate <= 0 ) throw new IllegalArgumentException("Tick rate must be > 0");
+		if( board_ids.length != channels.length || board_ids.length == 0 ) throw new IllegalArgumentException("Need exactly one board id per channel");
+		this.nr_channels = board_ids.length;
+		this.buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, ChoreographyFormat.frameSize(nr_channels)));
+
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+
+		ByteBuffer header = ByteBuffer.allocate(ChoreographyFormat.dataOffset(nr_channels));
+		header.putInt(ChoreographyFormat.MAGIC);
+		header.putInt(ChoreographyFormat.VERSION);
+		header.putFloat(tick_rate);
+		header.putInt(nr_channels);
+		header.putLong(0);
+		header.putInt(ChoreographyFormat.dataOffset(nr_channels));
+		for(int i=0; i<nr_channels; i++){
+			header.putInt(board_ids[i]);
+			header.putInt(channels[i].index);
+		}
+		header.rewind();
+		while( header.hasRemaining() ) channel.write(header);
+	}
+
+	/**
+	 * @param targets one target per channel, ChoreographyFormat.HOLD for no new target
+	 * @throws IOException
+	 */
+	public void writeFrame(int[] targets) throws IOException{
+		if( targets.length != nr_channels ) throw new IllegalArgumentException("Need exactly one target per channel");
+		if( buffer.remaining() < ChoreographyFormat.frameSize(nr_channels) ) flush();
+		for(int i=0; i<nr_channels; i++){
+			buffer.putInt(targets[i]);
+		}
+		nr_frames++;
+	}
+
+	private void flush() throws IOException{
+		buffer.flip();
+		while( buffer.hasRemaining() ) channel.write(buffer);
+		buffer.clear();
+	}
+
+	public long getNumberOfFrames(){
+		return nr_frames;
+	}
+
+	public void close() throws IOException{
+		try {
+			flush();
+			ByteBuffer count = ByteBuffer.allocate(8);
+			count.putLong(nr_frames);
+			count.flip();
+			channel.write(count, ChoreographyFormat.NR_FRAMES_OFFSET);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * A target function that the server can evaluate together with all other functions of the same type in one
+ * TargetFunctionBatch, instead of one virtual applyFunction() call per channel.
+ * Subclasses still implement applyFunction(long, long) so that they also work when evaluated on their own.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public abstract class BatchTargetFunction extends TargetFunction{
+
+	/**
+	 * @return a new empty batch that can evaluate functions of this type
+	 */
+	public abstract TargetFunctionBatch createBatch();
+
+	/**
+	 * @return functions with the same batch type get evaluated in the same batch
+	 */
+	public Object getBatchType(){
+		return getClass();
+	}
+}
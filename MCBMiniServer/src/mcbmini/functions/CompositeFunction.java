@@ -0,0 +1,111 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * Base for target functions that are built out of other target functions. The children run on the same channel as
+ * the composite but never get installed on the board themselves, when a child terminates it is only flagged as
+ * finished and holds its last value, so it can't remove the composite from the board.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public abstract class CompositeFunction extends TargetFunction{
+
+	/**
+	 * Makes this function the parent of a child, a child can only have one parent
+	 */
+	protected void adopt(TargetFunction child){
+		if( child == null ) throw new IllegalArgumentException("Child function can't be null");
+		if( child.parent != null && child.parent != this ) throw new IllegalArgumentException("Function is already part of another composite");
+		child.parent = this;
+		child.finished = false;
+		if( board != null ) adoptOwner(child);
+	}
+
+	/**
+	 * Lets go of a child that this function no longer runs, so that it can be used on its own or in another composite
+	 */
+	protected void release(TargetFunction child){
+		if( child == null || child.parent != this ) return;
+		child.parent = null;
+		child.finished = false;
+	}
+
+	/**
+	 * Gives the child the same board and channel as this function, a child that already runs on them keeps its state
+	 */
+	protected void adoptOwner(TargetFunction child){
+		if( child.board != board || child.channel != channel ){
+			child.setOwner(board, channel);
+		}
+	}
+
+	@Override
+	public void setOwner(MCBMiniBoard board, Channel channel) {
+		super.setOwner(board, channel);
+		for (TargetFunction child : getChildren()) {
+			if( child != null ) adoptOwner(child);
+		}
+	}
+
+	/**
+	 * Starting over also starts the children over, a child that finished the last time around runs again
+	 */
+	@Override
+	public void initialize(long tickNanos, long tickIndex) {
+		for (TargetFunction child : getChildren()) {
+			if( child != null ){
+				child.finished = false;
+				child.isInitialized = false;
+			}
+		}
+		super.initialize(tickNanos, tickIndex);
+	}
+
+	/**
+	 * @return the current children
+	 */
+	protected abstract TargetFunction[] getChildren();
+
+	/**
+	 * Evaluates a child for this tick, a finished child returns its last value
+	 */
+	protected int evaluate(TargetFunction child, long tickNanos, long tickIndex){
+		if( child.finished ) return child.lastValue;
+		if( !child.isInitialized() ) child.initialize(tickNanos, tickIndex);
+		child.lastValue = child.applyFunction(tickNanos, tickIndex);
+		return child.lastValue;
+	}
+
+	protected static boolean isFinished(TargetFunction child){
+		return child.finished;
+	}
+}
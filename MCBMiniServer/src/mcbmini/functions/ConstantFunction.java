@@ -0,0 +1,75 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * Holds a constant target, either until removed or for a number of ticks. Useful as a pause in a SequenceFunction
+ * or as a fixed offset in an OffsetFunction.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class ConstantFunction extends TargetFunction{
+
+	private final int target;
+	private final long durationTicks;
+	private long ticksHeld;
+
+	public ConstantFunction(int targetTick) {
+		this(targetTick, -1);
+	}
+
+	/**
+	 * @param targetTick
+	 * @param durationTicks how many ticks to hold the target for, -1 for ever. With 0 the function terminates on its
+	 * first tick without applying the target
+	 */
+	public ConstantFunction(int targetTick, long durationTicks) {
+		super();
+		this.target = targetTick;
+		this.durationTicks = durationTicks;
+	}
+
+	@Override
+	protected void initializeInternal() {
+		ticksHeld = 0;
+	}
+
+	// Counts the ticks itself, the tick index isn't known on every path (-1)
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		if( durationTicks == 0 ){
+			terminateFunction();
+			return board.getTargetTick(channel);
+		}
+		ticksHeld++;
+		if( durationTicks > 0 && ticksHeld >= durationTicks ){
+			terminateFunction();
+		}
+		return target;
+	}
+}
@@ -0,0 +1,167 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * Moves several axes to their targets so that they all start and arrive together. Every axis gets its own
+ * profile within its own limits, then the faster axes are slowed down in time by T_axis / T_slowest so that
+ * they follow the same shape but stretched out to the duration of the slowest axis.
+ *
+ * All the axes are anchored to the tick that the first of them is evaluated on, so an axis whose function was
+ * installed a tick later still runs on the same time line as the others.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class CoordinatedProfileMove {
+
+	private final MCBMiniBoard[] boards;
+	private final Channel[] channels;
+	private final int[] targets;
+	private final double[] maxVelocity;
+	private final double[] maxAcceleration;
+	private final double[] maxJerk;
+
+	private final CoordinatedFunction[] functions;
+	private double duration;
+
+	// The tick that the move started on, shared by all the axes, guarded by this
+	private boolean anchored;
+	private long startTickNanos;
+	private long startTickIndex;
+
+	/**
+	 * @param boards the board of every axis
+	 * @param channels the channel of every axis
+	 * @param targets the target of every axis in ticks
+	 * @param maxVelocity the velocity limit of every axis, ticks per second
+	 * @param maxAcceleration the acceleration limit of every axis, ticks per second^2
+	 * @param maxJerk the jerk limit of every axis, ticks per second^3, or null for trapezoidal profiles
+	 */
+	public CoordinatedProfileMove(MCBMiniBoard[] boards, Channel[] channels, int[] targets, double[] maxVelocity, double[] maxAcceleration, double[] maxJerk) {
+		int n = boards.length;
+		if( channels.length != n || targets.length != n || maxVelocity.length != n || maxAcceleration.length != n || (maxJerk != null && maxJerk.length != n) ){
+			throw new IllegalArgumentException("Need exactly one board, channel, target and limit per axis");
+		}
+		this.boards = boards;
+		this.channels = channels;
+		this.targets = targets;
+		this.maxVelocity = maxVelocity;
+		this.maxAcceleration = maxAcceleration;
+		this.maxJerk = maxJerk;
+
+		functions = new CoordinatedFunction[n];
+		for(int i=0; i<n; i++){
+			functions[i] = new CoordinatedFunction(this, targets[i]);
+		}
+	}
+
+	/**
+	 * Solves the profiles of all the axes from where they are now and starts the move
+	 */
+	public void start(){
+		synchronized (this) {
+			anchored = false;
+		}
+		duration = 0;
+		for(int i=0; i<functions.length; i++){
+			int start = boards[i].getActualTick(channels[i]);
+			if( maxJerk == null ){
+				functions[i].profile = MotionProfile.trapezoidal(start, targets[i], maxVelocity[i], maxAcceleration[i]);
+			}
+			else{
+				functions[i].profile = MotionProfile.sCurve(start, targets[i], maxVelocity[i], maxAcceleration[i], maxJerk[i]);
+			}
+			duration = Math.max(duration, functions[i].profile.getDuration());
+		}
+		for(int i=0; i<functions.length; i++){
+			double axis_duration = functions[i].profile.getDuration();
+			functions[i].timeScale = duration > 0 && axis_duration > 0 ? axis_duration / duration : 1;
+			boards[i].setTargetFunction(channels[i], functions[i]);
+		}
+	}
+
+	/**
+	 * Removes the functions from any axes that are still moving, the targets stay where they were
+	 */
+	public void stop(){
+		for(int i=0; i<functions.length; i++){
+			if( boards[i].getTargetFunction(channels[i]) == functions[i] ){
+				boards[i].setTargetFunction(channels[i], null);
+			}
+		}
+	}
+
+	/**
+	 * @return the duration of the move in seconds, only valid after start()
+	 */
+	public double getDuration(){
+		return duration;
+	}
+
+	/**
+	 * Makes the given tick the start of the move if it hasn't started yet, only call while holding the lock on this
+	 */
+	private void anchor(long tickNanos, long tickIndex){
+		if( !anchored ){
+			anchored = true;
+			startTickNanos = tickNanos;
+			startTickIndex = tickIndex;
+		}
+	}
+
+	private static class CoordinatedFunction extends ProfileFunction{
+
+		private final CoordinatedProfileMove move;
+
+		public CoordinatedFunction(CoordinatedProfileMove move, int targetPosTick) {
+			super(targetPosTick);
+			this.move = move;
+		}
+
+		@Override
+		public void initialize(long tickNanos, long tickIndex) {
+			synchronized (move) {
+				move.anchor(tickNanos, tickIndex);
+				super.initialize(move.startTickNanos, move.startTickIndex);
+			}
+		}
+
+		@Override
+		protected void initializeInternal() {
+			// The profile was solved together with the other axes in start()
+		}
+
+		@Override
+		protected MotionProfile createProfile(int startPos) {
+			return profile;
+		}
+	}
+}
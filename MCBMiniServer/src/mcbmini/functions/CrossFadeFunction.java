@@ -0,0 +1,113 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * Blends from one target function to another over a number of ticks with a cosine ease, so that switching
+ * functions doesn't produce a jump in the target. Both functions run during the fade, after it only the new one does.
+ * Terminates when the new function does.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class CrossFadeFunction extends CompositeFunction{
+
+	private TargetFunction from;
+	private final TargetFunction to;
+	private final long fadeTicks;
+	private final TargetFunction[] children;
+
+	private int fromValue;
+	private long fadedTicks;
+
+	/**
+	 * @param from the function to fade out, null fades out from the target the channel has when the fade starts
+	 * @param to the function to fade in
+	 * @param fadeTicks
+	 */
+	public CrossFadeFunction(TargetFunction from, TargetFunction to, long fadeTicks) {
+		super();
+		if( fadeTicks <= 0 ) throw new RuntimeException("Fade ticks must be > 0");
+		this.from = from;
+		this.to = to;
+		this.fadeTicks = fadeTicks;
+		this.children = new TargetFunction[]{ from, to };
+		if( from != null ) adopt(from);
+		adopt(to);
+	}
+
+	/**
+	 * Fades from whatever is currently running on the channel (function or plain target) to a new function
+	 * @return the installed cross fade
+	 */
+	public static CrossFadeFunction crossFadeTo(MCBMiniBoard board, Channel channel, TargetFunction to, long fadeTicks){
+		TargetFunction current = board.getTargetFunction(channel);
+		// The current function might have a parent already if it is a composite child, then we fade from its value
+		if( current != null && current.parent != null ) current = null;
+		CrossFadeFunction fade = new CrossFadeFunction(current, to, fadeTicks);
+		board.setTargetFunction(channel, fade);
+		return fade;
+	}
+
+	@Override
+	protected TargetFunction[] getChildren() {
+		return children;
+	}
+
+	@Override
+	protected void initializeInternal() {
+		fromValue = board.getTargetTick(channel);
+		fadedTicks = 0;
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		// Counts the ticks itself, the tick index isn't known on every path (-1)
+		double x = (double)(++fadedTicks) / (double)fadeTicks;
+		int toValue = evaluate(to, tickNanos, tickIndex);
+		if( isFinished(to) ){
+			terminateFunction();
+			return toValue;
+		}
+		if( x >= 1 ){
+			// Let go of the old function (and whatever it references) once it is faded out
+			if( from != null ){
+				release(from);
+				children[0] = null;
+				from = null;
+			}
+			return toValue;
+		}
+
+		if( from != null ) fromValue = evaluate(from, tickNanos, tickIndex);
+		double w = 0.5 - 0.5 * Math.cos(Math.PI * x);
+		return (int)Math.round( fromValue + (toValue - fromValue) * w );
+	}
+}
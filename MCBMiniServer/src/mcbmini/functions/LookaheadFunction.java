@@ -0,0 +1,186 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * A target function that plays out a buffer of future targets that the application (or a trajectory engine) fills
+ * ahead of time. Since the future is known the function can compensate for the bus latency by sampling the buffer
+ * ahead by a fraction of the measured round trip of the board, and add velocity and acceleration feedforward
+ * terms derived from the buffer to make up for the lag of the position loop on the board.
+ *
+ * The buffer is a single producer (the application), single consumer (the update thread) ring, targets have to be
+ * offered in time order. When the buffer runs dry the function holds the last target.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class LookaheadFunction extends TargetFunction{
+
+	private final long[] times;
+	private final int[] values;
+	private final int mask;
+
+	// Written by the producer and consumer respectively
+	private volatile long write_count;
+	private volatile long read_count;
+
+	private final long tick_period_ns;
+
+	private volatile double latency_fraction = 0.5;
+	private volatile double velocity_gain;
+	private volatile double acceleration_gain;
+
+	// The feedforward terms of the last evaluation
+	private volatile double velocity;
+	private volatile double acceleration;
+
+	private int last_target;
+
+	/**
+	 * @param capacity the number of targets that can be buffered, rounded up to a power of two
+	 * @param updateRate the server update rate, used as the step for the velocity and acceleration estimates
+	 */
+	public LookaheadFunction(int capacity, float updateRate) {
+		super();
+		if( capacity < 2 ) throw new RuntimeException("Capacity must be >= 2");
+		if( updateRate <= 0 ) throw new RuntimeException("Update rate must be > 0");
+		int size = Integer.highestOneBit(capacity - 1) << 1;
+		times = new long[size];
+		values = new int[size];
+		mask = size - 1;
+		tick_period_ns = (long)(1.0E9 / updateRate);
+	}
+
+	/**
+	 * Adds a future target, only to be called from one thread
+	 * @param timeNanos when the target should be reached, in System.nanoTime() time, needs to be later than the last offered target
+	 * @param target
+	 * @return false if the buffer is full or the time is out of order
+	 */
+	public boolean offer(long timeNanos, int target){
+		long w = write_count;
+		if( w - read_count >= times.length ) return false;
+		if( w > 0 && timeNanos <= times[(int)((w-1) & mask)] ) return false;
+		times[(int)(w & mask)] = timeNanos;
+		values[(int)(w & mask)] = target;
+		write_count = w + 1;
+		return true;
+	}
+
+	/**
+	 * @return the number of targets in the buffer, including the ones that are needed to interpolate the current target
+	 */
+	public int getBufferedCount(){
+		return (int)(write_count - read_count);
+	}
+
+	public int getCapacity(){
+		return times.length;
+	}
+
+	/**
+	 * @param latencyFraction how much of the measured round trip to look ahead by, 0.5 assumes a symmetric link
+	 */
+	public void setLatencyFraction(double latencyFraction){
+		this.latency_fraction = latencyFraction;
+	}
+
+	/**
+	 * @param velocityGain ticks of target lead per tick/s of velocity
+	 * @param accelerationGain ticks of target lead per tick/s^2 of acceleration
+	 */
+	public void setFeedforwardGains(double velocityGain, double accelerationGain){
+		this.velocity_gain = velocityGain;
+		this.acceleration_gain = accelerationGain;
+	}
+
+	/**
+	 * @return the velocity (ticks/s) at the look ahead point of the last tick
+	 */
+	public double getVelocityFeedforward(){
+		return velocity;
+	}
+
+	/**
+	 * @return the acceleration (ticks/s^2) at the look ahead point of the last tick
+	 */
+	public double getAccelerationFeedforward(){
+		return acceleration;
+	}
+
+	@Override
+	protected void initializeInternal() {
+		last_target = board.getTargetTick(channel);
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		long t = tickNanos + (long)(board.getRoundTripNanos() * latency_fraction);
+		long h = tick_period_ns;
+
+		// Drop the targets that are no longer needed, keep the last one before t-h to interpolate from
+		long r = read_count;
+		long w = write_count;
+		while( w - r >= 2 && times[(int)((r+1) & mask)] <= t - h ) r++;
+		read_count = r;
+
+		if( w == r ){
+			velocity = 0;
+			acceleration = 0;
+			return last_target;
+		}
+
+		double p_prev = positionAt(r, w, t - h);
+		double p = positionAt(r, w, t);
+		double p_next = positionAt(r, w, t + h);
+		double dt = h / 1.0E9;
+		double v = (p_next - p_prev) / (2*dt);
+		double a = (p_next - 2*p + p_prev) / (dt*dt);
+		velocity = v;
+		acceleration = a;
+
+		last_target = (int)Math.round( p + velocity_gain * v + acceleration_gain * a );
+		return last_target;
+	}
+
+	/**
+	 * Linear interpolation between the buffered targets, held at both ends
+	 */
+	private double positionAt(long r, long w, long t){
+		int first = (int)(r & mask);
+		if( t <= times[first] ) return values[first];
+		for(long i=r; i<w-1; i++){
+			int i0 = (int)(i & mask);
+			int i1 = (int)((i+1) & mask);
+			if( t < times[i1] ){
+				double fraction = (double)(t - times[i0]) / (double)(times[i1] - times[i0]);
+				return values[i0] + (values[i1] - values[i0]) * fraction;
+			}
+		}
+		return values[(int)((w-1) & mask)];
+	}
+}
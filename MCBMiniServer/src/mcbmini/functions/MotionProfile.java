@@ -0,0 +1,194 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * A point-to-point motion profile that starts and ends at rest, stored as up to 7 constant-jerk segments.
+ * The segment timings are solved once when the profile is created, evaluating the profile at a time is
+ * then a closed form polynomial within the right segment and allocates nothing.
+ *
+ * All limits are in ticks and seconds (ticks/s, ticks/s^2, ticks/s^3).
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class MotionProfile {
+
+	private static final int MAX_SEGMENTS = 7;
+
+	private final double start_pos;
+	private final double distance;
+	private final double sign;
+
+	private int nr_segments;
+	private final double[] seg_start_t = new double[MAX_SEGMENTS];
+	private final double[] seg_p = new double[MAX_SEGMENTS];
+	private final double[] seg_v = new double[MAX_SEGMENTS];
+	private final double[] seg_a = new double[MAX_SEGMENTS];
+	private final double[] seg_j = new double[MAX_SEGMENTS];
+	private double duration;
+
+	private MotionProfile(double start_pos, double end_pos){
+		this.start_pos = start_pos;
+		this.distance = Math.abs(end_pos - start_pos);
+		this.sign = end_pos >= start_pos ? 1 : -1;
+	}
+
+	/**
+	 * A trapezoidal velocity profile (infinite jerk)
+	 */
+	public static MotionProfile trapezoidal(double start_pos, double end_pos, double max_velocity, double max_acceleration){
+		if( max_velocity <= 0 || max_acceleration <= 0 ) throw new IllegalArgumentException("Velocity and acceleration limits must be > 0");
+		MotionProfile profile = new MotionProfile(start_pos, end_pos);
+		double d = profile.distance;
+
+		double v_peak = max_velocity;
+		double t_acc = v_peak / max_acceleration;
+
+		// If we can't reach the max velocity then it turns into a triangle
+		if( v_peak * t_acc > d ){
+			v_peak = Math.sqrt(d * max_acceleration);
+			t_acc = v_peak / max_acceleration;
+		}
+		double t_cruise = v_peak > 0 ? (d - v_peak * t_acc) / v_peak : 0;
+
+		profile.addSegment(t_acc, max_acceleration, 0);
+		profile.addSegment(t_cruise, 0, 0);
+		profile.addSegment(t_acc, -max_acceleration, 0);
+		return profile;
+	}
+
+	/**
+	 * A jerk limited 7-segment S-curve profile
+	 */
+	public static MotionProfile sCurve(double start_pos, double end_pos, double max_velocity, double max_acceleration, double max_jerk){
+		if( max_velocity <= 0 || max_acceleration <= 0 || max_jerk <= 0 ) throw new IllegalArgumentException("Velocity, acceleration and jerk limits must be > 0");
+		MotionProfile profile = new MotionProfile(start_pos, end_pos);
+		double d = profile.distance;
+
+		double v_peak = max_velocity;
+
+		// The acceleration phase covers v_peak * t_acc / 2, so accelerating and decelerating covers v_peak * t_acc
+		if( v_peak * accelerationTime(v_peak, max_acceleration, max_jerk) > d ){
+			// Max acceleration is reached if v_peak >= a^2/j, in that case solve v^2/a + v*a/j - d = 0
+			double a_j = max_acceleration / max_jerk;
+			v_peak = max_acceleration * (-a_j + Math.sqrt(a_j*a_j + 4*d/max_acceleration)) / 2;
+			if( v_peak < max_acceleration * a_j ){
+				// Otherwise the profile never reaches max acceleration, solve v * 2 * sqrt(v/j) = d
+				v_peak = Math.pow(d * Math.sqrt(max_jerk) / 2, 2.0/3.0);
+			}
+		}
+
+		double t_jerk = Math.min(max_acceleration / max_jerk, Math.sqrt(v_peak / max_jerk));
+		double a_lim = max_jerk * t_jerk;
+		double t_acc = a_lim > 0 ? v_peak / a_lim + t_jerk : 0;
+		double t_cruise = v_peak > 0 ? Math.max(0, (d - v_peak * t_acc) / v_peak) : 0;
+
+		profile.addSegment(t_jerk, 0, max_jerk);
+		profile.addSegment(t_acc - 2*t_jerk, a_lim, 0);
+		profile.addSegment(t_jerk, a_lim, -max_jerk);
+		profile.addSegment(t_cruise, 0, 0);
+		profile.addSegment(t_jerk, 0, -max_jerk);
+		profile.addSegment(t_acc - 2*t_jerk, -a_lim, 0);
+		profile.addSegment(t_jerk, -a_lim, max_jerk);
+		return profile;
+	}
+
+	private static double accelerationTime(double v, double max_acceleration, double max_jerk){
+		if( v * max_jerk < max_acceleration * max_acceleration ) return 2 * Math.sqrt(v / max_jerk);
+		return v / max_acceleration + max_acceleration / max_jerk;
+	}
+
+	/**
+	 * Appends a segment, the position and velocity at its start are integrated from the previous segment
+	 */
+	private void addSegment(double segment_duration, double a0, double j){
+		if( segment_duration <= 1e-12 ) return;
+
+		double p = 0, v = 0;
+		if( nr_segments > 0 ){
+			int prev = nr_segments-1;
+			double dt = duration - seg_start_t[prev];
+			p = seg_p[prev] + seg_v[prev]*dt + seg_a[prev]*dt*dt/2 + seg_j[prev]*dt*dt*dt/6;
+			v = seg_v[prev] + seg_a[prev]*dt + seg_j[prev]*dt*dt/2;
+		}
+		seg_start_t[nr_segments] = duration;
+		seg_p[nr_segments] = p;
+		seg_v[nr_segments] = v;
+		seg_a[nr_segments] = a0;
+		seg_j[nr_segments] = j;
+		nr_segments++;
+		duration += segment_duration;
+	}
+
+	/**
+	 * @return the total duration of the profile in seconds
+	 */
+	public double getDuration(){
+		return duration;
+	}
+
+	public double getStartPosition(){
+		return start_pos;
+	}
+
+	public double getEndPosition(){
+		return start_pos + sign * distance;
+	}
+
+	/**
+	 * @param t seconds from the start of the profile
+	 * @return the position in ticks
+	 */
+	public double getPosition(double t){
+		if( t <= 0 || nr_segments == 0 ) return start_pos;
+		if( t >= duration ) return getEndPosition();
+
+		int i = segmentAt(t);
+		double dt = t - seg_start_t[i];
+		double p = seg_p[i] + seg_v[i]*dt + seg_a[i]*dt*dt/2 + seg_j[i]*dt*dt*dt/6;
+		return start_pos + sign * Math.min(p, distance);
+	}
+
+	/**
+	 * @param t seconds from the start of the profile
+	 * @return the velocity in ticks/s
+	 */
+	public double getVelocity(double t){
+		if( t <= 0 || t >= duration || nr_segments == 0 ) return 0;
+
+		int i = segmentAt(t);
+		double dt = t - seg_start_t[i];
+		return sign * (seg_v[i] + seg_a[i]*dt + seg_j[i]*dt*dt/2);
+	}
+
+	private int segmentAt(double t){
+		int i = nr_segments-1;
+		while( i > 0 && seg_start_t[i] > t ) i--;
+		return i;
+	}
+}
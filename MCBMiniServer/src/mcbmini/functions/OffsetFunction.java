@@ -0,0 +1,95 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * Adds an overlay function on top of a base function, for example breathing or a gesture on top of a gaze target.
+ * The overlay can be swapped while running, a finished overlay keeps adding its last value (overlays that
+ * should leave no trace need to end at 0). Terminates when the base function does.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class OffsetFunction extends CompositeFunction{
+
+	private final TargetFunction base;
+	private volatile TargetFunction overlay;
+	private final TargetFunction[] children;
+
+	/**
+	 * @param base
+	 * @param overlay
+	 */
+	public OffsetFunction(TargetFunction base, TargetFunction overlay) {
+		super();
+		this.base = base;
+		this.children = new TargetFunction[]{ base, overlay };
+		adopt(base);
+		if( overlay != null ) adopt(overlay);
+		this.overlay = overlay;
+	}
+
+	/**
+	 * @param base
+	 * @param offsetTick a constant offset
+	 */
+	public OffsetFunction(TargetFunction base, int offsetTick) {
+		this(base, new ConstantFunction(offsetTick));
+	}
+
+	/**
+	 * Replaces the overlay, null removes it. Takes effect on the next tick
+	 */
+	public synchronized void setOverlay(TargetFunction overlay){
+		if( overlay != null ) adopt(overlay);
+		if( children[1] != overlay ) release(children[1]);
+		children[1] = overlay;
+		this.overlay = overlay;
+	}
+
+	@Override
+	protected TargetFunction[] getChildren() {
+		return children;
+	}
+
+	@Override
+	protected void initializeInternal() {
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		int value = evaluate(base, tickNanos, tickIndex);
+		if( isFinished(base) ){
+			terminateFunction();
+		}
+		TargetFunction overlay = this.overlay;
+		if( overlay != null ){
+			value += evaluate(overlay, tickNanos, tickIndex);
+		}
+		return value;
+	}
+}
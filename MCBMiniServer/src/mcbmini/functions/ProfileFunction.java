@@ -0,0 +1,142 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * Base for target functions that follow a MotionProfile from the current position to a target position.
+ * The profile is solved once when the function is initialized, after that each tick is a closed form evaluation.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public abstract class ProfileFunction extends BatchTargetFunction{
+
+	protected final int targetPos;
+	protected MotionProfile profile;
+
+	// Profile seconds per wall clock second, less than 1 slows the profile down so that it takes longer
+	protected double timeScale = 1;
+
+	public ProfileFunction(int targetPosTick) {
+		super();
+		this.targetPos = targetPosTick;
+	}
+
+	/**
+	 * @param startPos the position that the profile starts from
+	 * @return the profile to follow
+	 */
+	protected abstract MotionProfile createProfile(int startPos);
+
+	@Override
+	protected void initializeInternal() {
+		profile = createProfile(board.getActualTick(channel));
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		double t = getElapsedSeconds(tickNanos) * timeScale;
+		if( t >= profile.getDuration() ){
+			terminateFunction();
+			return targetPos;
+		}
+		return (int)Math.round( profile.getPosition(t) );
+	}
+
+	@Override
+	public TargetFunctionBatch createBatch() {
+		return new Batch();
+	}
+
+	/**
+	 * All the profile functions (trapezoidal, S-curve, coordinated) share a batch
+	 */
+	@Override
+	public Object getBatchType() {
+		return ProfileFunction.class;
+	}
+
+	public MotionProfile getProfile(){
+		return profile;
+	}
+
+	/**
+	 * @return the duration of the move in seconds, only valid after the function has been initialized
+	 */
+	public double getDuration(){
+		return profile == null ? 0 : profile.getDuration() / timeScale;
+	}
+
+	private static class Batch extends TargetFunctionBatch{
+		private MotionProfile[] profiles;
+		private long[] start_nanos;
+		private double[] time_scale;
+		private int[] target_pos;
+
+		@Override
+		protected void growParameters(int capacity) {
+			MotionProfile[] old_profiles = profiles;
+			long[] old_start_nanos = start_nanos;
+			double[] old_time_scale = time_scale;
+			int[] old_target_pos = target_pos;
+			profiles = new MotionProfile[capacity];
+			start_nanos = new long[capacity];
+			time_scale = new double[capacity];
+			target_pos = new int[capacity];
+			if( old_profiles != null ){
+				System.arraycopy(old_profiles, 0, profiles, 0, size);
+				System.arraycopy(old_start_nanos, 0, start_nanos, 0, size);
+				System.arraycopy(old_time_scale, 0, time_scale, 0, size);
+				System.arraycopy(old_target_pos, 0, target_pos, 0, size);
+			}
+		}
+
+		@Override
+		protected void gather(int i, BatchTargetFunction function) {
+			ProfileFunction f = (ProfileFunction)function;
+			profiles[i] = f.profile;
+			start_nanos[i] = f.startTimeNanos;
+			time_scale[i] = f.timeScale;
+			target_pos[i] = f.targetPos;
+		}
+
+		@Override
+		public void evaluate(long tickNanos, long tickIndex) {
+			for(int i=0; i<size; i++){
+				double t = (tickNanos - start_nanos[i]) / 1.0E9 * time_scale[i];
+				MotionProfile profile = profiles[i];
+				if( t >= profile.getDuration() ){
+					finished[i] = true;
+					targets[i] = target_pos[i];
+				}
+				else{
+					targets[i] = (int)Math.round( profile.getPosition(t) );
+				}
+			}
+		}
+	}
+}
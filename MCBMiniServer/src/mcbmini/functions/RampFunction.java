@@ -10,9 +10,8 @@ public class RampFunction extends TargetFunction{
 
 	private int targetPos;
 	private int durationMs;
-	private long endTime;
+	private long endTimeNanos;
 	private double slope;
-	private double intersect;
 
 	public RampFunction(int targetPosTick, int durationMs) {
 		super();
@@ -23,19 +22,22 @@ public class RampFunction extends TargetFunction{
 
 	@Override
 	protected void initializeInternal() {
-		this.endTime = startTime + durationMs;
+		this.endTimeNanos = startTimeNanos + durationMs * 1000000L;
 		slope = (double)(targetPos - board.getActualTick(channel)) / (double) durationMs;
-		intersect = targetPos - slope * endTime;
 	}
 
 	@Override
 	public int applyFunction() {
-		long time = System.currentTimeMillis();
-		if( time > endTime ){
+		return applyFunction(System.nanoTime(), -1);
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		if( tickNanos > endTimeNanos ){
 			terminateFunction();
 			return targetPos;
 		}
 
-		return (int)( slope * time + intersect );
+		return (int)( targetPos - slope * (endTimeNanos - tickNanos) / 1.0E6 );
 	}
 }
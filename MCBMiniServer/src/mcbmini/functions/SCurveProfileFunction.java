@@ -0,0 +1,59 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * Moves to a target with a 7-segment S-curve profile, limited velocity, acceleration and jerk
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class SCurveProfileFunction extends ProfileFunction{
+
+	private final double maxVelocity;
+	private final double maxAcceleration;
+	private final double maxJerk;
+
+	/**
+	 * @param targetPosTick
+	 * @param maxVelocity ticks per second
+	 * @param maxAcceleration ticks per second^2
+	 * @param maxJerk ticks per second^3
+	 */
+	public SCurveProfileFunction(int targetPosTick, double maxVelocity, double maxAcceleration, double maxJerk) {
+		super(targetPosTick);
+		if( maxVelocity <= 0 || maxAcceleration <= 0 || maxJerk <= 0 ) throw new IllegalArgumentException("Velocity, acceleration and jerk limits must be > 0");
+		this.maxVelocity = maxVelocity;
+		this.maxAcceleration = maxAcceleration;
+		this.maxJerk = maxJerk;
+	}
+
+	@Override
+	protected MotionProfile createProfile(int startPos) {
+		return MotionProfile.sCurve(startPos, targetPos, maxVelocity, maxAcceleration, maxJerk);
+	}
+}
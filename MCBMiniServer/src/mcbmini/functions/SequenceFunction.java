@@ -0,0 +1,81 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * Runs functions one after the other, the next one starts on the tick after the previous one finishes.
+ * Every function in the sequence except the last has to terminate on its own. Terminates after the last function does.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class SequenceFunction extends CompositeFunction{
+
+	private final TargetFunction[] functions;
+	private int current;
+
+	public SequenceFunction(TargetFunction... functions) {
+		super();
+		if( functions.length == 0 ) throw new RuntimeException("Sequence needs at least one function");
+		this.functions = functions.clone();
+		for (TargetFunction function : this.functions) {
+			adopt(function);
+		}
+	}
+
+	@Override
+	protected TargetFunction[] getChildren() {
+		return functions;
+	}
+
+	@Override
+	protected void initializeInternal() {
+		current = 0;
+	}
+
+	/**
+	 * @return the index of the function that is running
+	 */
+	public int getCurrentIndex(){
+		return current;
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		TargetFunction function = functions[current];
+		int value = evaluate(function, tickNanos, tickIndex);
+		if( isFinished(function) ){
+			if( current == functions.length-1 ){
+				terminateFunction();
+			}
+			else{
+				current++;
+			}
+		}
+		return value;
+	}
+}
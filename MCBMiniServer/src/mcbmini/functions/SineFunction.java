@@ -0,0 +1,113 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * Oscillates the target around a center position, runs until removed
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class SineFunction extends BatchTargetFunction{
+
+	private final double center;
+	private final double amplitude;
+	private final double omega;
+	private final double phase;
+
+	/**
+	 * @param centerTick
+	 * @param amplitudeTick
+	 * @param periodMs
+	 * @param phase in radians
+	 */
+	public SineFunction(int centerTick, int amplitudeTick, double periodMs, double phase) {
+		super();
+		if( periodMs <= 0 ) throw new RuntimeException("Period must be > 0");
+		this.center = centerTick;
+		this.amplitude = amplitudeTick;
+		this.omega = 2 * Math.PI / (periodMs / 1000.0);
+		this.phase = phase;
+	}
+
+	@Override
+	protected void initializeInternal() {
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		return (int)Math.round( center + amplitude * Math.sin(omega * getElapsedSeconds(tickNanos) + phase) );
+	}
+
+	@Override
+	public TargetFunctionBatch createBatch() {
+		return new Batch();
+	}
+
+	private static class Batch extends TargetFunctionBatch{
+		private double[] center;
+		private double[] amplitude;
+		private double[] omega;
+		private double[] phase;
+		private long[] start_nanos;
+
+		@Override
+		protected void growParameters(int capacity) {
+			center = grow(center, capacity);
+			amplitude = grow(amplitude, capacity);
+			omega = grow(omega, capacity);
+			phase = grow(phase, capacity);
+			long[] old_start_nanos = start_nanos;
+			start_nanos = new long[capacity];
+			if( old_start_nanos != null ) System.arraycopy(old_start_nanos, 0, start_nanos, 0, size);
+		}
+
+		private double[] grow(double[] array, int capacity){
+			double[] grown = new double[capacity];
+			if( array != null ) System.arraycopy(array, 0, grown, 0, size);
+			return grown;
+		}
+
+		@Override
+		protected void gather(int i, BatchTargetFunction function) {
+			SineFunction f = (SineFunction)function;
+			center[i] = f.center;
+			amplitude[i] = f.amplitude;
+			omega[i] = f.omega;
+			phase[i] = f.phase;
+			start_nanos[i] = f.startTimeNanos;
+		}
+
+		@Override
+		public void evaluate(long tickNanos, long tickIndex) {
+			for(int i=0; i<size; i++){
+				double t = (tickNanos - start_nanos[i]) / 1.0E9;
+				targets[i] = (int)Math.round( center[i] + amplitude[i] * Math.sin(omega[i] * t + phase[i]) );
+			}
+		}
+	}
+}
@@ -4,32 +4,96 @@ import mcbmini.MCBMiniBoard;
 import mcbmini.MCBMiniConstants.Channel;
 
 /**
+ * A function that generates the target of a channel, evaluated once per server tick.
+ *
+ * Functions get the tick timestamp (System.nanoTime() based, the time the frame is scheduled to go out on the bus)
+ * and the tick index passed in and compute from those instead of reading the wall clock, by overriding
+ * applyFunction(long, long). Older functions that only implement applyFunction() keep working, the tick is stamped
+ * into tickNanos and tickIndex before it gets called and startTime is still System.currentTimeMillis() based.
+ *
  * @author siggi
  * @date Mar 27, 2013
  */
 public abstract class TargetFunction {
 
 	protected long startTime;
+	protected long startTimeNanos;
+	protected long startTick;
+	protected long tickNanos;
+	protected long tickIndex;
 	protected boolean isInitialized;
 	protected MCBMiniBoard board;
 	protected Channel channel;
 
+	// Set when the function runs inside a CompositeFunction, which then owns its lifetime
+	protected TargetFunction parent;
+	boolean finished;
+	int lastValue;
+
 	public void setOwner(MCBMiniBoard board, Channel channel){
 		this.board = board;
 		this.channel = channel;
+		this.isInitialized = false;
 	}
 
 	public void terminateFunction(){
+		// Inside a composite we just flag that we are done, the composite decides what happens next
+		if( parent != null ){
+			finished = true;
+			return;
+		}
 		if( board != null ){
 			board.setTargetFunction(channel, null);
 		}
 	}
 
 	public void initialize(){
+		initialize(System.nanoTime(), -1);
+	}
+
+	/**
+	 * @param tickNanos the timestamp of the tick that the function is first evaluated on
+	 * @param tickIndex the index of that tick, -1 if not known
+	 */
+	public void initialize(long tickNanos, long tickIndex){
 		startTime = System.currentTimeMillis();
+		startTimeNanos = tickNanos;
+		startTick = tickIndex;
+		isInitialized = true;
 		initializeInternal();
 	}
 
+	public boolean isInitialized(){
+		return isInitialized;
+	}
+
+	/**
+	 * @param tickNanos
+	 * @return seconds from the start of the function to the given tick timestamp
+	 */
+	protected double getElapsedSeconds(long tickNanos){
+		return (tickNanos - startTimeNanos) / 1.0E9;
+	}
+
 	protected abstract void initializeInternal();
-	public abstract int applyFunction();
+
+	/**
+	 * @param tickNanos the timestamp of the tick, the time the frame is scheduled to go out on the bus
+	 * @param tickIndex the index of the tick, -1 if not known
+	 * @return the target for this tick
+	 */
+	public int applyFunction(long tickNanos, long tickIndex){
+		this.tickNanos = tickNanos;
+		this.tickIndex = tickIndex;
+		return applyFunction();
+	}
+
+	/**
+	 * Override this or applyFunction(long, long), this one gets called with the tick stamped into tickNanos and tickIndex.
+	 * A function that overrides neither holds the current target of its channel.
+	 * @return the target for this tick
+	 */
+	public int applyFunction(){
+		return board.getTargetTick(channel);
+	}
 }
@@ -0,0 +1,144 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * Evaluates many target functions of the same type in one go. Every tick the server adds the functions of
+ * the batch type, the subclass gathers their parameters into primitive arrays, evaluate() runs one tight loop
+ * over those arrays into the targets array and then all targets get clamped and written to the boards in one pass.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public abstract class TargetFunctionBatch {
+
+	protected int size;
+	protected BatchTargetFunction[] functions;
+	protected MCBMiniBoard[] boards;
+	protected Channel[] channels;
+	protected int[] min_targets;
+	protected int[] max_targets;
+
+	// Filled by evaluate()
+	protected int[] targets;
+	protected boolean[] finished;
+
+	public TargetFunctionBatch() {
+		allocate(16);
+	}
+
+	private void allocate(int capacity){
+		BatchTargetFunction[] old_functions = functions;
+		MCBMiniBoard[] old_boards = boards;
+		Channel[] old_channels = channels;
+		int[] old_min_targets = min_targets;
+		int[] old_max_targets = max_targets;
+
+		functions = new BatchTargetFunction[capacity];
+		boards = new MCBMiniBoard[capacity];
+		channels = new Channel[capacity];
+		min_targets = new int[capacity];
+		max_targets = new int[capacity];
+		targets = new int[capacity];
+		finished = new boolean[capacity];
+
+		if( old_functions != null ){
+			System.arraycopy(old_functions, 0, functions, 0, size);
+			System.arraycopy(old_boards, 0, boards, 0, size);
+			System.arraycopy(old_channels, 0, channels, 0, size);
+			System.arraycopy(old_min_targets, 0, min_targets, 0, size);
+			System.arraycopy(old_max_targets, 0, max_targets, 0, size);
+		}
+		growParameters(capacity);
+	}
+
+	/**
+	 * Adds an initialized function to be evaluated this tick
+	 */
+	public final void add(BatchTargetFunction function, MCBMiniBoard board, Channel channel){
+		if( size == functions.length ) allocate(size * 2);
+		functions[size] = function;
+		boards[size] = board;
+		channels[size] = channel;
+		min_targets[size] = board.getMinTarget(channel);
+		max_targets[size] = board.getMaxTarget(channel);
+		finished[size] = false;
+		gather(size, function);
+		size++;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Clamps the targets, writes them to the boards and terminates the functions that finished
+	 */
+	public final void applyTargets(){
+		for(int i=0; i<size; i++){
+			int value = targets[i];
+			if( value < min_targets[i] ) value = min_targets[i];
+			if( value > max_targets[i] ) value = max_targets[i];
+			targets[i] = value;
+		}
+		for(int i=0; i<size; i++){
+			boards[i].setFunctionTarget(channels[i], targets[i]);
+		}
+		for(int i=0; i<size; i++){
+			if( finished[i] ) functions[i].terminateFunction();
+		}
+	}
+
+	/**
+	 * Drops the references to this tick's functions
+	 */
+	public final void clear(){
+		for(int i=0; i<size; i++){
+			functions[i] = null;
+			boards[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Grow the parameter arrays to the capacity, keeping the first size entries
+	 */
+	protected abstract void growParameters(int capacity);
+
+	/**
+	 * Copy the parameters of the function into slot i of the parameter arrays
+	 */
+	protected abstract void gather(int i, BatchTargetFunction function);
+
+	/**
+	 * Compute targets[i] for all i < size, set finished[i] for functions that are done
+	 */
+	public abstract void evaluate(long tickNanos, long tickIndex);
+}
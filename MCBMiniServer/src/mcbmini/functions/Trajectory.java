@@ -0,0 +1,153 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+/**
+ * A multi-axis trajectory through a list of timed waypoints. Every axis is interpolated with a cubic spline
+ * that starts and ends at rest, and the spline is sampled once per bus tick into a primitive table up front
+ * so that playing it back is a plain table lookup.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class Trajectory {
+
+	private final int[][] samples;
+	private final float tick_rate;
+
+	/**
+	 * @param waypoint_times_ms the time of every waypoint, strictly increasing
+	 * @param waypoints the waypoints as waypoints[waypoint][axis] in ticks
+	 * @param tick_rate the rate (Hz) that the trajectory will be played back at, usually MCBMiniServer.getUpdateRate()
+	 */
+	public Trajectory(long[] waypoint_times_ms, int[][] waypoints, float tick_rate) {
+		if( waypoint_times_ms.length < 2 ) throw new IllegalArgumentException("A trajectory needs at least two waypoints");
+		if( waypoint_times_ms.length != waypoints.length ) throw new IllegalArgumentException("Need exactly one time per waypoint");
+		if( tick_rate <= 0 ) throw new IllegalArgumentException("Tick rate must be > 0");
+		for(int i=1; i<waypoint_times_ms.length; i++){
+			if( waypoint_times_ms[i] <= waypoint_times_ms[i-1] ) throw new IllegalArgumentException("Waypoint times must be strictly increasing");
+			if( waypoints[i].length != waypoints[0].length ) throw new IllegalArgumentException("All waypoints need the same number of axes");
+		}
+		this.tick_rate = tick_rate;
+
+		int nr_axes = waypoints[0].length;
+		int n = waypoint_times_ms.length;
+		double[] t = new double[n];
+		for(int i=0; i<n; i++) t[i] = (waypoint_times_ms[i] - waypoint_times_ms[0]) / 1000.0;
+
+		int nr_samples = (int)Math.floor(t[n-1] * tick_rate) + 1;
+		samples = new int[nr_axes][nr_samples];
+
+		double[] y = new double[n];
+		double[] m = new double[n];
+		for(int axis=0; axis<nr_axes; axis++){
+			for(int i=0; i<n; i++) y[i] = waypoints[i][axis];
+			solveClampedSpline(t, y, m);
+
+			int segment = 0;
+			for(int k=0; k<nr_samples; k++){
+				double time = Math.min(k / (double)tick_rate, t[n-1]);
+				while( segment < n-2 && time > t[segment+1] ) segment++;
+				samples[axis][k] = (int)Math.round( evaluate(t, y, m, segment, time) );
+			}
+			// Make sure that we end exactly on the last waypoint
+			samples[axis][nr_samples-1] = waypoints[n-1][axis];
+		}
+	}
+
+	/**
+	 * Solves for the second derivatives of a cubic spline with zero velocity at both ends
+	 */
+	private static void solveClampedSpline(double[] t, double[] y, double[] m){
+		int n = t.length;
+		double[] diag = new double[n];
+		double[] upper = new double[n];
+		double[] rhs = new double[n];
+
+		double h0 = t[1]-t[0];
+		diag[0] = 2*h0;
+		upper[0] = h0;
+		rhs[0] = 6*((y[1]-y[0])/h0);
+		for(int i=1; i<n-1; i++){
+			double h_prev = t[i]-t[i-1];
+			double h = t[i+1]-t[i];
+			diag[i] = 2*(h_prev+h);
+			upper[i] = h;
+			rhs[i] = 6*((y[i+1]-y[i])/h - (y[i]-y[i-1])/h_prev);
+		}
+		double hn = t[n-1]-t[n-2];
+		diag[n-1] = 2*hn;
+		rhs[n-1] = -6*((y[n-1]-y[n-2])/hn);
+
+		// Thomas algorithm, the lower diagonal is the same as the upper one shifted by one
+		for(int i=1; i<n; i++){
+			double lower = t[i]-t[i-1];
+			double w = lower / diag[i-1];
+			diag[i] -= w * upper[i-1];
+			rhs[i] -= w * rhs[i-1];
+		}
+		m[n-1] = rhs[n-1] / diag[n-1];
+		for(int i=n-2; i>=0; i--){
+			m[i] = (rhs[i] - upper[i] * m[i+1]) / diag[i];
+		}
+	}
+
+	private static double evaluate(double[] t, double[] y, double[] m, int i, double time){
+		double h = t[i+1]-t[i];
+		double a = (t[i+1]-time)/h;
+		double b = (time-t[i])/h;
+		return a*y[i] + b*y[i+1] + ((a*a*a-a)*m[i] + (b*b*b-b)*m[i+1]) * h*h / 6.0;
+	}
+
+	public int getNumberOfAxes(){
+		return samples.length;
+	}
+
+	public int getNumberOfSamples(){
+		return samples[0].length;
+	}
+
+	public float getTickRate(){
+		return tick_rate;
+	}
+
+	public long getDurationMs(){
+		return (long)((getNumberOfSamples()-1) * 1000.0 / tick_rate);
+	}
+
+	/**
+	 * @param axis
+	 * @param index the tick index from the start of the trajectory, clamped to the ends
+	 * @return the target for that tick
+	 */
+	public int getSample(int axis, long index){
+		int[] axis_samples = samples[axis];
+		if( index < 0 ) return axis_samples[0];
+		if( index >= axis_samples.length ) return axis_samples[axis_samples.length-1];
+		return axis_samples[(int)index];
+	}
+}
@@ -0,0 +1,138 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.functions;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniServer;
+
+/**
+ * Plays a Trajectory back through the target function mechanism, one TargetFunction per axis.
+ * All axes hold the first sample until the player is started and then start stepping through the
+ * sample table on the very same server tick, no matter when each board gets serviced within that tick.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class TrajectoryPlayer {
+
+	private final MCBMiniServer server;
+	private final Trajectory trajectory;
+	private final MCBMiniBoard[] boards;
+	private final Channel[] channels;
+	private final TrajectoryFunction[] functions;
+
+	// The tick sequence number that the trajectory starts after, -1 while not started
+	private volatile long start_tick = -1;
+
+	/**
+	 * @param server
+	 * @param trajectory
+	 * @param boards the board of every axis of the trajectory
+	 * @param channels the channel of every axis of the trajectory
+	 */
+	public TrajectoryPlayer(MCBMiniServer server, Trajectory trajectory, MCBMiniBoard[] boards, Channel[] channels) {
+		if( boards.length != trajectory.getNumberOfAxes() || channels.length != trajectory.getNumberOfAxes() ){
+			throw new IllegalArgumentException("Need exactly one board and channel per trajectory axis");
+		}
+		if( Math.abs(trajectory.getTickRate() - server.getUpdateRate()) > 1e-3 ){
+			throw new IllegalArgumentException("Trajectory was sampled at "+trajectory.getTickRate()+" Hz but the server runs at "+server.getUpdateRate()+" Hz");
+		}
+		this.server = server;
+		this.trajectory = trajectory;
+		this.boards = boards;
+		this.channels = channels;
+
+		functions = new TrajectoryFunction[boards.length];
+		for(int i=0; i<boards.length; i++){
+			functions[i] = new TrajectoryFunction(i);
+		}
+	}
+
+	/**
+	 * Installs the functions on all the axes and starts them all on the next tick
+	 */
+	public void start(){
+		start_tick = -1;
+		for(int i=0; i<functions.length; i++){
+			boards[i].setTargetFunction(channels[i], functions[i]);
+		}
+		start_tick = server.getTickSequence();
+	}
+
+	/**
+	 * Removes the functions from any axes that are still playing, the targets stay where they were
+	 */
+	public void stop(){
+		for(int i=0; i<functions.length; i++){
+			if( boards[i].getTargetFunction(channels[i]) == functions[i] ){
+				boards[i].setTargetFunction(channels[i], null);
+			}
+		}
+	}
+
+	/**
+	 * @return the tick sequence number that the first sample went out on, -1 if not started
+	 */
+	public long getStartTick(){
+		long start = start_tick;
+		return start == -1 ? -1 : start+1;
+	}
+
+	public boolean isFinished(){
+		long start = start_tick;
+		return start != -1 && server.getTickSequence() - start > trajectory.getNumberOfSamples();
+	}
+
+	public Trajectory getTrajectory(){
+		return trajectory;
+	}
+
+	private class TrajectoryFunction extends TargetFunction{
+		private final int axis;
+
+		public TrajectoryFunction(int axis) {
+			this.axis = axis;
+		}
+
+		@Override
+		protected void initializeInternal() {
+		}
+
+		@Override
+		public int applyFunction(long tickNanos, long tickIndex) {
+			long start = start_tick;
+			if( start == -1 ) return trajectory.getSample(axis, 0);
+
+			long index = tickIndex - start - 1;
+			if( index >= trajectory.getNumberOfSamples()-1 ){
+				terminateFunction();
+			}
+			return trajectory.getSample(axis, index);
+		}
+	}
+}
@@ -26,7 +26,12 @@ public class VelocityLimitFunction extends TargetFunction{
 
 	@Override
 	public int applyFunction() {
-		long elapsedTime = System.currentTimeMillis() - startTime;
+		return applyFunction(System.nanoTime(), -1);
+	}
+
+	@Override
+	public int applyFunction(long tickNanos, long tickIndex) {
+		double elapsedTime = (tickNanos - startTimeNanos) / 1.0E6;
 
 		double target = startPos + elapsedTime * ticksPerMs;
 		if( 	(ticksPerMs < 0 && target < targetPos) ||
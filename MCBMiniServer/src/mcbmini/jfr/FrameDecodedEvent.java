@@ -0,0 +1,62 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Off unless enabled in the recording settings since there is one per response
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+@Name("mcbmini.FrameDecoded")
+@Label("Frame Decoded")
+@Category("MCBMini")
+@Description("A response frame from a board passed its checks and got handled")
+@StackTrace(false)
+@Enabled(false)
+public final class FrameDecodedEvent extends Event {
+
+	@Label("Board Id")
+	public int boardId;
+
+	@Label("Channel")
+	public String channel;
+
+	@Label("Command")
+	public String command;
+
+	@Label("Frame Size")
+	public int size;
+}
@@ -0,0 +1,144 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.jfr;
+
+import jdk.jfr.EventType;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.Command;
+import mcbmini.MCBMiniConstants.Error;
+
+/**
+ * Emits the MCBMini Flight Recorder events. Only call these after checking JfrSupport.AVAILABLE.
+ *
+ * Every method first checks whether its event type is enabled in a running recording, which is a flag read,
+ * so with no recording nothing gets allocated. Start a recording with e.g.
+ * jcmd <pid> JFR.start duration=60s filename=mcbmini.jfr
+ * and the events show up under the MCBMini category next to GC, safepoints and thread scheduling.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public final class JfrEvents {
+
+	private static final EventType TICK = EventType.getEventType(TickEvent.class);
+	private static final EventType TICK_OVERRUN = EventType.getEventType(TickOverrunEvent.class);
+	private static final EventType FRAME_DECODED = EventType.getEventType(FrameDecodedEvent.class);
+	private static final EventType CHECKSUM_FAILURE = EventType.getEventType(ChecksumFailureEvent.class);
+	private static final EventType BOARD_ERROR = EventType.getEventType(BoardErrorEvent.class);
+	private static final EventType BOARD_DISABLED = EventType.getEventType(BoardDisabledEvent.class);
+	private static final EventType BOARD_SUSPECT = EventType.getEventType(BoardSuspectEvent.class);
+	private static final EventType REQUEST_TIMEOUT = EventType.getEventType(RequestTimeoutEvent.class);
+
+	private JfrEvents(){
+	}
+
+	/**
+	 * @return the started tick event to hand to endTick, null if tick events aren't being recorded
+	 */
+	public static Object beginTick(){
+		if( !TICK.isEnabled() ) return null;
+		TickEvent event = new TickEvent();
+		event.begin();
+		return event;
+	}
+
+	public static void endTick(Object tick_event, long tick_index, long bytes_written, int boards_serviced, boolean sent_parameters){
+		if( tick_event == null ) return;
+		TickEvent event = (TickEvent)tick_event;
+		event.end();
+		if( !event.shouldCommit() ) return;
+		event.tickIndex = tick_index;
+		event.bytesWritten = bytes_written;
+		event.boardsServiced = boards_serviced;
+		event.sentParameters = sent_parameters;
+		event.commit();
+	}
+
+	public static void tickOverrun(long tick_index, long duration_ns, long period_ns){
+		if( !TICK_OVERRUN.isEnabled() ) return;
+		TickOverrunEvent event = new TickOverrunEvent();
+		event.tickIndex = tick_index;
+		event.durationNanos = duration_ns;
+		event.periodNanos = period_ns;
+		event.commit();
+	}
+
+	public static void frameDecoded(int board_id, Channel channel, Command command, int size){
+		if( !FRAME_DECODED.isEnabled() ) return;
+		FrameDecodedEvent event = new FrameDecodedEvent();
+		event.boardId = board_id;
+		event.channel = channel.name();
+		event.command = command == null ? null : command.name();
+		event.size = size;
+		event.commit();
+	}
+
+	public static void checksumFailure(int command_id, int calculated, int received){
+		if( !CHECKSUM_FAILURE.isEnabled() ) return;
+		ChecksumFailureEvent event = new ChecksumFailureEvent();
+		event.commandId = command_id;
+		event.calculated = calculated;
+		event.received = received;
+		event.commit();
+	}
+
+	public static void boardError(int board_id, Channel channel, int error_code){
+		if( !BOARD_ERROR.isEnabled() ) return;
+		Error error = Error.getForId(error_code);
+		BoardErrorEvent event = new BoardErrorEvent();
+		event.boardId = board_id;
+		event.channel = channel.name();
+		event.error = error == null ? "UNKNOWN("+error_code+")" : error.name();
+		event.commit();
+	}
+
+	public static void boardDisabled(int board_id, Channel channel){
+		if( !BOARD_DISABLED.isEnabled() ) return;
+		BoardDisabledEvent event = new BoardDisabledEvent();
+		event.boardId = board_id;
+		event.channel = channel.name();
+		event.commit();
+	}
+
+	public static void boardSuspect(int board_id, int missed_responses, long silence_ns){
+		if( !BOARD_SUSPECT.isEnabled() ) return;
+		BoardSuspectEvent event = new BoardSuspectEvent();
+		event.boardId = board_id;
+		event.missedResponses = missed_responses;
+		event.silence = silence_ns;
+		event.commit();
+	}
+
+	public static void requestTimeout(int board_id, Channel channel, Command command){
+		if( !REQUEST_TIMEOUT.isEnabled() ) return;
+		RequestTimeoutEvent event = new RequestTimeoutEvent();
+		event.boardId = board_id;
+		event.channel = channel == null ? null : channel.name();
+		event.command = command == null ? null : command.name();
+		event.commit();
+	}
+}
@@ -0,0 +1,54 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.jfr;
+
+/**
+ * Tells whether the Flight Recorder API is there. This class doesn't touch jdk.jfr itself, so callers check
+ * AVAILABLE before calling JfrEvents and the event classes never get loaded on runtimes without JFR (Android, older JREs).
+ * Setting the system property mcbmini.jfr=false turns the events off altogether.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public final class JfrSupport {
+
+	public static final boolean AVAILABLE = detect();
+
+	private JfrSupport(){
+	}
+
+	private static boolean detect(){
+		if( "false".equalsIgnoreCase(System.getProperty("mcbmini.jfr")) ) return false;
+		try{
+			Class.forName("jdk.jfr.Event", false, JfrSupport.class.getClassLoader());
+			return true;
+		}
+		catch(Throwable e){
+			return false;
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.joints;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * A named joint on top of a board channel, in joint units (degrees, radians, millimeters, whatever the gear ratio is given in).
+ *
+ * ticks = offset + units * gear_ratio
+ *
+ * All conversions go through 16.16 fixed point joint units with precomputed integer scale factors, so that a
+ * value converts to the exact same ticks no matter if it comes through the double or the fixed point path,
+ * from one call or from a bulk conversion in a JointGroup.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class Joint {
+
+	public static final int FRACTION_BITS = 16;
+	public static final int ONE = 1 << FRACTION_BITS;
+
+	static final int SCALE_SHIFT = 2 * FRACTION_BITS;
+
+	// Extra precision bits of the tick to unit scale factor
+	static final int INVERSE_BITS = 16;
+
+	private final String name;
+	private final MCBMiniBoard board;
+	private final Channel channel;
+	private final double gear_ratio;
+	private final int offset;
+	private final double min_units;
+	private final double max_units;
+
+	// ticks = offset + (units_fixed * scale + 2^(SCALE_SHIFT-1)) >> SCALE_SHIFT, the scale is ticks per unit in 32.16 fixed point
+	final long scale;
+	// units_fixed = ((ticks - offset) * inverse_scale + 2^(INVERSE_BITS-1)) >> INVERSE_BITS
+	final long inverse_scale;
+	final int min_ticks;
+	final int max_ticks;
+
+	/**
+	 * @param name
+	 * @param board
+	 * @param channel
+	 * @param gear_ratio ticks per joint unit, negative if the joint turns the other way
+	 * @param offset the ticks at joint zero
+	 * @param min_units the lower joint limit, can be Double.NEGATIVE_INFINITY
+	 * @param max_units the upper joint limit, can be Double.POSITIVE_INFINITY
+	 */
+	public Joint(String name, MCBMiniBoard board, Channel channel, double gear_ratio, int offset, double min_units, double max_units) {
+		if( gear_ratio == 0 || Double.isNaN(gear_ratio) || Double.isInfinite(gear_ratio) ) throw new IllegalArgumentException("Gear ratio of joint "+name+" must be a non zero number");
+		if( min_units > max_units ) throw new IllegalArgumentException("Min limit of joint "+name+" is above its max limit");
+		this.name = name;
+		this.board = board;
+		this.channel = channel;
+		this.gear_ratio = gear_ratio;
+		this.offset = offset;
+		this.min_units = min_units;
+		this.max_units = max_units;
+
+		this.scale = Math.round(gear_ratio * ONE);
+		this.inverse_scale = Math.round( (double)ONE * (1L << INVERSE_BITS) / gear_ratio );
+
+		int a = limitTicks(min_units);
+		int b = limitTicks(max_units);
+		this.min_ticks = Math.min(a, b);
+		this.max_ticks = Math.max(a, b);
+	}
+
+	/**
+	 * Infinite limits map to the full tick range
+	 */
+	private int limitTicks(double units){
+		if( Double.isInfinite(units) ) return (units > 0) == (gear_ratio > 0) ? Integer.MAX_VALUE : -Integer.MAX_VALUE;
+		return toTicks(units);
+	}
+
+	/**
+	 * Sets the target limits of the board channel to the joint limits, an infinite joint limit leaves the board limit
+	 * that it maps to as it is
+	 */
+	public void applyLimits(){
+		// With a negative gear ratio the lower joint limit is the upper tick limit
+		boolean has_min_ticks = !Double.isInfinite(gear_ratio > 0 ? min_units : max_units);
+		boolean has_max_ticks = !Double.isInfinite(gear_ratio > 0 ? max_units : min_units);
+		if( has_min_ticks ) board.setMinTarget(channel, min_ticks);
+		if( has_max_ticks ) board.setMaxTarget(channel, max_ticks);
+	}
+
+	/**
+	 * @param units
+	 * @return the units in 16.16 fixed point, saturated at +-32768 units
+	 */
+	public static int toFixed(double units){
+		long fixed = Math.round(units * ONE);
+		return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, fixed));
+	}
+
+	public static double fromFixed(int fixed){
+		return fixed / (double)ONE;
+	}
+
+	public int toTicksFixed(int units_fixed){
+		long ticks = offset + ((units_fixed * scale + (1L << (SCALE_SHIFT-1))) >> SCALE_SHIFT);
+		return (int)Math.max(-Integer.MAX_VALUE, Math.min(Integer.MAX_VALUE, ticks));
+	}
+
+	/**
+	 * @return the ticks in 16.16 fixed point joint units, saturated at +-32768 units
+	 */
+	public int toUnitsFixed(int ticks){
+		long units_fixed = (((long)ticks - offset) * inverse_scale + (1L << (INVERSE_BITS-1))) >> INVERSE_BITS;
+		return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, units_fixed));
+	}
+
+	public int toTicks(double units){
+		return toTicksFixed(toFixed(units));
+	}
+
+	public double toUnits(int ticks){
+		return fromFixed(toUnitsFixed(ticks));
+	}
+
+	/**
+	 * Sets the target of the joint, clamped to the joint limits
+	 */
+	public void setTarget(double units){
+		board.setTargetTick(channel, clamp(toTicks(units)));
+	}
+
+	public double getTarget(){
+		return toUnits(board.getTargetTick(channel));
+	}
+
+	public double getActual(){
+		return toUnits(board.getActualTick(channel));
+	}
+
+	int clamp(int ticks){
+		return ticks < min_ticks ? min_ticks : (ticks > max_ticks ? max_ticks : ticks);
+	}
+
+	public String getName(){ return name; }
+	public MCBMiniBoard getBoard(){ return board; }
+	public Channel getChannel(){ return channel; }
+	public double getGearRatio(){ return gear_ratio; }
+	public int getOffset(){ return offset; }
+	public double getMinLimit(){ return min_units; }
+	public double getMaxLimit(){ return max_units; }
+	public int getMinTicks(){ return min_ticks; }
+	public int getMaxTicks(){ return max_ticks; }
+
+	@Override
+	public String toString() {
+		return name+" (board "+board.getId()+" channel "+channel+")";
+	}
+}
@@ -0,0 +1,172 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.joints;
+
+import java.util.List;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+
+/**
+ * An ordered set of joints with bulk conversions between joint units and ticks. The scale factors, offsets and
+ * limits of all the joints are laid out in primitive arrays so that converting a whole pose is one tight integer loop.
+ * Arrays passed in and out are indexed in the order of the joints in the group.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class JointGroup {
+
+	private final Joint[] joints;
+	private final MCBMiniBoard[] boards;
+	private final Channel[] channels;
+	private final int[] offsets;
+	private final long[] scales;
+	private final long[] inverse_scales;
+	private final int[] min_ticks;
+	private final int[] max_ticks;
+
+	public JointGroup(List<Joint> joints) {
+		int n = joints.size();
+		this.joints = joints.toArray(new Joint[n]);
+		boards = new MCBMiniBoard[n];
+		channels = new Channel[n];
+		offsets = new int[n];
+		scales = new long[n];
+		inverse_scales = new long[n];
+		min_ticks = new int[n];
+		max_ticks = new int[n];
+		for(int i=0; i<n; i++){
+			Joint joint = this.joints[i];
+			for(int j=0; j<i; j++){
+				if( this.joints[j].getName().equals(joint.getName()) ) throw new IllegalArgumentException("Duplicate joint name: "+joint.getName());
+			}
+			boards[i] = joint.getBoard();
+			channels[i] = joint.getChannel();
+			offsets[i] = joint.getOffset();
+			scales[i] = joint.scale;
+			inverse_scales[i] = joint.inverse_scale;
+			min_ticks[i] = joint.min_ticks;
+			max_ticks[i] = joint.max_ticks;
+		}
+	}
+
+	public int size(){
+		return joints.length;
+	}
+
+	public Joint getJoint(int index){
+		return joints[index];
+	}
+
+	/**
+	 * @return the joint with the name or null
+	 */
+	public Joint getJoint(String name){
+		int index = indexOf(name);
+		return index == -1 ? null : joints[index];
+	}
+
+	public int indexOf(String name){
+		for(int i=0; i<joints.length; i++){
+			if( joints[i].getName().equals(name) ) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * 16.16 fixed point joint units to ticks, clamped to the joint limits
+	 */
+	public void toTicks(int[] units_fixed, int[] ticks_out){
+		for(int i=0; i<joints.length; i++){
+			long ticks = offsets[i] + ((units_fixed[i] * scales[i] + (1L << (Joint.SCALE_SHIFT-1))) >> Joint.SCALE_SHIFT);
+			ticks_out[i] = (int)(ticks < min_ticks[i] ? min_ticks[i] : (ticks > max_ticks[i] ? max_ticks[i] : ticks));
+		}
+	}
+
+	/**
+	 * Ticks to 16.16 fixed point joint units
+	 */
+	public void toUnits(int[] ticks, int[] units_fixed_out){
+		for(int i=0; i<joints.length; i++){
+			long units_fixed = (((long)ticks[i] - offsets[i]) * inverse_scales[i] + (1L << (Joint.INVERSE_BITS-1))) >> Joint.INVERSE_BITS;
+			units_fixed_out[i] = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, units_fixed));
+		}
+	}
+
+	/**
+	 * Joint units to ticks, clamped to the joint limits
+	 * @param scratch_fixed a scratch array of at least size() entries, to keep this garbage free
+	 */
+	public void toTicks(double[] units, int[] ticks_out, int[] scratch_fixed){
+		for(int i=0; i<joints.length; i++){
+			scratch_fixed[i] = Joint.toFixed(units[i]);
+		}
+		toTicks(scratch_fixed, ticks_out);
+	}
+
+	/**
+	 * Ticks to joint units
+	 * @param scratch_fixed a scratch array of at least size() entries, to keep this garbage free
+	 */
+	public void toUnits(int[] ticks, double[] units_out, int[] scratch_fixed){
+		toUnits(ticks, scratch_fixed);
+		for(int i=0; i<joints.length; i++){
+			units_out[i] = Joint.fromFixed(scratch_fixed[i]);
+		}
+	}
+
+	/**
+	 * Sets the targets of all joints from ticks (already clamped, e.g. by toTicks())
+	 */
+	public void setTargetTicks(int[] ticks){
+		for(int i=0; i<joints.length; i++){
+			boards[i].setTargetTick(channels[i], ticks[i]);
+		}
+	}
+
+	public void getActualTicks(int[] ticks_out){
+		for(int i=0; i<joints.length; i++){
+			ticks_out[i] = boards[i].getActualTick(channels[i]);
+		}
+	}
+
+	public void getTargetTicks(int[] ticks_out){
+		for(int i=0; i<joints.length; i++){
+			ticks_out[i] = boards[i].getTargetTick(channels[i]);
+		}
+	}
+
+	/**
+	 * Sets the board target limits of all joints to the joint limits
+	 */
+	public void applyLimits(){
+		for (Joint joint : joints) {
+			joint.applyLimits();
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import java.util.Map;
+
+/**
+ * Health of one board, the channel specific values are in ChannelMXBean
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public interface BoardMXBean {
+
+	public int getId();
+	public long getLastSeenAgeMillis();
+	public long getRoundTripMicros();
+	public long getRoundTripP99Micros();
+	public float getResponseRate();
+	public long getInterArrivalMicros();
+	public int getMissedResponses();
+	public boolean isSuspect();
+	public int getTimesSuspected();
+	public long getResponsesExpected();
+	public long getResponsesLost();
+	public long getResponsesUnexpected();
+	public float getResponseLossRate();
+
+	/**
+	 * @return the counts of the errors that aren't channel specific, by MCBMiniConstants.Error name
+	 */
+	public Map<String, Integer> getErrorCounts();
+}
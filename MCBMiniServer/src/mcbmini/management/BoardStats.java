@@ -0,0 +1,91 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import mcbmini.FrameCorrelator;
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Error;
+import mcbmini.utils.RateMeter.Window;
+
+/**
+ * @author agent
+ * @date Oct 19, 2026
+ */
+class BoardStats implements BoardMXBean {
+
+	private final MCBMiniBoard board;
+	private final FrameCorrelator correlator;
+
+	BoardStats(MCBMiniBoard board, FrameCorrelator correlator){
+		this.board = board;
+		this.correlator = correlator;
+	}
+
+	@Override
+	public int getId() { return board.getId(); }
+
+	@Override
+	public long getLastSeenAgeMillis() {
+		long last = board.getLastResponseMillis();
+		return last == 0 ? -1 : System.currentTimeMillis() - last;
+	}
+
+	@Override
+	public long getRoundTripMicros() { return board.getRoundTripNanos() / 1000; }
+	@Override
+	public long getRoundTripP99Micros() { return board.getResponseMeter().getSnapshot(Window.TEN_SECONDS).p99 / 1000; }
+	@Override
+	public float getResponseRate() { return board.getResponseMeter().getRate(Window.TEN_SECONDS); }
+	@Override
+	public long getInterArrivalMicros() { return board.getInterArrivalNanos() / 1000; }
+	@Override
+	public int getMissedResponses() { return board.getMissedResponses(); }
+	@Override
+	public boolean isSuspect() { return board.isSuspect(); }
+	@Override
+	public int getTimesSuspected() { return board.getTimesSuspected(); }
+	@Override
+	public long getResponsesExpected() { return correlator.getExpected(board.getId()); }
+	@Override
+	public long getResponsesLost() { return correlator.getLost(board.getId()); }
+	@Override
+	public long getResponsesUnexpected() { return correlator.getUnexpected(board.getId()); }
+	@Override
+	public float getResponseLossRate() { return correlator.getLossRate(board.getId()); }
+
+	@Override
+	public Map<String, Integer> getErrorCounts() {
+		Map<String, Integer> counts = new TreeMap<String, Integer>();
+		for (Error error : Error.values()) {
+			if( !error.channel_specific ) counts.put(error.name(), board.getErrorCount(error));
+		}
+		return counts;
+	}
+}
@@ -0,0 +1,51 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import java.util.Map;
+
+/**
+ * Targets, feedback and errors of one channel of a board
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public interface ChannelMXBean {
+
+	public int getBoardId();
+	public String getChannel();
+	public int getTargetTick();
+	public int getActualTick();
+	public int getMotorCurrent();
+	public int getMinTarget();
+	public int getMaxTarget();
+
+	/**
+	 * @return the counts of the channel specific errors, by MCBMiniConstants.Error name
+	 */
+	public Map<String, Integer> getErrorCounts();
+}
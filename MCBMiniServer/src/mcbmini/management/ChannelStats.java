@@ -0,0 +1,77 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.ChannelParameter;
+import mcbmini.MCBMiniConstants.Error;
+
+/**
+ * Reads the feedback from the board's history buffers and the targets from its primitive arrays,
+ * neither takes the board lock
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+class ChannelStats implements ChannelMXBean {
+
+	private final MCBMiniBoard board;
+	private final Channel channel;
+
+	ChannelStats(MCBMiniBoard board, Channel channel){
+		this.board = board;
+		this.channel = channel;
+	}
+
+	@Override
+	public int getBoardId() { return board.getId(); }
+	@Override
+	public String getChannel() { return channel.name(); }
+	@Override
+	public int getTargetTick() { return board.getTargetTick(channel); }
+	@Override
+	public int getActualTick() { return board.getHistory(channel, ChannelParameter.ACTUAL_TICK).getLatestValue(0); }
+	@Override
+	public int getMotorCurrent() { return board.getHistory(channel, ChannelParameter.MOTOR_CURRENT).getLatestValue(0); }
+	@Override
+	public int getMinTarget() { return board.getMinTarget(channel); }
+	@Override
+	public int getMaxTarget() { return board.getMaxTarget(channel); }
+
+	@Override
+	public Map<String, Integer> getErrorCounts() {
+		Map<String, Integer> counts = new TreeMap<String, Integer>();
+		for (Error error : Error.values()) {
+			if( error.channel_specific ) counts.put(error.name(), board.getErrorCount(error, channel));
+		}
+		return counts;
+	}
+}
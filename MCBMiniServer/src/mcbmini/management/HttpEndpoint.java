@@ -0,0 +1,447 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import mcbmini.BusAccounting;
+import mcbmini.BusAccounting.Category;
+import mcbmini.FrameCorrelator;
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.ChannelParameter;
+import mcbmini.MCBMiniConstants.Command;
+import mcbmini.MCBMiniConstants.Error;
+import mcbmini.MCBMiniSerialManager;
+import mcbmini.MCBMiniServer;
+import mcbmini.TickWatchdog;
+import mcbmini.telemetry.ChannelSelector;
+import mcbmini.telemetry.DecimatedBatch;
+import mcbmini.telemetry.TelemetryDecimator;
+import mcbmini.telemetry.TelemetrySubscription;
+import mcbmini.utils.AsyncLog;
+import mcbmini.utils.Log;
+import mcbmini.utils.RateMeter;
+import mcbmini.utils.RateMeter.Snapshot;
+import mcbmini.utils.RateMeter.Window;
+
+/**
+ * A small HTTP endpoint for headless setups, built on the JDK's com.sun.net.httpserver:
+ *
+ * GET /metrics    Prometheus text format: tick rate and jitter, update rates, bus bytes, per board errors and round trips
+ * GET /telemetry  A never ending stream of decimated telemetry, one JSON object per line and channel field every interval.
+ *                 Parameters: board (repeatable, default all), channel (A or B, default both),
+ *                 field (repeatable ChannelParameter name, default ACTUAL_TICK) and interval_ms (default 100)
+ *
+ * The metrics are rendered on the HTTP thread from the same lock free counters and RateMeter snapshots as the JMX beans,
+ * and the rendered page is reused for requests within METRICS_CACHE_MS. A telemetry stream subscribes a TelemetryDecimator,
+ * so the update thread only does the per sample min/max/sum while the formatting happens on the stream's own thread.
+ *
+ * The server doesn't reference this class, it only gets loaded (along with com.sun.net.httpserver) when an endpoint is started.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class HttpEndpoint {
+
+	public static final int DEFAULT_PORT = 9464;
+	public static final int MAX_TELEMETRY_STREAMS = 4;
+	public static final long METRICS_CACHE_MS = 500;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final MCBMiniServer server;
+	private final HttpServer http_server;
+	private final ExecutorService executor;
+	private final AtomicInteger open_streams = new AtomicInteger();
+	private volatile boolean stopped;
+
+	private final Object metrics_lock = new Object();
+	private byte[] metrics_page;
+	private long metrics_rendered_ms;
+
+	/**
+	 * Starts an endpoint on the loopback interface at the default port
+	 */
+	public static HttpEndpoint start(MCBMiniServer server) throws IOException{
+		return start(server, new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT));
+	}
+
+	/**
+	 * @param server
+	 * @param address where to listen, bind to a non loopback address only on a trusted network since there is no authentication
+	 */
+	public static HttpEndpoint start(MCBMiniServer server, InetSocketAddress address) throws IOException{
+		return new HttpEndpoint(server, address);
+	}
+
+	private HttpEndpoint(MCBMiniServer server, InetSocketAddress address) throws IOException{
+		this.server = server;
+		http_server = HttpServer.create(address, 8);
+		executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "MCBMiniHttp-"+count.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		http_server.setExecutor(executor);
+
+		http_server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleMetrics(exchange);
+			}
+		});
+		http_server.createContext("/telemetry", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleTelemetry(exchange);
+			}
+		});
+		http_server.start();
+		Log.println("HTTP endpoint listening on "+http_server.getAddress());
+	}
+
+	public InetSocketAddress getAddress(){
+		return http_server.getAddress();
+	}
+
+	/**
+	 * Stops listening and ends all telemetry streams
+	 */
+	public void stop(){
+		stopped = true;
+		http_server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/*
+	 * Metrics
+	 */
+
+	private void handleMetrics(HttpExchange exchange) throws IOException{
+		try{
+			if( !"GET".equals(exchange.getRequestMethod()) ){
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] page;
+			synchronized (metrics_lock) {
+				long now = System.currentTimeMillis();
+				if( metrics_page == null || now - metrics_rendered_ms >= METRICS_CACHE_MS ){
+					metrics_page = renderMetrics().getBytes(UTF8);
+					metrics_rendered_ms = now;
+				}
+				page = metrics_page;
+			}
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			exchange.sendResponseHeaders(200, page.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(page);
+			out.close();
+		}
+		finally{
+			exchange.close();
+		}
+	}
+
+	private String renderMetrics(){
+		StringBuilder sb = new StringBuilder(8192);
+		double period = 1.0 / server.getEffectiveUpdateRate();
+
+		RateMeter tick_meter = server.getTickMeter();
+		header(sb, "mcbmini_tick_rate_hz", "gauge", "Rate of the update thread");
+		for (Window window : Window.values()) {
+			sb.append("mcbmini_tick_rate_hz{window=\"").append(window.seconds).append("s\"} ").append(tick_meter.getRate(window)).append('\n');
+		}
+		Snapshot periods = tick_meter.getSnapshot(Window.TEN_SECONDS);
+		header(sb, "mcbmini_tick_period_seconds", "summary", "Time between tick starts over the last 10 s");
+		quantile(sb, "mcbmini_tick_period_seconds", "0.5", periods.p50);
+		quantile(sb, "mcbmini_tick_period_seconds", "0.9", periods.p90);
+		quantile(sb, "mcbmini_tick_period_seconds", "0.99", periods.p99);
+		sample(sb, "mcbmini_tick_period_seconds_count", periods.value_count);
+		header(sb, "mcbmini_tick_jitter_seconds", "gauge", "Largest deviation of a tick period from the effective one over the last 10 s");
+		double jitter = periods.value_count == 0 ? 0 : Math.max(periods.max / 1.0E9 - period, period - periods.min / 1.0E9);
+		sample(sb, "mcbmini_tick_jitter_seconds", jitter);
+		header(sb, "mcbmini_tick_duration_seconds", "gauge", "Duration of the last tick including the bus write");
+		sample(sb, "mcbmini_tick_duration_seconds", server.getLastTickDurationNanos() / 1.0E9);
+		header(sb, "mcbmini_tick_overruns_total", "counter", "Ticks that took longer than the update period");
+		sample(sb, "mcbmini_tick_overruns_total", server.getTickOverruns());
+		TickWatchdog watchdog = server.getTickWatchdog();
+		header(sb, "mcbmini_degradation_level", "gauge", "How many steps of its policy the tick watchdog has taken, 0 is normal operation");
+		sample(sb, "mcbmini_degradation_level", watchdog.getLevel());
+		header(sb, "mcbmini_effective_update_rate_hz", "gauge", "Update rate after the tick watchdog lowered it");
+		sample(sb, "mcbmini_effective_update_rate_hz", watchdog.getUpdateRate());
+		header(sb, "mcbmini_boards_skipped", "gauge", "Idle boards that the last tick didn't poll");
+		sample(sb, "mcbmini_boards_skipped", server.getBoardsSkippedLastTick());
+		header(sb, "mcbmini_host_controller_stage_seconds", "gauge", "Duration of the host controller stage of the last tick");
+		sample(sb, "mcbmini_host_controller_stage_seconds", server.getHostControllerStageNanos() / 1.0E9);
+
+		header(sb, "mcbmini_responses_per_second", "gauge", "Decoded responses per second over the last 10 s by command");
+		sb.append("mcbmini_responses_per_second{command=\"ALL\"} ").append(server.getResponseMeter().getRate(Window.TEN_SECONDS)).append('\n');
+		for (Command command : Command.values()) {
+			float rate = server.getCommandMeter(command).getRate(Window.TEN_SECONDS);
+			if( rate > 0 ) sb.append("mcbmini_responses_per_second{command=\"").append(command.name()).append("\"} ").append(rate).append('\n');
+		}
+		header(sb, "mcbmini_pending_responses", "gauge", "Responses waiting for update() to pass them to their handlers");
+		sample(sb, "mcbmini_pending_responses", server.getPendingResponses());
+
+		MCBMiniSerialManager port = server.getSerialManager();
+		header(sb, "mcbmini_bus_bytes_total", "counter", "Bytes on the bus");
+		sb.append("mcbmini_bus_bytes_total{direction=\"tx\"} ").append(port.getBytesSent()).append('\n');
+		sb.append("mcbmini_bus_bytes_total{direction=\"rx\"} ").append(port.getBytesReceived()).append('\n');
+		header(sb, "mcbmini_bus_bytes_per_second", "gauge", "Bytes per second on the bus over the last 10 s");
+		sb.append("mcbmini_bus_bytes_per_second{direction=\"tx\"} ").append(port.getTxMeter().getRate(Window.TEN_SECONDS)).append('\n');
+		sb.append("mcbmini_bus_bytes_per_second{direction=\"rx\"} ").append(port.getRxMeter().getRate(Window.TEN_SECONDS)).append('\n');
+		BusAccounting accounting = port.getBusAccounting();
+		header(sb, "mcbmini_bus_wire_bytes_total", "counter", "Bus bytes by direction and what they were spent on");
+		for (Category category : Category.values()) {
+			String name = category.name().toLowerCase(Locale.ROOT);
+			sb.append("mcbmini_bus_wire_bytes_total{direction=\"tx\",category=\"").append(name).append("\"} ").append(accounting.getTxBytes(category)).append('\n');
+			sb.append("mcbmini_bus_wire_bytes_total{direction=\"rx\",category=\"").append(name).append("\"} ").append(accounting.getRxBytes(category)).append('\n');
+		}
+		header(sb, "mcbmini_bus_command_bytes_total", "counter", "Bus bytes by command, including escapes, header, checksum and padding");
+		for (Command command : Command.values()) {
+			long tx = accounting.getTxBytes(command), rx = accounting.getRxBytes(command);
+			if( tx > 0 ) sb.append("mcbmini_bus_command_bytes_total{direction=\"tx\",command=\"").append(command.name()).append("\"} ").append(tx).append('\n');
+			if( rx > 0 ) sb.append("mcbmini_bus_command_bytes_total{direction=\"rx\",command=\"").append(command.name()).append("\"} ").append(rx).append('\n');
+		}
+		header(sb, "mcbmini_bus_utilization_ratio", "gauge", "Fraction of the bus capacity used, TX and RX share the half duplex bus");
+		for (Window window : Window.values()) {
+			sb.append("mcbmini_bus_utilization_ratio{window=\"").append(window.seconds).append("s\"} ").append(accounting.getUtilization(window)).append('\n');
+		}
+		header(sb, "mcbmini_bus_max_update_rate_hz", "gauge", "Update rate at which the average tick of the last 10 s would fill the bus");
+		sample(sb, "mcbmini_bus_max_update_rate_hz", accounting.getMaxUpdateRate(Window.TEN_SECONDS));
+		header(sb, "mcbmini_bad_checksums_total", "counter", "Received packets with a bad checksum");
+		sample(sb, "mcbmini_bad_checksums_total", port.getNumberOfBadChecksums());
+		header(sb, "mcbmini_log_records_dropped_total", "counter", "Async log records dropped because the ring was full");
+		sample(sb, "mcbmini_log_records_dropped_total", AsyncLog.getDroppedCount());
+
+		List<MCBMiniBoard> boards = server.getBoards();
+		long now_ms = System.currentTimeMillis();
+		header(sb, "mcbmini_board_errors_total", "counter", "Errors reported by or detected for a board");
+		for (MCBMiniBoard board : boards) {
+			for (Error error : Error.values()) {
+				if( error.channel_specific ){
+					for (Channel channel : Channel.values()) {
+						boardError(sb, board, channel, error, board.getErrorCount(error, channel));
+					}
+				}
+				else{
+					boardError(sb, board, null, error, board.getErrorCount(error));
+				}
+			}
+		}
+		header(sb, "mcbmini_board_round_trip_seconds", "gauge", "Smoothed time from a target frame going out to its response being decoded");
+		for (MCBMiniBoard board : boards) {
+			sb.append("mcbmini_board_round_trip_seconds{board=\"").append(board.getId()).append("\"} ").append(board.getRoundTripNanos() / 1.0E9).append('\n');
+		}
+		header(sb, "mcbmini_board_round_trip_p99_seconds", "gauge", "99th percentile of the round trip over the last 10 s");
+		for (MCBMiniBoard board : boards) {
+			sb.append("mcbmini_board_round_trip_p99_seconds{board=\"").append(board.getId()).append("\"} ").append(board.getResponseMeter().getSnapshot(Window.TEN_SECONDS).p99 / 1.0E9).append('\n');
+		}
+		header(sb, "mcbmini_board_responses_per_second", "gauge", "Responses per second from a board over the last 10 s");
+		for (MCBMiniBoard board : boards) {
+			sb.append("mcbmini_board_responses_per_second{board=\"").append(board.getId()).append("\"} ").append(board.getResponseMeter().getRate(Window.TEN_SECONDS)).append('\n');
+		}
+		header(sb, "mcbmini_board_last_seen_seconds", "gauge", "Time since the last response from a board, -1 if it never responded");
+		for (MCBMiniBoard board : boards) {
+			long last = board.getLastResponseMillis();
+			sb.append("mcbmini_board_last_seen_seconds{board=\"").append(board.getId()).append("\"} ").append(last == 0 ? -1 : (now_ms - last) / 1000.0).append('\n');
+		}
+		header(sb, "mcbmini_board_suspect", "gauge", "1 while a board misses its feedback responses and gets polled with a backoff");
+		for (MCBMiniBoard board : boards) {
+			sb.append("mcbmini_board_suspect{board=\"").append(board.getId()).append("\"} ").append(board.isSuspect() ? 1 : 0).append('\n');
+		}
+		FrameCorrelator correlator = server.getSerialManager().getFrameCorrelator();
+		header(sb, "mcbmini_board_responses_lost_total", "counter", "Expected responses from a board that never came back");
+		for (MCBMiniBoard board : boards) {
+			sb.append("mcbmini_board_responses_lost_total{board=\"").append(board.getId()).append("\"} ").append(correlator.getLost(board.getId())).append('\n');
+		}
+		header(sb, "mcbmini_board_responses_unexpected_total", "counter", "Responses from a board that no packet asked for");
+		for (MCBMiniBoard board : boards) {
+			sb.append("mcbmini_board_responses_unexpected_total{board=\"").append(board.getId()).append("\"} ").append(correlator.getUnexpected(board.getId())).append('\n');
+		}
+		header(sb, "mcbmini_board_missed_responses", "gauge", "Feedback responses a board missed in a row");
+		for (MCBMiniBoard board : boards) {
+			sb.append("mcbmini_board_missed_responses{board=\"").append(board.getId()).append("\"} ").append(board.getMissedResponses()).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static void header(StringBuilder sb, String name, String type, String help){
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String name, double value){
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void sample(StringBuilder sb, String name, long value){
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static void quantile(StringBuilder sb, String name, String quantile, long value_ns){
+		sb.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(value_ns / 1.0E9).append('\n');
+	}
+
+	private static void boardError(StringBuilder sb, MCBMiniBoard board, Channel channel, Error error, int count){
+		sb.append("mcbmini_board_errors_total{board=\"").append(board.getId());
+		if( channel != null ) sb.append("\",channel=\"").append(channel.name());
+		sb.append("\",error=\"").append(error.name()).append("\"} ").append(count).append('\n');
+	}
+
+	/*
+	 * Telemetry streaming
+	 */
+
+	private void handleTelemetry(HttpExchange exchange) throws IOException{
+		TelemetrySubscription subscription = null;
+		boolean counted = false;
+		try{
+			if( !"GET".equals(exchange.getRequestMethod()) ){
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			final List<Integer> board_ids = new ArrayList<Integer>();
+			Channel only_channel = null;
+			EnumSet<ChannelParameter> fields = EnumSet.noneOf(ChannelParameter.class);
+			long interval_ms = 100;
+			try{
+				String query = exchange.getRequestURI().getRawQuery();
+				if( query != null ){
+					for (String pair : query.split("&")) {
+						int eq = pair.indexOf('=');
+						if( eq < 0 ) continue;
+						String key = URLDecoder.decode(pair.substring(0, eq), "UTF-8");
+						String value = URLDecoder.decode(pair.substring(eq+1), "UTF-8");
+						if( key.equals("board") ) board_ids.add(Integer.valueOf(value));
+						else if( key.equals("channel") ) only_channel = Channel.valueOf(value.toUpperCase(Locale.ROOT));
+						else if( key.equals("field") ) fields.add(ChannelParameter.valueOf(value.toUpperCase(Locale.ROOT)));
+						else if( key.equals("interval_ms") ) interval_ms = Math.max(10, Long.parseLong(value));
+					}
+				}
+			}
+			catch(IllegalArgumentException e){
+				sendText(exchange, 400, "Bad telemetry query: "+e.getMessage()+"\n");
+				return;
+			}
+			if( fields.isEmpty() ) fields.add(ChannelParameter.ACTUAL_TICK);
+
+			if( open_streams.incrementAndGet() > MAX_TELEMETRY_STREAMS ){
+				open_streams.decrementAndGet();
+				sendText(exchange, 503, "Too many telemetry streams open\n");
+				return;
+			}
+			counted = true;
+
+			final Channel channel_filter = only_channel;
+			TelemetryDecimator decimator = new TelemetryDecimator(interval_ms, null);
+			subscription = server.subscribe(new ChannelSelector() {
+				@Override
+				public boolean select(MCBMiniBoard board, Channel channel) {
+					return (board_ids.isEmpty() || board_ids.contains(board.getId())) && (channel_filter == null || channel_filter == channel);
+				}
+			}, fields, decimator);
+
+			exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream out = exchange.getResponseBody();
+
+			DecimatedBatch batch = new DecimatedBatch(64);
+			StringBuilder sb = new StringBuilder(1024);
+			long last_interval_ns = Long.MIN_VALUE;
+			while( !stopped && !Thread.currentThread().isInterrupted() ){
+				Thread.sleep(Math.max(5, interval_ms / 2));
+				decimator.copyLatest(batch);
+				if( batch.size() == 0 || batch.getIntervalStartNanos() == last_interval_ns ) continue;
+				last_interval_ns = batch.getIntervalStartNanos();
+
+				long end_ms = System.currentTimeMillis() - (System.nanoTime() - batch.getIntervalEndNanos()) / 1000000L;
+				sb.setLength(0);
+				for(int i=0; i<batch.size(); i++){
+					sb.append("{\"t\":").append(end_ms)
+						.append(",\"board\":").append(batch.getBoardId(i))
+						.append(",\"channel\":\"").append(batch.getChannel(i).name())
+						.append("\",\"field\":\"").append(batch.getField(i).name())
+						.append("\",\"min\":").append(batch.getMin(i))
+						.append(",\"max\":").append(batch.getMax(i))
+						.append(",\"mean\":").append(batch.getMean(i))
+						.append(",\"last\":").append(batch.getLast(i))
+						.append(",\"count\":").append(batch.getCount(i))
+						.append("}\n");
+				}
+				out.write(sb.toString().getBytes(UTF8));
+				out.flush();
+			}
+		}
+		catch(IOException e){
+			// The client went away
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		finally{
+			if( subscription != null ) server.unsubscribe(subscription);
+			if( counted ) open_streams.decrementAndGet();
+			exchange.close();
+		}
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException{
+		byte[] bytes = text.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+}
@@ -0,0 +1,124 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniServer;
+import mcbmini.utils.Log;
+
+/**
+ * Registers MXBeans for a server, its port and each of its boards and channels with the platform MBean server:
+ *
+ * mcbmini:type=Server,port=...
+ * mcbmini:type=Port,port=...
+ * mcbmini:type=Board,port=...,id=...
+ * mcbmini:type=Channel,port=...,board=...,channel=...
+ *
+ * Every attribute reads volatile fields, atomic counters or the snapshots that the RateMeter thread publishes,
+ * nothing takes a lock that the update thread uses, so JConsole or an exporter can poll them as often as they like.
+ * The server doesn't reference this package so that it still runs where java.lang.management doesn't exist (Android).
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class MCBMiniManagement {
+
+	public static final String DOMAIN = "mcbmini";
+
+	private final MBeanServer mbean_server;
+	private final List<ObjectName> names = new ArrayList<ObjectName>();
+
+	private MCBMiniManagement(MBeanServer mbean_server){
+		this.mbean_server = mbean_server;
+	}
+
+	/**
+	 * Registers the beans of a server with the platform MBean server
+	 * @return a handle to unregister them with
+	 * @throws JMException if the beans can't be registered (e.g. a server on the same port is already registered)
+	 */
+	public static MCBMiniManagement register(MCBMiniServer server) throws JMException{
+		MCBMiniManagement management = new MCBMiniManagement(ManagementFactory.getPlatformMBeanServer());
+		String port = sanitize(server.getSerialManager().getPortName());
+		try{
+			management.add(new ServerStats(server), "type=Server,port="+port);
+			management.add(new PortStats(server.getSerialManager()), "type=Port,port="+port);
+			for (MCBMiniBoard board : server.getBoards()) {
+				management.add(new BoardStats(board, server.getSerialManager().getFrameCorrelator()), "type=Board,port="+port+",id="+board.getId());
+				for (Channel channel : Channel.values()) {
+					management.add(new ChannelStats(board, channel), "type=Channel,port="+port+",board="+board.getId()+",channel="+channel.name());
+				}
+			}
+		}
+		catch(JMException e){
+			management.unregister();
+			throw e;
+		}
+		return management;
+	}
+
+	private void add(Object bean, String properties) throws JMException{
+		ObjectName name = new ObjectName(DOMAIN+":"+properties);
+		mbean_server.registerMBean(bean, name);
+		names.add(name);
+	}
+
+	/**
+	 * Removes all the beans that were registered
+	 */
+	public synchronized void unregister(){
+		for (ObjectName name : names) {
+			try{
+				mbean_server.unregisterMBean(name);
+			}
+			catch(JMException e){
+				Log.println("Couldn't unregister "+name+": "+e, true);
+			}
+		}
+		names.clear();
+	}
+
+	public List<ObjectName> getObjectNames(){
+		return new ArrayList<ObjectName>(names);
+	}
+
+	/**
+	 * Port names like COM3 or /dev/ttyUSB0 are fine in an ObjectName but some characters aren't allowed unquoted
+	 */
+	private static String sanitize(String value){
+		return value.replaceAll("[,=:\"*?\\n]", "_");
+	}
+}
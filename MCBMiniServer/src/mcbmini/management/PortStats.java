@@ -0,0 +1,94 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mcbmini.BusAccounting;
+import mcbmini.BusAccounting.Category;
+import mcbmini.MCBMiniSerialManager;
+import mcbmini.utils.RateMeter.Window;
+
+/**
+ * @author agent
+ * @date Oct 19, 2026
+ */
+class PortStats implements PortMXBean {
+
+	private final MCBMiniSerialManager port;
+
+	PortStats(MCBMiniSerialManager port){
+		this.port = port;
+	}
+
+	@Override
+	public String getPortName() { return port.getPortName(); }
+	@Override
+	public long getBytesSent() { return port.getBytesSent(); }
+	@Override
+	public long getBytesReceived() { return port.getBytesReceived(); }
+	@Override
+	public long getEscapeBytesReceived() { return port.getEscapeBytesReceived(); }
+	@Override
+	public long getPacketsReceived() { return port.getPacketsReceived(); }
+	@Override
+	public int getBadChecksums() { return port.getNumberOfBadChecksums(); }
+	@Override
+	public float getTxBytesPerSecond() { return port.getTxMeter().getRate(Window.TEN_SECONDS); }
+	@Override
+	public float getRxBytesPerSecond() { return port.getRxMeter().getRate(Window.TEN_SECONDS); }
+
+	@Override
+	public int getBaudRate() { return port.getBusAccounting().getBaudRate(); }
+	@Override
+	public float getBusUtilization() { return port.getBusAccounting().getUtilization(Window.TEN_SECONDS); }
+	@Override
+	public float getBusHeadroom() { return port.getBusAccounting().getHeadroom(Window.TEN_SECONDS); }
+	@Override
+	public float getLastTickBusUtilization() { return port.getBusAccounting().getLastTickUtilization(); }
+	@Override
+	public float getTxPayloadEfficiency() { return port.getBusAccounting().getTxEfficiency(); }
+	@Override
+	public float getMaxUpdateRate() { return port.getBusAccounting().getMaxUpdateRate(Window.TEN_SECONDS); }
+
+	@Override
+	public Map<String, Long> getTxBytesByCategory() {
+		BusAccounting accounting = port.getBusAccounting();
+		Map<String, Long> bytes = new LinkedHashMap<String, Long>();
+		for (Category category : Category.values()) bytes.put(category.name(), accounting.getTxBytes(category));
+		return bytes;
+	}
+
+	@Override
+	public Map<String, Long> getRxBytesByCategory() {
+		BusAccounting accounting = port.getBusAccounting();
+		Map<String, Long> bytes = new LinkedHashMap<String, Long>();
+		for (Category category : Category.values()) bytes.put(category.name(), accounting.getRxBytes(category));
+		return bytes;
+	}
+}
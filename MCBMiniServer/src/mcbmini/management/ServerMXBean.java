@@ -0,0 +1,61 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+/**
+ * Health of an MCBMiniServer and its update thread. Rates and percentiles are over the last 10 seconds
+ * unless the name says otherwise.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public interface ServerMXBean {
+
+	public float getNominalUpdateRate();
+	public float getTickRate();
+	public long getTickSequence();
+	public long getTickPeriodP50Micros();
+	public long getTickPeriodP99Micros();
+	public long getTickPeriodMaxMicros();
+	public long getLastTickDurationMicros();
+	public long getTickOverruns();
+	public float getEffectiveUpdateRate();
+	public int getDegradationLevel();
+	public int getBoardsSkippedLastTick();
+	public long getHostControllerStageMicros();
+
+	public int getRequestsForwardedLastTick();
+	public int getPendingResponses();
+	public float getResponseRate();
+
+	public float getTxBytesPerSecond();
+	public float getRxBytesPerSecond();
+	public int getBadChecksums();
+	public long getDroppedLogRecords();
+
+	public int getNumberOfBoards();
+}
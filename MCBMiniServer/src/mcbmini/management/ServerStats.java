@@ -0,0 +1,93 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.management;
+
+import mcbmini.MCBMiniServer;
+import mcbmini.utils.AsyncLog;
+import mcbmini.utils.RateMeter.Snapshot;
+import mcbmini.utils.RateMeter.Window;
+
+/**
+ * @author agent
+ * @date Oct 19, 2026
+ */
+class ServerStats implements ServerMXBean {
+
+	private final MCBMiniServer server;
+
+	ServerStats(MCBMiniServer server){
+		this.server = server;
+	}
+
+	private Snapshot tickPeriods(){
+		return server.getTickMeter().getSnapshot(Window.TEN_SECONDS);
+	}
+
+	@Override
+	public float getNominalUpdateRate() { return server.getUpdateRate(); }
+	@Override
+	public float getTickRate() { return tickPeriods().rate; }
+	@Override
+	public long getTickSequence() { return server.getTickSequence(); }
+	@Override
+	public long getTickPeriodP50Micros() { return tickPeriods().p50 / 1000; }
+	@Override
+	public long getTickPeriodP99Micros() { return tickPeriods().p99 / 1000; }
+	@Override
+	public long getTickPeriodMaxMicros() { return tickPeriods().max / 1000; }
+	@Override
+	public long getLastTickDurationMicros() { return server.getLastTickDurationNanos() / 1000; }
+	@Override
+	public long getTickOverruns() { return server.getTickOverruns(); }
+	@Override
+	public float getEffectiveUpdateRate() { return server.getEffectiveUpdateRate(); }
+	@Override
+	public int getDegradationLevel() { return server.getTickWatchdog().getLevel(); }
+	@Override
+	public int getBoardsSkippedLastTick() { return server.getBoardsSkippedLastTick(); }
+	@Override
+	public long getHostControllerStageMicros() { return server.getHostControllerStageNanos() / 1000; }
+
+	@Override
+	public int getRequestsForwardedLastTick() { return server.getRequestsForwardedLastTick(); }
+	@Override
+	public int getPendingResponses() { return server.getPendingResponses(); }
+	@Override
+	public float getResponseRate() { return server.getResponseMeter().getRate(Window.TEN_SECONDS); }
+
+	@Override
+	public float getTxBytesPerSecond() { return server.getSerialManager().getTxMeter().getRate(Window.TEN_SECONDS); }
+	@Override
+	public float getRxBytesPerSecond() { return server.getSerialManager().getRxMeter().getRate(Window.TEN_SECONDS); }
+	@Override
+	public int getBadChecksums() { return server.getNumberOfBadChecksums(); }
+	@Override
+	public long getDroppedLogRecords() { return AsyncLog.getDroppedCount(); }
+
+	@Override
+	public int getNumberOfBoards() { return server.getBoards().size(); }
+}
@@ -45,7 +45,7 @@ import mcbmini.utils.Log;
 
 
 
-public class PSerial implements SerialPortEventListener, iSerial {
+public class PSerial implements SerialPortEventListener, TimestampedSerial {
 
 	static{
 		MCBMiniNativeLoader.loadNativeLibrary();
@@ -74,8 +74,11 @@ public class PSerial implements SerialPortEventListener, iSerial {
 	private ArrayList<SerialEventHandler> event_handlers;
 
 	byte buffer[] = new byte[32768];
+	// When each byte in buffer came in
+	long arrival_ns[] = new long[32768];
 	int bufferIndex;
 	int bufferLast;
+	long last_read_ns;
 
 	//boolean bufferUntil = false;
 	int bufferSize = 1;  // how big before reset or event firing
@@ -272,8 +275,13 @@ public class PSerial implements SerialPortEventListener, iSerial {
 							byte temp[] = new byte[bufferLast << 1];
 							System.arraycopy(buffer, 0, temp, 0, bufferLast);
 							buffer = temp;
+							long temp_ns[] = new long[bufferLast << 1];
+							System.arraycopy(arrival_ns, 0, temp_ns, 0, bufferLast);
+							arrival_ns = temp_ns;
 						}
-						buffer[bufferLast++] = (byte) input.read();
+						byte in = (byte) input.read();
+						arrival_ns[bufferLast] = System.nanoTime();
+						buffer[bufferLast++] = in;
 						//						if (serialEventMethod != null) {
 						//							if ((bufferUntil &&
 						//									(buffer[bufferLast-1] == bufferUntilByte)) ||
@@ -355,6 +363,7 @@ public class PSerial implements SerialPortEventListener, iSerial {
 		if (bufferIndex == bufferLast) return -1;
 
 		synchronized (buffer) {
+			last_read_ns = arrival_ns[bufferIndex];
 			byte outgoing = buffer[bufferIndex++];
 			if (bufferIndex == bufferLast) {  // rewind
 				bufferIndex = 0;
@@ -364,6 +373,10 @@ public class PSerial implements SerialPortEventListener, iSerial {
 		}
 	}
 
+	public long getLastReadNanos() {
+		return last_read_ns;
+	}
+
 	/**
 	 * Returns the byte that is at position pos in buffer (pos 0 is the freshest byte)
 	 * this method doesn't change the buffer in any way, only looks at a byte
@@ -0,0 +1,227 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.serial;
+
+import mcbmini.MCBMiniConstants.Command;
+
+/**
+ * An in-memory bus with boards on it that answer like real ones, for running the server without hardware.
+ *
+ * Every packet written is decoded on the spot, target frames get their feedback response (the actual values follow
+ * the targets exactly) and request-for-response packets get their value (FIRMWARE_VERSION reports the version given to
+ * the constructor, everything else reports 0). The responses are queued up for reading and count as arrived when the
+ * packet that asked for them was written. Nothing is allocated after
+ * construction so the bus doesn't show up when measuring the allocations of the server.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class SimulatedBus implements TimestampedSerial {
+
+	private static final byte HEADER_BYTE = (byte)0xAA;
+	private static final byte ESCAPE_BYTE = (byte)0x55;
+
+	private static final int RX_CAPACITY = 1 << 16;
+	private static final int RX_MASK = RX_CAPACITY - 1;
+
+	private final int firmware_version;
+
+	// The packet being decoded from what the server writes
+	private final byte[] frame = new byte[64];
+	private int frame_length;
+	private boolean escape_next;
+
+	// The last targets sent to each board and channel, the boards report them back as their actual values
+	private final int[][] targets = new int[128][2];
+	private final boolean[] silent = new boolean[128];
+
+	// What the boards have said and the server hasn't read yet
+	private final byte[] rx = new byte[RX_CAPACITY];
+	private final long[] rx_ns = new long[RX_CAPACITY];
+	private long write_ns;
+	private long last_read_ns;
+	private int rx_head;
+	private int rx_tail;
+
+	private long packets_written;
+	private long packets_answered;
+
+	public SimulatedBus(int firmware_version){
+		this.firmware_version = firmware_version;
+	}
+
+	/**
+	 * @param silent whether the board with this id stops answering, as if it was unplugged
+	 */
+	public synchronized void setSilent(int board_id, boolean silent){
+		this.silent[board_id & 0x7f] = silent;
+	}
+
+	public synchronized long getPacketsWritten(){
+		return packets_written;
+	}
+
+	public synchronized long getPacketsAnswered(){
+		return packets_answered;
+	}
+
+	@Override
+	public void addSerialEventHandler(SerialEventHandler handler) {
+	}
+
+	@Override
+	public synchronized void write(byte[] bytes, int offset, int length) {
+		write_ns = System.nanoTime();
+		for(int i=offset; i<offset+length; i++){
+			byte in = bytes[i];
+			if( in == HEADER_BYTE ){
+				handleFrame();
+				frame_length = 0;
+				escape_next = false;
+				continue;
+			}
+			if( in == ESCAPE_BYTE ){
+				escape_next = true;
+				continue;
+			}
+			if( escape_next ){
+				in ^= 1;
+				escape_next = false;
+			}
+			// Leading padding zeros can push long frames over, only the tail matters
+			if( frame_length == frame.length ){
+				System.arraycopy(frame, 1, frame, 0, frame.length-1);
+				frame_length--;
+			}
+			frame[frame_length++] = in;
+		}
+	}
+
+	@Override
+	public synchronized int available() {
+		return rx_head - rx_tail;
+	}
+
+	@Override
+	public synchronized byte readByte() {
+		if( rx_tail == rx_head ) return -1;
+		last_read_ns = rx_ns[rx_tail & RX_MASK];
+		return rx[(rx_tail++) & RX_MASK];
+	}
+
+	@Override
+	public synchronized long getLastReadNanos() {
+		return last_read_ns;
+	}
+
+	@Override
+	public boolean isInitialized() {
+		return true;
+	}
+
+	/*
+	 * The boards
+	 */
+
+	// A frame is [data][command][id][checksum], the data ints are little endian and channel B comes first
+	private void handleFrame(){
+		if( frame_length < 3 ) return;
+		packets_written++;
+
+		int id_byte = frame[frame_length-2] & 0xff;
+		int cmd_byte = frame[frame_length-3] & 0xff;
+		int id = id_byte & 0x7f;
+		int ch = (id_byte >> 7) & 0x01;
+		boolean request = (cmd_byte & 0x80) != 0;
+		Command command = Command.getForCmdId(cmd_byte & 0x7f);
+		if( command == null || silent[id] ) return;
+
+		if( isTargetCommand(command) ){
+			int data = frame_length - 3;
+			if( data < 8 ) return;
+			int target_b = intAt(data-8);
+			int target_a = intAt(data-4);
+			if( target_a != Integer.MAX_VALUE ) targets[id][0] = target_a;
+			if( target_b != Integer.MAX_VALUE ) targets[id][1] = target_b;
+
+			if( command.datasize.number_of_bytes == 8 ) respond(command, id_byte, targets[id][1], targets[id][0], 8);
+			else respond(command, id_byte, targets[id][ch], 0, 4);
+		}
+		else if( request && command.datasize != null ){
+			int value = command == Command.FIRMWARE_VERSION ? firmware_version : 0;
+			respond(command, id_byte, value, 0, command.datasize.number_of_bytes);
+		}
+	}
+
+	private static boolean isTargetCommand(Command command){
+		switch( command ){
+		case TWO_TARGET_TICK_ACTUAL: case TWO_TARGET_TICK_VELOCITY: case TWO_TARGET_TICK_MOTOR_CURRENT:
+		case TWO_TARGET_TICK_POT: case TWO_TARGET_TICK_ENCODER: case TWO_TARGET_TICK_TWO_ACTUAL:
+		case TWO_TARGET_TICK_TWO_VELOCITY: case TWO_TARGET_TICK_TWO_MOTOR_CURRENT: case TWO_TARGET_TICK_TWO_POT:
+		case TWO_TARGET_TICK_TWO_ENCODER:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private int intAt(int offset){
+		return (frame[offset] & 0xff) | (frame[offset+1] & 0xff) << 8 | (frame[offset+2] & 0xff) << 16 | (frame[offset+3] & 0xff) << 24;
+	}
+
+	/**
+	 * @param first the value closest to the front of the frame (channel B for two value responses)
+	 */
+	private void respond(Command command, int id_byte, int first, int second, int data_bytes){
+		packets_answered++;
+		byte checksum = 0;
+		for(int i=0; i<data_bytes; i++){
+			byte b = (byte)((i < 4 ? first : second) >> (8 * (i % 4)));
+			checksum += b;
+			put(b);
+		}
+		checksum += command.command;
+		put(command.command);
+		checksum += (byte)id_byte;
+		put((byte)id_byte);
+		put(checksum);
+		putRaw(HEADER_BYTE);
+	}
+
+	private void put(byte b){
+		if( b == HEADER_BYTE || b == ESCAPE_BYTE ){
+			putRaw(ESCAPE_BYTE);
+			b ^= 1;
+		}
+		putRaw(b);
+	}
+
+	private void putRaw(byte b){
+		rx_ns[rx_head & RX_MASK] = write_ns;
+		rx[(rx_head++) & RX_MASK] = b;
+	}
+}
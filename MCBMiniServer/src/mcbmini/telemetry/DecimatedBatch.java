@@ -0,0 +1,146 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.ChannelParameter;
+
+/**
+ * The min/max/mean/last buckets of one decimation interval, one bucket per channel field, in parallel primitive arrays.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class DecimatedBatch {
+
+	private static final Channel[] CHANNELS = Channel.values();
+	private static final ChannelParameter[] PARAMETERS = ChannelParameter.values();
+
+	private long interval_start_ns;
+	private long interval_end_ns;
+
+	private int size;
+	private int[] board_ids;
+	private byte[] channels;
+	private byte[] fields;
+	private int[] mins;
+	private int[] maxs;
+	private long[] sums;
+	private int[] counts;
+	private int[] lasts;
+
+	public DecimatedBatch(int initial_capacity){
+		allocate(Math.max(1, initial_capacity));
+	}
+
+	private void allocate(int capacity){
+		board_ids = new int[capacity];
+		channels = new byte[capacity];
+		fields = new byte[capacity];
+		mins = new int[capacity];
+		maxs = new int[capacity];
+		sums = new long[capacity];
+		counts = new int[capacity];
+		lasts = new int[capacity];
+	}
+
+	public void add(int board_id, int channel_index, int field, int min, int max, long sum, int count, int last){
+		if( size == board_ids.length ) grow(size * 2);
+		board_ids[size] = board_id;
+		channels[size] = (byte)channel_index;
+		fields[size] = (byte)field;
+		mins[size] = min;
+		maxs[size] = max;
+		sums[size] = sum;
+		counts[size] = count;
+		lasts[size] = last;
+		size++;
+	}
+
+	private void grow(int capacity){
+		int[] old_board_ids = board_ids;
+		byte[] old_channels = channels;
+		byte[] old_fields = fields;
+		int[] old_mins = mins;
+		int[] old_maxs = maxs;
+		long[] old_sums = sums;
+		int[] old_counts = counts;
+		int[] old_lasts = lasts;
+		allocate(capacity);
+		System.arraycopy(old_board_ids, 0, board_ids, 0, size);
+		System.arraycopy(old_channels, 0, channels, 0, size);
+		System.arraycopy(old_fields, 0, fields, 0, size);
+		System.arraycopy(old_mins, 0, mins, 0, size);
+		System.arraycopy(old_maxs, 0, maxs, 0, size);
+		System.arraycopy(old_sums, 0, sums, 0, size);
+		System.arraycopy(old_counts, 0, counts, 0, size);
+		System.arraycopy(old_lasts, 0, lasts, 0, size);
+	}
+
+	/**
+	 * Copies the contents of another batch into this one, growing only if needed
+	 */
+	public void copyFrom(DecimatedBatch other){
+		if( board_ids.length < other.size ) allocate(other.size);
+		size = other.size;
+		interval_start_ns = other.interval_start_ns;
+		interval_end_ns = other.interval_end_ns;
+		System.arraycopy(other.board_ids, 0, board_ids, 0, size);
+		System.arraycopy(other.channels, 0, channels, 0, size);
+		System.arraycopy(other.fields, 0, fields, 0, size);
+		System.arraycopy(other.mins, 0, mins, 0, size);
+		System.arraycopy(other.maxs, 0, maxs, 0, size);
+		System.arraycopy(other.sums, 0, sums, 0, size);
+		System.arraycopy(other.counts, 0, counts, 0, size);
+		System.arraycopy(other.lasts, 0, lasts, 0, size);
+	}
+
+	public void clear(){
+		size = 0;
+	}
+
+	public void setInterval(long start_ns, long end_ns){
+		interval_start_ns = start_ns;
+		interval_end_ns = end_ns;
+	}
+
+	public long getIntervalStartNanos(){ return interval_start_ns; }
+	public long getIntervalEndNanos(){ return interval_end_ns; }
+
+	public int size(){ return size; }
+
+	public int getBoardId(int i){ return board_ids[i]; }
+	public Channel getChannel(int i){ return CHANNELS[channels[i]]; }
+	public int getChannelIndex(int i){ return channels[i]; }
+	public ChannelParameter getField(int i){ return PARAMETERS[fields[i]]; }
+	public int getMin(int i){ return mins[i]; }
+	public int getMax(int i){ return maxs[i]; }
+	public long getSum(int i){ return sums[i]; }
+	public int getCount(int i){ return counts[i]; }
+	public int getLast(int i){ return lasts[i]; }
+	public double getMean(int i){ return counts[i]==0 ? 0 : (double)sums[i] / counts[i]; }
+}
@@ -0,0 +1,166 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size history of (timestamp, value) samples kept in primitive arrays.
+ * There must only be one writer (the server update thread), any number of threads can read.
+ * Readers copy out of the buffer and then discard whatever the writer overwrote while they were copying,
+ * so neither side ever takes a lock or allocates. The slots are written with release and read with acquire semantics,
+ * so a reader that sees a slot from a later lap is guaranteed to also see the write count that marks it as lapped.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class SampleRingBuffer {
+
+	private final AtomicLongArray timestamps_ns;
+	private final AtomicIntegerArray values;
+	private final int capacity;
+	private final int mask;
+
+	// Total number of samples ever appended, the volatile write publishes the slot contents to readers
+	private volatile long write_count;
+
+	/**
+	 * @param capacity is rounded up to the next power of two
+	 */
+	public SampleRingBuffer(int capacity){
+		if( capacity <= 0 ) throw new IllegalArgumentException("Capacity must be > 0");
+		int size = Integer.highestOneBit(capacity);
+		if( size < capacity ) size <<= 1;
+		timestamps_ns = new AtomicLongArray(size);
+		values = new AtomicIntegerArray(size);
+		this.capacity = size;
+		mask = size-1;
+	}
+
+	public int capacity(){
+		return capacity;
+	}
+
+	/**
+	 * Only to be called from the single writer thread
+	 */
+	public void append(long timestamp_ns, int value){
+		long count = write_count;
+		int index = (int)(count & mask);
+		timestamps_ns.lazySet(index, timestamp_ns);
+		values.lazySet(index, value);
+		write_count = count+1;
+	}
+
+	/**
+	 * @return the number of samples currently held
+	 */
+	public int size(){
+		return (int)Math.min(write_count, capacity);
+	}
+
+	public long getTotalAppended(){
+		return write_count;
+	}
+
+	/**
+	 * Copies the last n samples, oldest first
+	 * @param n
+	 * @param timestamps_out can be null if only the values are of interest
+	 * @param values_out
+	 * @return the number of samples copied (can be less than n if the history isn't that long yet or the arrays are shorter)
+	 */
+	public int getLast(int n, long[] timestamps_out, int[] values_out){
+		n = Math.min(n, values_out.length);
+		if( timestamps_out != null ) n = Math.min(n, timestamps_out.length);
+
+		long end = write_count;
+		long start = Math.max(0, Math.max(end - n, end - capacity));
+		return copy(start, end, timestamps_out, values_out);
+	}
+
+	/**
+	 * Copies all samples with a timestamp at or after since_ns, oldest first
+	 * @param since_ns in System.nanoTime() time
+	 * @param timestamps_out can be null if only the values are of interest
+	 * @param values_out
+	 * @return the number of samples copied, if the arrays are too short then the newest samples are the ones copied
+	 */
+	public int getSince(long since_ns, long[] timestamps_out, int[] values_out){
+		int max = values_out.length;
+		if( timestamps_out != null ) max = Math.min(max, timestamps_out.length);
+
+		long end = write_count;
+		long low = Math.max(0, end - capacity);
+		long high = end;
+
+		// Binary search for the first sample that is new enough, timestamps are appended in order
+		while( low < high ){
+			long mid = (low + high) >>> 1;
+			if( timestamps_ns.get((int)(mid & mask)) - since_ns < 0 ) low = mid+1;
+			else high = mid;
+		}
+		long start = Math.max(low, end - max);
+		return copy(start, end, timestamps_out, values_out);
+	}
+
+	/**
+	 * @return the latest value or def if nothing has been appended yet
+	 */
+	public int getLatestValue(int def){
+		long count = write_count;
+		if( count == 0 ) return def;
+		return values.get((int)((count-1) & mask));
+	}
+
+	public long getLatestTimestampNanos(){
+		long count = write_count;
+		if( count == 0 ) return 0;
+		return timestamps_ns.get((int)((count-1) & mask));
+	}
+
+	private int copy(long start, long end, long[] timestamps_out, int[] values_out){
+		int n = (int)(end - start);
+		for(int i=0; i<n; i++){
+			int index = (int)((start+i) & mask);
+			if( timestamps_out != null ) timestamps_out[i] = timestamps_ns.get(index);
+			values_out[i] = values.get(index);
+		}
+
+		// Anything the writer lapped while we were copying is garbage, shift the valid tail to the front
+		// (the slot after the last published one counts as lapped as the writer might be in the middle of filling it)
+		long oldest_valid = write_count - capacity + 1;
+		if( oldest_valid > start ){
+			int skip = (int)Math.min(n, oldest_valid - start);
+			n -= skip;
+			if( timestamps_out != null ) System.arraycopy(timestamps_out, skip, timestamps_out, 0, n);
+			System.arraycopy(values_out, skip, values_out, 0, n);
+		}
+		return n;
+	}
+}
@@ -0,0 +1,126 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.ChannelParameter;
+
+/**
+ * The feedback samples that arrived during one server tick, stored in parallel primitive arrays.
+ * One of these is owned by every subscription and is reused from tick to tick.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class TelemetryBatch {
+
+	private static final Channel[] CHANNELS = Channel.values();
+	private static final ChannelParameter[] PARAMETERS = ChannelParameter.values();
+
+	private long tick_sequence;
+	private long tick_timestamp_ns;
+
+	private int size;
+	private int[] board_ids;
+	private byte[] channels;
+	private byte[] fields;
+	private int[] values;
+	private long[] timestamps_ns;
+
+	public TelemetryBatch(int initial_capacity){
+		initial_capacity = Math.max(1, initial_capacity);
+		board_ids = new int[initial_capacity];
+		channels = new byte[initial_capacity];
+		fields = new byte[initial_capacity];
+		values = new int[initial_capacity];
+		timestamps_ns = new long[initial_capacity];
+	}
+
+	public void add(int board_id, Channel channel, ChannelParameter field, int value, long timestamp_ns){
+		if( size == values.length ) grow();
+		board_ids[size] = board_id;
+		channels[size] = (byte)channel.index;
+		fields[size] = (byte)field.ordinal();
+		values[size] = value;
+		timestamps_ns[size] = timestamp_ns;
+		size++;
+	}
+
+	/**
+	 * Only happens when more samples arrive in one tick than ever before
+	 */
+	private void grow(){
+		int capacity = values.length * 2;
+		int[] new_board_ids = new int[capacity];
+		byte[] new_channels = new byte[capacity];
+		byte[] new_fields = new byte[capacity];
+		int[] new_values = new int[capacity];
+		long[] new_timestamps_ns = new long[capacity];
+		System.arraycopy(board_ids, 0, new_board_ids, 0, size);
+		System.arraycopy(channels, 0, new_channels, 0, size);
+		System.arraycopy(fields, 0, new_fields, 0, size);
+		System.arraycopy(values, 0, new_values, 0, size);
+		System.arraycopy(timestamps_ns, 0, new_timestamps_ns, 0, size);
+		board_ids = new_board_ids;
+		channels = new_channels;
+		fields = new_fields;
+		values = new_values;
+		timestamps_ns = new_timestamps_ns;
+	}
+
+	public void clear(){
+		size = 0;
+	}
+
+	public void setTick(long tick_sequence, long tick_timestamp_ns){
+		this.tick_sequence = tick_sequence;
+		this.tick_timestamp_ns = tick_timestamp_ns;
+	}
+
+	/**
+	 * @return the sequence number of the server tick that these samples were decoded in
+	 */
+	public long getTickSequence(){ return tick_sequence; }
+
+	/**
+	 * @return System.nanoTime() at the start of the tick that these samples were decoded in
+	 */
+	public long getTickTimestampNanos(){ return tick_timestamp_ns; }
+
+	public int size(){ return size; }
+
+	public int getBoardId(int i){ return board_ids[i]; }
+	public Channel getChannel(int i){ return CHANNELS[channels[i]]; }
+	public int getChannelIndex(int i){ return channels[i]; }
+	public ChannelParameter getField(int i){ return PARAMETERS[fields[i]]; }
+	public int getValue(int i){ return values[i]; }
+
+	/**
+	 * @return System.nanoTime() at the moment the sample was decoded
+	 */
+	public long getTimestampNanos(int i){ return timestamps_ns[i]; }
+}
@@ -0,0 +1,166 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import mcbmini.MCBMiniConstants.ChannelParameter;
+
+/**
+ * Reduces full rate telemetry to one min/max/mean/last bucket per channel field and interval, so that slow
+ * consumers get bounded work no matter the bus rate while spikes (current surges etc.) still show up in the min/max.
+ *
+ * Subscribe it to the server like any other TelemetryListener. Decimators can also be chained, a decimator
+ * accepts the buckets of a finer one and merges them into coarser buckets.
+ * The output is pushed to the listener (on the update thread) and also kept so that consumers living on
+ * other threads (GUI timers, HTTP handlers) can pull the last completed interval with copyLatest().
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class TelemetryDecimator implements TelemetryListener, DecimatedTelemetryListener {
+
+	private static final int NR_FIELDS = ChannelParameter.values().length;
+	private static final int MAX_BUCKETS = 128 * 2 * NR_FIELDS;
+
+	private final long interval_ns;
+	private final DecimatedTelemetryListener listener;
+
+	private final int[] mins = new int[MAX_BUCKETS];
+	private final int[] maxs = new int[MAX_BUCKETS];
+	private final long[] sums = new long[MAX_BUCKETS];
+	private final int[] counts = new int[MAX_BUCKETS];
+	private final int[] lasts = new int[MAX_BUCKETS];
+
+	// The buckets that have samples in the current interval, in order of first appearance
+	private final int[] active = new int[MAX_BUCKETS];
+	private int active_count;
+
+	private long interval_start_ns;
+	private boolean started;
+
+	private final DecimatedBatch output = new DecimatedBatch(64);
+	private final DecimatedBatch latest = new DecimatedBatch(64);
+
+	/**
+	 * @param interval_ms the length of each bucket
+	 * @param listener gets the buckets of every completed interval, can be null if the output is only pulled with copyLatest()
+	 */
+	public TelemetryDecimator(long interval_ms, DecimatedTelemetryListener listener){
+		if( interval_ms <= 0 ) throw new IllegalArgumentException("Interval must be > 0");
+		this.interval_ns = interval_ms * 1000000L;
+		this.listener = listener;
+	}
+
+	public long getIntervalMillis(){
+		return interval_ns / 1000000L;
+	}
+
+	@Override
+	public void handleTelemetryBatch(TelemetryBatch batch) {
+		advance(batch.getTickTimestampNanos());
+		for(int i=0; i<batch.size(); i++){
+			int value = batch.getValue(i);
+			accumulate(bucket(batch.getBoardId(i), batch.getChannelIndex(i), batch.getField(i).ordinal()), value, value, value, 1, value);
+		}
+	}
+
+	@Override
+	public void handleDecimatedBatch(DecimatedBatch batch) {
+		advance(batch.getIntervalStartNanos());
+		for(int i=0; i<batch.size(); i++){
+			accumulate(bucket(batch.getBoardId(i), batch.getChannelIndex(i), batch.getField(i).ordinal()),
+					batch.getMin(i), batch.getMax(i), batch.getSum(i), batch.getCount(i), batch.getLast(i));
+		}
+	}
+
+	private static int bucket(int board_id, int channel_index, int field){
+		return (board_id * 2 + channel_index) * NR_FIELDS + field;
+	}
+
+	private void accumulate(int bucket, int min, int max, long sum, int count, int last){
+		if( counts[bucket] == 0 ){
+			active[active_count++] = bucket;
+			mins[bucket] = min;
+			maxs[bucket] = max;
+			sums[bucket] = sum;
+			counts[bucket] = count;
+		}
+		else{
+			if( min < mins[bucket] ) mins[bucket] = min;
+			if( max > maxs[bucket] ) maxs[bucket] = max;
+			sums[bucket] += sum;
+			counts[bucket] += count;
+		}
+		lasts[bucket] = last;
+	}
+
+	/**
+	 * Closes the current interval if the time has moved past it
+	 */
+	private void advance(long now_ns){
+		if( !started ){
+			interval_start_ns = now_ns;
+			started = true;
+			return;
+		}
+		if( now_ns - interval_start_ns < interval_ns ) return;
+
+		long interval_end_ns = interval_start_ns + interval_ns;
+		output.clear();
+		output.setInterval(interval_start_ns, interval_end_ns);
+		for(int i=0; i<active_count; i++){
+			int bucket = active[i];
+			output.add(bucket / NR_FIELDS / 2, (bucket / NR_FIELDS) % 2, bucket % NR_FIELDS,
+					mins[bucket], maxs[bucket], sums[bucket], counts[bucket], lasts[bucket]);
+			counts[bucket] = 0;
+		}
+		active_count = 0;
+
+		// If we were starved for more than an interval then skip ahead instead of emitting empty ones
+		interval_start_ns = interval_end_ns;
+		if( now_ns - interval_start_ns >= interval_ns ){
+			interval_start_ns = now_ns;
+		}
+
+		synchronized (latest) {
+			latest.copyFrom(output);
+		}
+		if( listener != null ) listener.handleDecimatedBatch(output);
+	}
+
+	/**
+	 * Copies the last completed interval, thread safe
+	 * @param out
+	 * @return out
+	 */
+	public DecimatedBatch copyLatest(DecimatedBatch out){
+		if( out == null ) out = new DecimatedBatch(latest.size());
+		synchronized (latest) {
+			out.copyFrom(latest);
+		}
+		return out;
+	}
+}
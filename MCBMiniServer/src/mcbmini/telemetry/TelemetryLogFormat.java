@@ -0,0 +1,149 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import java.nio.ByteBuffer;
+
+import mcbmini.MCBMiniConstants.ChannelParameter;
+import mcbmini.MCBMiniConstants.Error;
+
+/**
+ * Constants and encoding helpers shared by the telemetry log writer and reader.
+ *
+ * The data file starts with a header (magic, version, wall clock time of the log start) followed by blocks.
+ * Every block is a small block header followed by the deflated block body. The body holds every stream
+ * that had samples during the block, each stored column by column: the timestamps (microseconds since the
+ * log start) as delta-of-delta zigzag varints and then the values as delta zigzag varints.
+ * The index file holds one (first timestamp, last timestamp, offset) record per block.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class TelemetryLogFormat {
+
+	public static final int FILE_MAGIC = 0x4D43544C;		// "MCTL"
+	public static final int BLOCK_MAGIC = 0x424C4B31;		// "BLK1"
+	public static final int VERSION = 1;
+
+	public static final int FILE_HEADER_SIZE = 4 + 4 + 8;
+	public static final int BLOCK_HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+	public static final int INDEX_RECORD_SIZE = 8 + 8 + 8;
+
+	public static final String INDEX_SUFFIX = ".idx";
+
+	private static final ChannelParameter[] PARAMETERS = ChannelParameter.values();
+	private static final Error[] ERRORS = Error.values();
+
+	/*
+	 * Every stream is identified by (board id, channel, field) packed into an int
+	 * The fields are the ChannelParameters, followed by the error counts
+	 */
+	public static final int NR_FIELDS = PARAMETERS.length + ERRORS.length;
+	public static final int MAX_STREAMS = 128 * 2 * NR_FIELDS;
+
+	public static int streamKey(int board_id, int channel_index, int field){
+		return (board_id * 2 + channel_index) * NR_FIELDS + field;
+	}
+
+	public static int parameterField(ChannelParameter param){
+		return param.ordinal();
+	}
+
+	public static int errorField(Error error){
+		return PARAMETERS.length + error.ordinal();
+	}
+
+	public static int boardId(int stream_key){
+		return stream_key / NR_FIELDS / 2;
+	}
+
+	public static int channelIndex(int stream_key){
+		return (stream_key / NR_FIELDS) % 2;
+	}
+
+	public static String fieldName(int stream_key){
+		int field = stream_key % NR_FIELDS;
+		if( field < PARAMETERS.length ) return PARAMETERS[field].name();
+		return "ERROR_"+ERRORS[field - PARAMETERS.length].name();
+	}
+
+	public static int zigzag(int value){
+		return (value << 1) ^ (value >> 31);
+	}
+
+	public static int unzigzag(int value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static long zigzag(long value){
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unzigzag(long value){
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public static void putVarint(ByteBuffer bb, int value){
+		while( (value & ~0x7F) != 0 ){
+			bb.put( (byte)((value & 0x7F) | 0x80) );
+			value >>>= 7;
+		}
+		bb.put( (byte)value );
+	}
+
+	public static void putVarlong(ByteBuffer bb, long value){
+		while( (value & ~0x7FL) != 0 ){
+			bb.put( (byte)((value & 0x7F) | 0x80) );
+			value >>>= 7;
+		}
+		bb.put( (byte)value );
+	}
+
+	public static int getVarint(ByteBuffer bb){
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do{
+			b = bb.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while( (b & 0x80) != 0 );
+		return value;
+	}
+
+	public static long getVarlong(ByteBuffer bb){
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do{
+			b = bb.get();
+			value |= (long)(b & 0x7F) << shift;
+			shift += 7;
+		} while( (b & 0x80) != 0 );
+		return value;
+	}
+}
@@ -0,0 +1,348 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.utils.Log;
+
+/**
+ * Reads logs written by TelemetryLogWriter, uses the index file to seek to a time range and streams
+ * the samples out block by block (see TelemetryLogFormat).
+ *
+ * Usage: java mcbmini.telemetry.TelemetryLogReader [-from seconds] [-to seconds] log_file > out.csv
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class TelemetryLogReader {
+
+	private static final Channel[] CHANNELS = Channel.values();
+
+	private final RandomAccessFile data;
+	private final long start_epoch_ms;
+
+	private int nr_blocks;
+	private long[] block_first_us;
+	private long[] block_last_us;
+	private long[] block_offsets;
+
+	/*
+	 * Decoded contents of the last block read
+	 */
+	private final Inflater inflater = new Inflater();
+	private byte[] compressed_bytes = new byte[1 << 16];
+	private byte[] raw_bytes = new byte[1 << 16];
+	private int nr_streams;
+	private int[] stream_keys = new int[64];
+	private int[] stream_starts = new int[65];
+	private long[] ts_us = new long[1 << 12];
+	private int[] values = new int[1 << 12];
+
+	public TelemetryLogReader(File file) throws IOException{
+		data = new RandomAccessFile(file, "r");
+		if( data.readInt() != TelemetryLogFormat.FILE_MAGIC ) throw new IOException("Not a telemetry log: "+file);
+		int version = data.readInt();
+		if( version != TelemetryLogFormat.VERSION ) throw new IOException("Unsupported telemetry log version: "+version);
+		start_epoch_ms = data.readLong();
+
+		File index_file = new File(file.getPath()+TelemetryLogFormat.INDEX_SUFFIX);
+		if( index_file.exists() ) readIndex(index_file);
+		else rebuildIndex();
+	}
+
+	private void readIndex(File index_file) throws IOException{
+		RandomAccessFile index = new RandomAccessFile(index_file, "r");
+		try {
+			nr_blocks = (int)(index.length() / TelemetryLogFormat.INDEX_RECORD_SIZE);
+			block_first_us = new long[nr_blocks];
+			block_last_us = new long[nr_blocks];
+			block_offsets = new long[nr_blocks];
+			for(int i=0; i<nr_blocks; i++){
+				block_first_us[i] = index.readLong();
+				block_last_us[i] = index.readLong();
+				block_offsets[i] = index.readLong();
+			}
+		} finally {
+			index.close();
+		}
+	}
+
+	/**
+	 * If the index got lost we walk the block headers instead
+	 */
+	private void rebuildIndex() throws IOException{
+		Log.println("TelemetryLogReader: No index file found, scanning log", true);
+		block_first_us = new long[16];
+		block_last_us = new long[16];
+		block_offsets = new long[16];
+		nr_blocks = 0;
+
+		long offset = TelemetryLogFormat.FILE_HEADER_SIZE;
+		while( offset + TelemetryLogFormat.BLOCK_HEADER_SIZE <= data.length() ){
+			data.seek(offset);
+			if( data.readInt() != TelemetryLogFormat.BLOCK_MAGIC ) break;
+			data.readInt();
+			long first = data.readLong();
+			long last = data.readLong();
+			int compressed_length = data.readInt();
+
+			if( nr_blocks == block_offsets.length ){
+				block_first_us = grow(block_first_us);
+				block_last_us = grow(block_last_us);
+				block_offsets = grow(block_offsets);
+			}
+			block_first_us[nr_blocks] = first;
+			block_last_us[nr_blocks] = last;
+			block_offsets[nr_blocks] = offset;
+			nr_blocks++;
+			offset += TelemetryLogFormat.BLOCK_HEADER_SIZE + compressed_length;
+		}
+	}
+
+	private static long[] grow(long[] in){
+		long[] out = new long[in.length*2];
+		System.arraycopy(in, 0, out, 0, in.length);
+		return out;
+	}
+
+	/**
+	 * @return System.currentTimeMillis() at the time the log was started, all timestamps are relative to this
+	 */
+	public long getStartEpochMillis(){
+		return start_epoch_ms;
+	}
+
+	public int getNumberOfBlocks(){
+		return nr_blocks;
+	}
+
+	/**
+	 * @param from_us
+	 * @return the index of the first block that could hold samples at or after from_us
+	 */
+	public int findBlock(long from_us){
+		for(int i=0; i<nr_blocks; i++){
+			if( block_last_us[i] >= from_us ) return i;
+		}
+		return nr_blocks;
+	}
+
+	/**
+	 * Decompresses and decodes a block, after this the stream accessors return the contents of this block
+	 * @param block
+	 * @throws IOException
+	 */
+	public void readBlock(int block) throws IOException{
+		data.seek(block_offsets[block]);
+		if( data.readInt() != TelemetryLogFormat.BLOCK_MAGIC ) throw new IOException("Corrupt block "+block);
+		int streams = data.readInt();
+		data.readLong();
+		data.readLong();
+		int compressed_length = data.readInt();
+		int raw_length = data.readInt();
+
+		if( compressed_bytes.length < compressed_length ) compressed_bytes = new byte[compressed_length];
+		if( raw_bytes.length < raw_length ) raw_bytes = new byte[raw_length];
+		data.readFully(compressed_bytes, 0, compressed_length);
+
+		inflater.reset();
+		inflater.setInput(compressed_bytes, 0, compressed_length);
+		try {
+			int n = 0;
+			while( n < raw_length && !inflater.finished() ){
+				n += inflater.inflate(raw_bytes, n, raw_length - n);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt block "+block+": "+e.getMessage());
+		}
+
+		ByteBuffer bb = ByteBuffer.wrap(raw_bytes, 0, raw_length);
+		if( stream_keys.length < streams ){
+			stream_keys = new int[streams];
+			stream_starts = new int[streams+1];
+		}
+		nr_streams = streams;
+		int total = 0;
+		for(int s=0; s<streams; s++){
+			stream_keys[s] = TelemetryLogFormat.getVarint(bb);
+			int size = TelemetryLogFormat.getVarint(bb);
+			stream_starts[s] = total;
+			if( ts_us.length < total + size ){
+				int capacity = Math.max(ts_us.length*2, total+size);
+				long[] new_ts = new long[capacity];
+				int[] new_values = new int[capacity];
+				System.arraycopy(ts_us, 0, new_ts, 0, total);
+				System.arraycopy(values, 0, new_values, 0, total);
+				ts_us = new_ts;
+				values = new_values;
+			}
+
+			long prev_ts = 0, prev_delta = 0;
+			for(int j=0; j<size; j++){
+				long delta = prev_delta + TelemetryLogFormat.unzigzag(TelemetryLogFormat.getVarlong(bb));
+				prev_ts += delta;
+				prev_delta = delta;
+				ts_us[total+j] = prev_ts;
+			}
+			int prev_value = 0;
+			for(int j=0; j<size; j++){
+				prev_value += TelemetryLogFormat.unzigzag(TelemetryLogFormat.getVarint(bb));
+				values[total+j] = prev_value;
+			}
+			total += size;
+		}
+		stream_starts[streams] = total;
+	}
+
+	public int getNumberOfStreams(){ return nr_streams; }
+	public int getStreamKey(int stream){ return stream_keys[stream]; }
+	public int getStreamSize(int stream){ return stream_starts[stream+1] - stream_starts[stream]; }
+	public long getTimestampMicros(int stream, int i){ return ts_us[stream_starts[stream]+i]; }
+	public int getValue(int stream, int i){ return values[stream_starts[stream]+i]; }
+
+	/**
+	 * Streams all samples in [from_us, to_us] out as CSV, in time order within each block
+	 * @param out
+	 * @param from_us
+	 * @param to_us
+	 * @throws IOException
+	 */
+	public void exportCsv(Writer out, long from_us, long to_us) throws IOException{
+		out.write("epoch_ms,board,channel,field,value\n");
+		StringBuilder line = new StringBuilder(64);
+		int[] heap = new int[0];
+		int[] heads = new int[0];
+
+		for(int block=findBlock(from_us); block<nr_blocks && block_first_us[block] <= to_us; block++){
+			readBlock(block);
+			if( heads.length < nr_streams ){
+				heads = new int[nr_streams];
+				heap = new int[nr_streams];
+			}
+
+			// Merge the streams of the block by timestamp using a min heap of stream indices
+			int heap_size = 0;
+			for(int s=0; s<nr_streams; s++){
+				heads[s] = 0;
+				if( getStreamSize(s) > 0 ) heap[heap_size++] = s;
+			}
+			for(int i=heap_size/2-1; i>=0; i--) siftDown(heap, heap_size, i, heads);
+
+			while( heap_size > 0 ){
+				int stream = heap[0];
+				int i = heads[stream]++;
+				long ts = getTimestampMicros(stream, i);
+
+				if( heads[stream] == getStreamSize(stream) ) heap[0] = heap[--heap_size];
+				siftDown(heap, heap_size, 0, heads);
+
+				if( ts < from_us || ts > to_us ) continue;
+
+				int key = stream_keys[stream];
+				long fraction = ts % 1000;
+				line.setLength(0);
+				line.append(start_epoch_ms + ts / 1000).append('.');
+				if( fraction < 100 ) line.append('0');
+				if( fraction < 10 ) line.append('0');
+				line.append(fraction).append(',');
+				line.append(TelemetryLogFormat.boardId(key)).append(',');
+				line.append(CHANNELS[TelemetryLogFormat.channelIndex(key)].name()).append(',');
+				line.append(TelemetryLogFormat.fieldName(key)).append(',');
+				line.append(getValue(stream, i)).append('\n');
+				out.append(line);
+			}
+		}
+		out.flush();
+	}
+
+	private void siftDown(int[] heap, int heap_size, int i, int[] heads){
+		while(true){
+			int smallest = i;
+			int left = 2*i+1;
+			int right = left+1;
+			if( left < heap_size && headTimestamp(heap[left], heads) < headTimestamp(heap[smallest], heads) ) smallest = left;
+			if( right < heap_size && headTimestamp(heap[right], heads) < headTimestamp(heap[smallest], heads) ) smallest = right;
+			if( smallest == i ) return;
+			int tmp = heap[i];
+			heap[i] = heap[smallest];
+			heap[smallest] = tmp;
+			i = smallest;
+		}
+	}
+
+	private long headTimestamp(int stream, int[] heads){
+		return getTimestampMicros(stream, heads[stream]);
+	}
+
+	public void close() throws IOException{
+		inflater.end();
+		data.close();
+	}
+
+	public static void main(String[] args) {
+		long from_us = Long.MIN_VALUE;
+		long to_us = Long.MAX_VALUE;
+		String path = null;
+
+		for(int i=0; i<args.length; i++){
+			if( args[i].equals("-from") && args.length > i+1 ){
+				from_us = (long)(Double.parseDouble(args[++i]) * 1.0E6);
+			}
+			else if( args[i].equals("-to") && args.length > i+1 ){
+				to_us = (long)(Double.parseDouble(args[++i]) * 1.0E6);
+			}
+			else{
+				path = args[i];
+			}
+		}
+
+		if( path == null ){
+			Log.println("Usage: java mcbmini.telemetry.TelemetryLogReader [-from seconds] [-to seconds] log_file");
+			System.exit(0);
+		}
+
+		try {
+			TelemetryLogReader reader = new TelemetryLogReader(new File(path));
+			Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+			reader.exportCsv(out, from_us, to_us);
+			reader.close();
+		} catch (IOException e) {
+			Log.println("Can't read telemetry log: "+e.getMessage(), true);
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,366 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.Error;
+import mcbmini.utils.Log;
+
+/**
+ * Writes telemetry batches into an append-only, block compressed, columnar log (see TelemetryLogFormat).
+ * Subscribe it to the server for the fields that should be logged, e.g.:
+ * 	server.subscribe(null, EnumSet.of(ChannelParameter.TARGET_TICK, ChannelParameter.ACTUAL_TICK, ChannelParameter.MOTOR_CURRENT), writer);
+ *
+ * Samples are collected into primitive column buffers on the update thread, full blocks are encoded,
+ * compressed and written by a background thread so the update thread never waits for the disk.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class TelemetryLogWriter implements TelemetryListener {
+
+	public static final int DEFAULT_BLOCK_SAMPLES = 1 << 16;
+	public static final long DEFAULT_BLOCK_DURATION_MS = 10000;
+	public static final int DEFAULT_ERROR_POLL_TICKS = 50;
+
+	private static final Channel[] CHANNELS = Channel.values();
+	private static final Error[] ERRORS = Error.values();
+
+	private final FileOutputStream data_out;
+	private final FileOutputStream index_out;
+	private final FileChannel data_channel;
+	private final long start_ns;
+
+	private final int block_samples;
+	private final long block_duration_us;
+
+	private final List<MCBMiniBoard> boards;
+	private final int error_poll_ticks;
+	private final int[] last_error_counts;
+	private long batch_count;
+
+	private BlockBuffer current;
+	private BlockBuffer spare;
+	private BlockBuffer pending;
+
+	private boolean closing;
+	private final Thread writer_thread;
+
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+	private ByteBuffer raw_buffer = ByteBuffer.allocate(1 << 20);
+	private byte[] compressed_bytes = new byte[1 << 20];
+	private final ByteBuffer header_buffer = ByteBuffer.allocate(TelemetryLogFormat.BLOCK_HEADER_SIZE);
+	private final ByteBuffer index_buffer = ByteBuffer.allocate(TelemetryLogFormat.INDEX_RECORD_SIZE);
+
+	public TelemetryLogWriter(File file) throws IOException{
+		this(file, null);
+	}
+
+	/**
+	 * @param file
+	 * @param boards if not null then the error counts of these boards are polled and logged when they change
+	 * @throws IOException
+	 */
+	public TelemetryLogWriter(File file, List<MCBMiniBoard> boards) throws IOException{
+		this(file, boards, DEFAULT_BLOCK_SAMPLES, DEFAULT_BLOCK_DURATION_MS, DEFAULT_ERROR_POLL_TICKS);
+	}
+
+	public TelemetryLogWriter(File file, List<MCBMiniBoard> boards, int block_samples, long block_duration_ms, int error_poll_ticks) throws IOException{
+		if( block_samples <= 0 ) throw new IllegalArgumentException("Block size must be > 0");
+		if( error_poll_ticks <= 0 ) throw new IllegalArgumentException("Error poll period must be > 0");
+		this.block_samples = block_samples;
+		this.block_duration_us = block_duration_ms * 1000;
+		this.boards = boards;
+		this.error_poll_ticks = error_poll_ticks;
+		this.last_error_counts = boards == null ? null : new int[TelemetryLogFormat.MAX_STREAMS];
+
+		start_ns = System.nanoTime();
+		data_out = new FileOutputStream(file);
+		index_out = new FileOutputStream(file.getPath()+TelemetryLogFormat.INDEX_SUFFIX);
+		data_channel = data_out.getChannel();
+
+		ByteBuffer header = ByteBuffer.allocate(TelemetryLogFormat.FILE_HEADER_SIZE);
+		header.putInt(TelemetryLogFormat.FILE_MAGIC);
+		header.putInt(TelemetryLogFormat.VERSION);
+		header.putLong(System.currentTimeMillis());
+		header.flip();
+		data_channel.write(header);
+
+		current = new BlockBuffer();
+		spare = new BlockBuffer();
+
+		writer_thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "TelemetryLogWriter."+file.getName());
+		writer_thread.setDaemon(true);
+		writer_thread.start();
+	}
+
+	@Override
+	public void handleTelemetryBatch(TelemetryBatch batch) {
+		BlockBuffer block = current;
+		for(int i=0; i<batch.size(); i++){
+			int key = TelemetryLogFormat.streamKey(batch.getBoardId(i), batch.getChannelIndex(i), TelemetryLogFormat.parameterField(batch.getField(i)));
+			block.add(key, (batch.getTimestampNanos(i) - start_ns) / 1000, batch.getValue(i));
+		}
+
+		batch_count++;
+		if( boards != null && batch_count % error_poll_ticks == 0 ){
+			pollErrors(block, (batch.getTickTimestampNanos() - start_ns) / 1000);
+		}
+
+		if( block.total_samples >= block_samples || block.last_ts_us - block.first_ts_us >= block_duration_us ){
+			swapBlocks();
+		}
+	}
+
+	private void pollErrors(BlockBuffer block, long ts_us){
+		for (MCBMiniBoard board : boards) {
+			for(int e=0; e<ERRORS.length; e++){
+				Error error = ERRORS[e];
+				for(int c=0; c<CHANNELS.length; c++){
+					// Errors that aren't channel specific are kept on channel A
+					if( !error.channel_specific && c > 0 ) break;
+					int key = TelemetryLogFormat.streamKey(board.getId(), c, TelemetryLogFormat.errorField(error));
+					int count = board.getErrorCount(error, CHANNELS[c]);
+					if( count != last_error_counts[key] ){
+						last_error_counts[key] = count;
+						block.add(key, ts_us, count);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands the current block to the writer thread, if it is still busy with the last one we keep on filling the current one
+	 */
+	private synchronized void swapBlocks(){
+		if( spare == null ) return;
+		pending = current;
+		current = spare;
+		spare = null;
+		notifyAll();
+	}
+
+	private void writeLoop(){
+		while(true){
+			BlockBuffer block;
+			synchronized (this) {
+				while( pending == null && !closing ){
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if( pending == null ) return;
+				block = pending;
+			}
+
+			try {
+				writeBlock(block);
+			} catch (IOException e) {
+				Log.println("TelemetryLogWriter: Can't write block: "+e.getMessage(), true);
+			}
+			block.clear();
+
+			synchronized (this) {
+				pending = null;
+				spare = block;
+				notifyAll();
+			}
+		}
+	}
+
+	private void writeBlock(BlockBuffer block) throws IOException{
+		if( block.total_samples == 0 ) return;
+
+		// Every sample is at most two varlongs, plus a little per stream
+		int needed = block.total_samples * 15 + block.active_count * 16;
+		if( raw_buffer.capacity() < needed ) raw_buffer = ByteBuffer.allocate(needed);
+		raw_buffer.clear();
+		block.encode(raw_buffer);
+		raw_buffer.flip();
+
+		deflater.reset();
+		deflater.setInput(raw_buffer.array(), 0, raw_buffer.limit());
+		deflater.finish();
+		int compressed_length = 0;
+		while( !deflater.finished() ){
+			if( compressed_length == compressed_bytes.length ){
+				byte[] bigger = new byte[compressed_bytes.length * 2];
+				System.arraycopy(compressed_bytes, 0, bigger, 0, compressed_length);
+				compressed_bytes = bigger;
+			}
+			compressed_length += deflater.deflate(compressed_bytes, compressed_length, compressed_bytes.length - compressed_length);
+		}
+
+		long offset = data_channel.position();
+
+		header_buffer.clear();
+		header_buffer.putInt(TelemetryLogFormat.BLOCK_MAGIC);
+		header_buffer.putInt(block.active_count);
+		header_buffer.putLong(block.first_ts_us);
+		header_buffer.putLong(block.last_ts_us);
+		header_buffer.putInt(compressed_length);
+		header_buffer.putInt(raw_buffer.limit());
+		header_buffer.flip();
+		while( header_buffer.hasRemaining() ) data_channel.write(header_buffer);
+		data_out.write(compressed_bytes, 0, compressed_length);
+
+		index_buffer.clear();
+		index_buffer.putLong(block.first_ts_us);
+		index_buffer.putLong(block.last_ts_us);
+		index_buffer.putLong(offset);
+		index_out.write(index_buffer.array(), 0, TelemetryLogFormat.INDEX_RECORD_SIZE);
+	}
+
+	/**
+	 * Writes out what is left and closes the files, unsubscribe from the server before calling this
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+		synchronized (this) {
+			while( pending != null ){
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+			closing = true;
+			notifyAll();
+		}
+		try {
+			writer_thread.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		writeBlock(current);
+		current.clear();
+		deflater.end();
+		data_out.close();
+		index_out.close();
+	}
+
+	/**
+	 * The column buffers of the block being filled, the streams are created as samples for them show up
+	 */
+	private static class BlockBuffer{
+		private final StreamBuffer[] streams = new StreamBuffer[TelemetryLogFormat.MAX_STREAMS];
+		private final int[] active_keys = new int[TelemetryLogFormat.MAX_STREAMS];
+		private int active_count;
+		private int total_samples;
+		private long first_ts_us, last_ts_us;
+
+		public void add(int key, long ts_us, int value){
+			StreamBuffer stream = streams[key];
+			if( stream == null ){
+				stream = new StreamBuffer();
+				streams[key] = stream;
+			}
+			if( stream.size == 0 ) active_keys[active_count++] = key;
+			stream.add(ts_us, value);
+
+			if( total_samples == 0 ){
+				first_ts_us = ts_us;
+				last_ts_us = ts_us;
+			}
+			else{
+				first_ts_us = Math.min(first_ts_us, ts_us);
+				last_ts_us = Math.max(last_ts_us, ts_us);
+			}
+			total_samples++;
+		}
+
+		public void encode(ByteBuffer bb){
+			for(int i=0; i<active_count; i++){
+				int key = active_keys[i];
+				StreamBuffer stream = streams[key];
+				TelemetryLogFormat.putVarint(bb, key);
+				TelemetryLogFormat.putVarint(bb, stream.size);
+
+				// Timestamp column
+				long prev_ts = 0, prev_delta = 0;
+				for(int j=0; j<stream.size; j++){
+					long delta = stream.ts_us[j] - prev_ts;
+					TelemetryLogFormat.putVarlong(bb, TelemetryLogFormat.zigzag(delta - prev_delta));
+					prev_ts = stream.ts_us[j];
+					prev_delta = delta;
+				}
+
+				// Value column
+				int prev_value = 0;
+				for(int j=0; j<stream.size; j++){
+					TelemetryLogFormat.putVarint(bb, TelemetryLogFormat.zigzag(stream.values[j] - prev_value));
+					prev_value = stream.values[j];
+				}
+			}
+		}
+
+		public void clear(){
+			for(int i=0; i<active_count; i++){
+				streams[active_keys[i]].size = 0;
+			}
+			active_count = 0;
+			total_samples = 0;
+		}
+	}
+
+	private static class StreamBuffer{
+		private long[] ts_us = new long[256];
+		private int[] values = new int[256];
+		private int size;
+
+		public void add(long ts, int value){
+			if( size == values.length ){
+				long[] new_ts = new long[size*2];
+				int[] new_values = new int[size*2];
+				System.arraycopy(ts_us, 0, new_ts, 0, size);
+				System.arraycopy(values, 0, new_values, 0, size);
+				ts_us = new_ts;
+				values = new_values;
+			}
+			ts_us[size] = ts;
+			values[size] = value;
+			size++;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.telemetry;
+
+import java.util.Collection;
+import java.util.EnumSet;
+
+import mcbmini.MCBMiniBoard;
+import mcbmini.MCBMiniConstants.Channel;
+import mcbmini.MCBMiniConstants.ChannelParameter;
+
+/**
+ * A registered interest in a set of feedback fields for a set of board channels.
+ * The channel selection is resolved into a lookup table when the subscription is created.
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class TelemetrySubscription {
+
+	private static final int MAX_IDS = 128;
+
+	private final TelemetryListener listener;
+	private final boolean[] selected_channels;
+	private final boolean[] selected_fields;
+	private final TelemetryBatch batch;
+
+	private volatile boolean cancelled;
+	private volatile RuntimeException failure;
+
+	public TelemetrySubscription(Collection<MCBMiniBoard> boards, ChannelSelector selector, EnumSet<ChannelParameter> fields, TelemetryListener listener){
+		if( listener == null ) throw new IllegalArgumentException("Telemetry listener can't be null");
+		this.listener = listener;
+
+		selected_channels = new boolean[MAX_IDS * 2];
+		int nr_selected = 0;
+		for (MCBMiniBoard board : boards) {
+			for (Channel channel : Channel.values()) {
+				if( selector == null || selector.select(board, channel) ){
+					selected_channels[board.getId() * 2 + channel.index] = true;
+					nr_selected++;
+				}
+			}
+		}
+
+		selected_fields = new boolean[ChannelParameter.values().length];
+		int nr_fields = 0;
+		for (ChannelParameter field : fields) {
+			selected_fields[field.ordinal()] = true;
+			nr_fields++;
+		}
+
+		batch = new TelemetryBatch(Math.max(16, 2 * nr_selected * nr_fields));
+	}
+
+	/**
+	 * Stops delivery to the listener, the server drops the subscription on its next tick
+	 */
+	public void cancel(){
+		cancelled = true;
+	}
+
+	public boolean isCancelled(){
+		return cancelled;
+	}
+
+	/**
+	 * @return what the listener threw if that is why the subscription got cancelled, null otherwise
+	 */
+	public RuntimeException getFailure(){
+		return failure;
+	}
+
+	public TelemetryListener getListener(){
+		return listener;
+	}
+
+	public boolean accepts(int board_id, Channel channel, ChannelParameter field){
+		return selected_fields[field.ordinal()] && selected_channels[board_id * 2 + channel.index];
+	}
+
+	public void record(int board_id, Channel channel, ChannelParameter field, int value, long timestamp_ns){
+		if( accepts(board_id, channel, field) ){
+			batch.add(board_id, channel, field, value, timestamp_ns);
+		}
+	}
+
+	/**
+	 * Hands the batch for this tick to the listener if anything arrived and clears it for the next tick.
+	 * A listener that throws gets its subscription cancelled, it runs on the update thread and must not take it down.
+	 * @return false if the listener threw
+	 */
+	public boolean deliver(long tick_sequence, long tick_timestamp_ns){
+		if( batch.size() == 0 ) return true;
+		batch.setTick(tick_sequence, tick_timestamp_ns);
+		try {
+			listener.handleTelemetryBatch(batch);
+			return true;
+		} catch (RuntimeException e) {
+			failure = e;
+			cancelled = true;
+			return false;
+		} finally {
+			batch.clear();
+		}
+	}
+}
@@ -0,0 +1,277 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.utils;
+
+import java.io.PrintStream;
+import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import mcbmini.utils.Log.LogPolicy;
+
+/**
+ * A logger for the hot paths (update thread, RX decoding). Logging an event only writes a binary record
+ * (timestamp, event id and up to three primitive arguments) into a preallocated ring, a background thread turns
+ * the records into text. Nothing is allocated and nothing blocks on the logging thread, if the ring is full
+ * the record is dropped and counted.
+ *
+ * Every event type has a rate limit, events over the limit within a second are only counted and the count
+ * is printed with the next event of the type that gets through. The output follows Log's format and LogPolicy.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class AsyncLog {
+
+	/**
+	 * Turns an argument into text, for arguments that aren't plain numbers
+	 */
+	public interface ArgFormatter{
+		public void append(StringBuilder sb, long value);
+	}
+
+	/**
+	 * A type of log event, define them once as constants
+	 */
+	public static class Event{
+		private final int id;
+		private final String[] parts;
+		private final boolean error;
+		private final int max_per_second;
+		private final ArgFormatter[] formatters;
+
+		// Rate limiting, approximate under contention which is fine for logging
+		private volatile long window_second = -1;
+		private final AtomicInteger window_count = new AtomicInteger();
+		private final AtomicLong suppressed = new AtomicLong();
+
+		private Event(int id, String format, boolean error, int max_per_second, ArgFormatter[] formatters){
+			this.id = id;
+			this.parts = format.split("\\{\\}", -1);
+			this.error = error;
+			this.max_per_second = max_per_second;
+			this.formatters = formatters;
+			if( parts.length - 1 > MAX_ARGS ) throw new IllegalArgumentException("At most "+MAX_ARGS+" arguments per event: "+format);
+		}
+
+		private boolean admit(long now_ns){
+			if( max_per_second <= 0 ) return true;
+			long second = now_ns / 1000000000L;
+			if( second != window_second ){
+				window_second = second;
+				window_count.set(0);
+			}
+			if( window_count.incrementAndGet() > max_per_second ){
+				suppressed.incrementAndGet();
+				return false;
+			}
+			return true;
+		}
+	}
+
+	private static final int MAX_ARGS = 3;
+	private static final int CAPACITY = 4096;
+	private static final int MASK = CAPACITY - 1;
+	private static final int MAX_EVENTS = 256;
+
+	private static final Event[] events = new Event[MAX_EVENTS];
+	private static int nr_events;
+
+	// The ring, a slot is readable once its sequence has been published
+	private static final long[] times = new long[CAPACITY];
+	private static final int[] ids = new int[CAPACITY];
+	private static final long[] args = new long[CAPACITY * MAX_ARGS];
+	private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+	private static final AtomicLong head = new AtomicLong();
+	private static volatile long tail;
+	private static final AtomicLong dropped = new AtomicLong();
+
+	private static volatile Thread formatter;
+
+	static{
+		for(int i=0; i<CAPACITY; i++) published.set(i, -1);
+	}
+
+	/**
+	 * @param format the message, every {} is replaced by an argument
+	 * @param error if this goes to the error stream
+	 * @param max_per_second how many of these get printed per second at most, 0 for no limit
+	 */
+	public static Event event(String format, boolean error, int max_per_second){
+		return event(format, error, max_per_second, null);
+	}
+
+	/**
+	 * @param formatters one per argument, null entries (or a null array) print the argument as a number
+	 */
+	public static synchronized Event event(String format, boolean error, int max_per_second, ArgFormatter[] formatters){
+		if( nr_events == MAX_EVENTS ) throw new IllegalStateException("Too many log event types");
+		Event event = new Event(nr_events, format, error, max_per_second, formatters);
+		events[nr_events++] = event;
+		return event;
+	}
+
+	public static void log(Event event){
+		append(event, 0, 0, 0);
+	}
+
+	public static void log(Event event, long a){
+		append(event, a, 0, 0);
+	}
+
+	public static void log(Event event, long a, long b){
+		append(event, a, b, 0);
+	}
+
+	public static void log(Event event, long a, long b, long c){
+		append(event, a, b, c);
+	}
+
+	private static void append(Event event, long a, long b, long c){
+		LogPolicy policy = Log.getLogPolicy();
+		if( policy == LogPolicy.NOTHING || (policy == LogPolicy.ONLY_ERRORS && !event.error) ) return;
+		if( !event.admit(System.nanoTime()) ) return;
+
+		long seq;
+		while(true){
+			seq = head.get();
+			if( seq - tail >= CAPACITY ){
+				dropped.incrementAndGet();
+				return;
+			}
+			if( head.compareAndSet(seq, seq+1) ) break;
+		}
+
+		int slot = (int)(seq & MASK);
+		times[slot] = System.currentTimeMillis();
+		ids[slot] = event.id;
+		args[slot*MAX_ARGS] = a;
+		args[slot*MAX_ARGS+1] = b;
+		args[slot*MAX_ARGS+2] = c;
+		published.lazySet(slot, seq);
+
+		if( formatter == null ) startFormatter();
+	}
+
+	private static synchronized void startFormatter(){
+		if( formatter != null ) return;
+		formatter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(true){
+					if( drain() == 0 ) LockSupport.parkNanos(10000000L);
+				}
+			}
+		}, "MCBMiniAsyncLog");
+		formatter.setDaemon(true);
+		formatter.start();
+
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}));
+	}
+
+	/**
+	 * Prints everything that has been logged so far, normally the background thread does this
+	 */
+	public static void flush(){
+		drain();
+	}
+
+	private static final StringBuilder sb = new StringBuilder(256);
+	private static final Calendar calendar = Calendar.getInstance();
+	private static long last_dropped;
+
+	/**
+	 * @return the number of records printed
+	 */
+	private static synchronized int drain(){
+		int count = 0;
+		long t = tail;
+		while( t < head.get() ){
+			int slot = (int)(t & MASK);
+			if( published.get(slot) != t ) break;	// Claimed but not written yet
+
+			print(events[ids[slot]], times[slot], args[slot*MAX_ARGS], args[slot*MAX_ARGS+1], args[slot*MAX_ARGS+2]);
+			t++;
+			tail = t;
+			count++;
+		}
+
+		long d = dropped.get();
+		if( d != last_dropped ){
+			sb.setLength(0);
+			appendTime(System.currentTimeMillis());
+			sb.append("Log buffer overflow, dropped ").append(d - last_dropped).append(" messages");
+			System.err.println(sb);
+			last_dropped = d;
+		}
+		return count;
+	}
+
+	private static void print(Event event, long time, long a, long b, long c){
+		sb.setLength(0);
+		appendTime(time);
+		String[] parts = event.parts;
+		for(int i=0; i<parts.length; i++){
+			sb.append(parts[i]);
+			if( i < parts.length-1 ){
+				long value = i == 0 ? a : (i == 1 ? b : c);
+				ArgFormatter f = event.formatters != null && i < event.formatters.length ? event.formatters[i] : null;
+				if( f != null ) f.append(sb, value);
+				else sb.append(value);
+			}
+		}
+		long suppressed = event.suppressed.getAndSet(0);
+		if( suppressed > 0 ) sb.append(" (").append(suppressed).append(" similar messages suppressed)");
+
+		PrintStream out = event.error ? System.err : System.out;
+		out.println(sb);
+	}
+
+	private static void appendTime(long time){
+		calendar.setTimeInMillis(time);
+		sb.append(calendar.get(Calendar.HOUR_OF_DAY));
+		sb.append(":");
+		sb.append(calendar.get(Calendar.MINUTE));
+		sb.append(":");
+		sb.append(calendar.get(Calendar.SECOND));
+		sb.append("-MCBMini: ");
+	}
+
+	/**
+	 * @return the number of records that were dropped because the ring was full
+	 */
+	public static long getDroppedCount(){
+		return dropped.get();
+	}
+}
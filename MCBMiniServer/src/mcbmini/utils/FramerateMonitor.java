@@ -33,7 +33,9 @@ import java.util.TimerTask;
  * add one of these to the update list of a system whose framerate you want to monitor.
  *
  * @author mattb
+ * @deprecated spawns a timer thread per instance and synchronizes on every update, use {@link RateMeter}
  */
+@Deprecated
 public class FramerateMonitor
 {
 	protected Timer timer;
@@ -0,0 +1,410 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import mcbmini.MCBMiniConstants.Command;
+import mcbmini.MCBMiniSerialManager;
+
+/**
+ * Offline analyzer for raw captures of MCBMini bus traffic (the bytes exactly as they were on the wire).
+ * The capture is memory mapped region by region so that captures of any size can be streamed through
+ * the decoder without copying them onto the heap.
+ *
+ * Raw captures carry no timestamps, so all timing (inter-frame gaps, bus utilization) is derived from the
+ * byte position in the capture at the configured baud rate.
+ *
+ * Host request-for-response frames have the top bit of the command byte set and carry no data, while on frames from
+ * the boards that bit only flags a pending message. Which one applies depends on where the capture was taken, see
+ * CaptureDirection.
+ *
+ * Usage: java mcbmini.utils.ProtocolAnalyzer [-baud 115200] [-interval 1000] [-direction mixed] capture_file
+ *
+ * @author agent
+ * @date Oct 18, 2026
+ */
+public class ProtocolAnalyzer {
+
+	public enum CaptureDirection{
+		// Only what the host sent, a flagged command byte always means a request without data
+		HOST_TO_BOARD,
+		// Only what the boards sent, a flagged command byte means the board has a message and the data is there
+		BOARD_TO_HOST,
+		// Both directions on the shared bus, a flagged frame is taken as a request if it checks out without data
+		MIXED
+	}
+
+	private static final int DEFAULT_BAUD_RATE = 115200;
+	private static final int DEFAULT_INTERVAL_MS = 1000;
+
+	// 8 data bits plus start and stop bit
+	private static final int BITS_PER_BYTE = 10;
+
+	// How much of the capture we map at a time, the mapping moves forward through the file
+	private static final long MAP_REGION_SIZE = 1L << 28;
+
+	private static final int MAX_FRAME_SIZE = 1024;
+	private static final int NR_IDS = 128;
+	private static final int NR_COMMANDS = 128;
+
+	private static final int[] GAP_BUCKET_LIMITS = new int[]{ 0, 3, 7, 15, 31, Integer.MAX_VALUE };
+
+	private final int baud_rate;
+	private final long bytes_per_interval;
+	private final CaptureDirection direction;
+
+	/*
+	 * Decoder state
+	 */
+	private final byte[] frame = new byte[MAX_FRAME_SIZE];
+	private int frame_length;
+	private boolean next_byte_should_be_transformed;
+	private long frame_wire_bytes;
+	private int frame_escape_bytes;
+
+	/*
+	 * Statistics
+	 */
+	private long total_wire_bytes;
+	private long escape_bytes;
+	private long frames_decoded;
+	private long frame_wire_bytes_total;
+	private long padding_bytes;
+	private long bad_checksums;
+	private long packet_stubs;
+	private long improper_sizes;
+	private long unknown_commands;
+	private long overflows;
+
+	private final long[] command_counts = new long[NR_IDS * NR_COMMANDS];
+	private final long[] bad_checksum_counts = new long[NR_IDS];
+	private final long[] escapes_per_command = new long[NR_COMMANDS];
+
+	private final long[] gap_buckets = new long[GAP_BUCKET_LIMITS.length];
+	private long gap_min = Long.MAX_VALUE;
+	private long gap_max;
+
+	private long interval_index;
+	private long interval_frames;
+	private long interval_frame_bytes;
+	private PrintStream interval_out;
+
+	public ProtocolAnalyzer(int baud_rate, int interval_ms){
+		this(baud_rate, interval_ms, CaptureDirection.MIXED);
+	}
+
+	public ProtocolAnalyzer(int baud_rate, int interval_ms, CaptureDirection direction){
+		if( baud_rate <= 0 ) throw new IllegalArgumentException("Baud rate must be > 0");
+		if( interval_ms <= 0 ) throw new IllegalArgumentException("Interval must be > 0");
+		if( direction == null ) throw new IllegalArgumentException("Capture direction can't be null");
+		this.baud_rate = baud_rate;
+		this.direction = direction;
+		this.bytes_per_interval = Math.max(1, (long)baud_rate * interval_ms / (1000L * BITS_PER_BYTE));
+	}
+
+	/**
+	 * Streams a whole capture file through the decoder
+	 * @param file
+	 * @param interval_out where to print the per interval utilization lines, null to skip them
+	 * @throws IOException
+	 */
+	public void analyze(File file, PrintStream interval_out) throws IOException{
+		this.interval_out = interval_out;
+		if( interval_out != null ){
+			interval_out.println("time_s\tframes\tutilization_%");
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			for(long offset=0; offset<size; offset+=MAP_REGION_SIZE){
+				long length = Math.min(MAP_REGION_SIZE, size-offset);
+				MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				int limit = (int)length;
+				for(int i=0; i<limit; i++){
+					handleByte( region.get(i) );
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		flushInterval();
+	}
+
+	/**
+	 * Feeds a single wire byte into the decoder, this mirrors what MCBMiniSerialManager does with incoming bytes
+	 * @param in
+	 */
+	public void handleByte(byte in){
+		long interval = total_wire_bytes / bytes_per_interval;
+		if( interval != interval_index ){
+			flushInterval();
+			interval_index = interval;
+		}
+
+		total_wire_bytes++;
+		frame_wire_bytes++;
+
+		if( in == MCBMiniSerialManager.HEADER_BYTE ){
+			handleFrameEnd();
+			frame_length = 0;
+			frame_wire_bytes = 0;
+			frame_escape_bytes = 0;
+			next_byte_should_be_transformed = false;
+			return;
+		}
+
+		if( in == MCBMiniSerialManager.ESCAPE_BYTE ){
+			escape_bytes++;
+			frame_escape_bytes++;
+			next_byte_should_be_transformed = true;
+			return;
+		}
+
+		if( next_byte_should_be_transformed ){
+			in ^= 1;
+			next_byte_should_be_transformed = false;
+		}
+
+		if( frame_length == MAX_FRAME_SIZE ){
+			overflows++;
+			padding_bytes += frame_length;
+			frame_length = 0;
+		}
+		frame[frame_length++] = in;
+	}
+
+	private void handleFrameEnd(){
+		if( frame_length < 3 ){
+			packet_stubs++;
+			padding_bytes += frame_length;
+			return;
+		}
+
+		byte checksum_rcv = frame[frame_length-1];
+		int length = frame_length-1;
+
+		int cmd_byte = frame[length-2] & 0x7F;
+		int id = frame[length-1] & 0x7F;
+
+		Command command = Command.getForCmdId(cmd_byte);
+		if( command == null ){
+			unknown_commands++;
+			padding_bytes += frame_length;
+			return;
+		}
+
+		// Leading zero padding doesn't change the checksum, so a request would also check out with the full data size
+		int data_bytes = command.datasize.number_of_bytes;
+		if( (frame[length-2] & 0x80) != 0 ){
+			if( direction == CaptureDirection.HOST_TO_BOARD ) data_bytes = 0;
+			else if( direction == CaptureDirection.MIXED && checksum(length-2, length) == checksum_rcv ) data_bytes = 0;
+		}
+
+		int expected_number_of_bytes = 2 + data_bytes;
+		if( length < expected_number_of_bytes ){
+			improper_sizes++;
+			padding_bytes += frame_length;
+			return;
+		}
+
+		byte checksum_calculated = checksum(length-expected_number_of_bytes, length);
+
+		// Everything in front of the frame itself is zero padding or line noise between frames
+		int gap = length - expected_number_of_bytes;
+		padding_bytes += gap;
+
+		if( checksum_calculated != checksum_rcv ){
+			bad_checksums++;
+			bad_checksum_counts[id]++;
+			return;
+		}
+
+		frames_decoded++;
+		command_counts[id * NR_COMMANDS + cmd_byte]++;
+		escapes_per_command[cmd_byte] += frame_escape_bytes;
+
+		long wire_bytes = frame_wire_bytes - gap;
+		frame_wire_bytes_total += wire_bytes;
+		interval_frames++;
+		interval_frame_bytes += wire_bytes;
+
+		gap_min = Math.min(gap_min, gap);
+		gap_max = Math.max(gap_max, gap);
+		for(int i=0; i<GAP_BUCKET_LIMITS.length; i++){
+			if( gap <= GAP_BUCKET_LIMITS[i] ){
+				gap_buckets[i]++;
+				break;
+			}
+		}
+	}
+
+	private byte checksum(int from, int to){
+		byte checksum = 0;
+		for(int i=from; i<to; i++){
+			checksum += frame[i];
+		}
+		return checksum;
+	}
+
+	private void flushInterval(){
+		if( interval_out != null && (interval_frames > 0 || interval_frame_bytes > 0) ){
+			double time_s = interval_index * bytes_per_interval * (double)BITS_PER_BYTE / baud_rate;
+			double utilization = 100.0 * interval_frame_bytes / bytes_per_interval;
+			interval_out.println(String.format("%.3f\t%d\t%.1f", time_s, interval_frames, utilization));
+		}
+		interval_frames = 0;
+		interval_frame_bytes = 0;
+	}
+
+	private double bytesToMs(double bytes){
+		return 1000.0 * bytes * BITS_PER_BYTE / baud_rate;
+	}
+
+	/**
+	 * Prints the summary of everything that has been decoded so far
+	 * @param out
+	 */
+	public void printReport(PrintStream out){
+		out.println("Capture: "+total_wire_bytes+" bytes, "+String.format("%.3f", bytesToMs(total_wire_bytes)/1000.0)+" s at "+baud_rate+" baud");
+		out.println("Frames decoded: "+frames_decoded);
+		out.println("Bad checksums: "+bad_checksums+", packet stubs: "+packet_stubs+", improper sizes: "+improper_sizes+", unknown commands: "+unknown_commands+", overflows: "+overflows);
+		out.println(String.format("Escape bytes: %d (%.2f%% of wire bytes)", escape_bytes, total_wire_bytes==0 ? 0.0 : 100.0*escape_bytes/total_wire_bytes));
+		out.println(String.format("Padding/gap bytes: %d (%.2f%% of wire bytes)", padding_bytes, total_wire_bytes==0 ? 0.0 : 100.0*padding_bytes/total_wire_bytes));
+		out.println(String.format("Bus utilization (frame bytes): %.2f%%", total_wire_bytes==0 ? 0.0 : 100.0*frame_wire_bytes_total/total_wire_bytes));
+
+		if( frames_decoded > 0 ){
+			out.println(String.format("Inter-frame gap: min %d bytes (%.3f ms), mean %.1f bytes (%.3f ms), max %d bytes (%.3f ms)",
+					gap_min, bytesToMs(gap_min),
+					(double)padding_bytes/frames_decoded, bytesToMs((double)padding_bytes/frames_decoded),
+					gap_max, bytesToMs(gap_max)));
+			int low = 0;
+			for(int i=0; i<GAP_BUCKET_LIMITS.length; i++){
+				String range = GAP_BUCKET_LIMITS[i]==Integer.MAX_VALUE ? low+"+" : (low==GAP_BUCKET_LIMITS[i] ? ""+low : low+"-"+GAP_BUCKET_LIMITS[i]);
+				out.println("\tgap "+range+" bytes: "+gap_buckets[i]);
+				low = GAP_BUCKET_LIMITS[i]+1;
+			}
+		}
+
+		out.println("Frames per board and command:");
+		for(int id=0; id<NR_IDS; id++){
+			for(int cmd=0; cmd<NR_COMMANDS; cmd++){
+				long count = command_counts[id * NR_COMMANDS + cmd];
+				if( count > 0 ){
+					out.println("\tid "+id+"\t"+Command.getForCmdId(cmd)+"\t"+count);
+				}
+			}
+			if( bad_checksum_counts[id] > 0 ){
+				out.println("\tid "+id+"\tBAD_CHECKSUM\t"+bad_checksum_counts[id]);
+			}
+		}
+
+		out.println("Escape bytes per command:");
+		for(int cmd=0; cmd<NR_COMMANDS; cmd++){
+			if( escapes_per_command[cmd] > 0 ){
+				out.println("\t"+Command.getForCmdId(cmd)+"\t"+escapes_per_command[cmd]);
+			}
+		}
+	}
+
+	private static void printHelp(){
+		Log.println("Usage: java mcbmini.utils.ProtocolAnalyzer [options] capture_file");
+		Log.println("options:");
+		Log.println("\t-baud rate (baud rate of the captured bus, default "+DEFAULT_BAUD_RATE+")");
+		Log.println("\t-interval ms (length of the bus utilization intervals, default "+DEFAULT_INTERVAL_MS+")");
+		Log.println("\t-direction tx|rx|mixed (which side of the bus the capture is from, default mixed)");
+		Log.println("\t-summary (only print the summary, skip the per interval utilization)");
+	}
+
+	public static void main(String[] args) {
+		int baud_rate = DEFAULT_BAUD_RATE;
+		int interval_ms = DEFAULT_INTERVAL_MS;
+		boolean only_summary = false;
+		CaptureDirection direction = CaptureDirection.MIXED;
+		String path = null;
+
+		for(int i=0; i<args.length; i++){
+			if( args[i].equals("-help") ){
+				printHelp();
+				System.exit(0);
+			}
+			else if( args[i].equals("-baud") && args.length > i+1 ){
+				baud_rate = Integer.parseInt(args[++i]);
+			}
+			else if( args[i].equals("-interval") && args.length > i+1 ){
+				interval_ms = Integer.parseInt(args[++i]);
+			}
+			else if( args[i].equals("-direction") && args.length > i+1 ){
+				String dir = args[++i];
+				if( dir.equals("tx") ) direction = CaptureDirection.HOST_TO_BOARD;
+				else if( dir.equals("rx") ) direction = CaptureDirection.BOARD_TO_HOST;
+				else if( dir.equals("mixed") ) direction = CaptureDirection.MIXED;
+				else{
+					printHelp();
+					System.exit(1);
+				}
+			}
+			else if( args[i].equals("-summary") ){
+				only_summary = true;
+			}
+			else{
+				path = args[i];
+			}
+		}
+
+		if( path == null ){
+			printHelp();
+			System.exit(0);
+		}
+
+		File file = new File(path);
+		if( !file.exists() ){
+			Log.println("Capture file \""+path+"\" cannot be found", true);
+			System.exit(1);
+		}
+
+		ProtocolAnalyzer analyzer = new ProtocolAnalyzer(baud_rate, interval_ms, direction);
+		long start = System.nanoTime();
+		try {
+			analyzer.analyze(file, only_summary ? null : System.out);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		long duration_ns = System.nanoTime() - start;
+
+		analyzer.printReport(System.out);
+		System.out.println(String.format("Analyzed in %.3f s (%.0fx real time)", duration_ns/1.0E9, analyzer.bytesToMs(analyzer.total_wire_bytes)*1.0E6/Math.max(1, duration_ns)));
+	}
+}
@@ -0,0 +1,375 @@
+/* Description and License
+ * MCBMini is a complete, open-source, flexible and scalable
+ * motor control scheme with board designs, firmware and host
+ * software.
+ * This is the host software for MCBMini called MCBMiniServer
+ * The MCBMini project can be downloaded from:
+ * http://code.google.com/p/mcbmini/
+ *
+ * (c) Sigurdur Orn Adalgeirsson (siggi@alum.mit.edu)
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation;
+ * version 2 of the License.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General
+ * Public License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+ * Boston, MA  02111-1307  USA
+ */
+
+package mcbmini.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the rate of an event and optionally the distribution of a value that comes with it (a latency, a period)
+ * over the last 1, 10 and 60 seconds.
+ *
+ * Events go into the current one second bucket of a ring of buckets through striped counters and CAS'ed min/max, so
+ * marking never locks and never allocates no matter how many threads do it. A single shared daemon thread rolls the
+ * buckets of all meters over once a second and computes the window snapshots at the same time, so reading the
+ * statistics is a volatile read and doesn't touch the threads that are being measured.
+ *
+ * Values go into a log-linear histogram with 8 sub-buckets per power of two, so percentiles are within ~6%,
+ * min and max are exact.
+ *
+ * @author agent
+ * @date Oct 19, 2026
+ */
+public class RateMeter {
+
+	public enum Window {
+		ONE_SECOND(1), TEN_SECONDS(10), SIXTY_SECONDS(60);
+
+		public final int seconds;
+
+		private Window(int seconds){
+			this.seconds = seconds;
+		}
+	}
+
+	/**
+	 * The statistics of one window, immutable
+	 */
+	public static class Snapshot{
+		public final long count;
+		public final float rate;
+		public final long value_count;
+		public final long min;
+		public final long max;
+		public final double mean;
+		public final long p50;
+		public final long p90;
+		public final long p99;
+
+		private Snapshot(long count, float rate, long value_count, long min, long max, double mean, long p50, long p90, long p99){
+			this.count = count;
+			this.rate = rate;
+			this.value_count = value_count;
+			this.min = min;
+			this.max = max;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+		}
+
+		@Override
+		public String toString() {
+			if( value_count == 0 ) return String.format("%.1f/s", rate);
+			return String.format("%.1f/s min:%d p50:%d p90:%d p99:%d max:%d", rate, min, p50, p90, p99, max);
+		}
+	}
+
+	private static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Values above 2^40 (18 minutes in ns) all land in the last slot
+	private static final int MAX_EXPONENT = 40;
+	private static final int HISTOGRAM_SIZE = SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+
+	// 60 completed seconds plus the one that is being filled
+	private static final int NR_BUCKETS = 61;
+
+	private static final class Bucket{
+		final LongAdder count = new LongAdder();
+		final LongAdder value_sum = new LongAdder();
+		final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+		final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+		final AtomicIntegerArray histogram;
+		long start_ns;
+		long end_ns;
+
+		Bucket(boolean track_values){
+			histogram = track_values ? new AtomicIntegerArray(HISTOGRAM_SIZE) : null;
+		}
+
+		void reset(long now_ns){
+			count.reset();
+			value_sum.reset();
+			min.set(Long.MAX_VALUE);
+			max.set(Long.MIN_VALUE);
+			if( histogram != null ){
+				for(int i=0; i<HISTOGRAM_SIZE; i++) histogram.set(i, 0);
+			}
+			start_ns = now_ns;
+			end_ns = 0;
+		}
+	}
+
+	private final String name;
+	private final Bucket[] buckets;
+	private volatile Bucket current;
+	private int current_index;
+	private int nr_completed;
+
+	private volatile Snapshot[] snapshots;
+	private volatile boolean closed;
+
+	// Only touched by the roll-over thread
+	private final int[] merged_histogram;
+
+	/**
+	 * A meter that only counts events
+	 */
+	public RateMeter(String name){
+		this(name, false);
+	}
+
+	/**
+	 * @param name
+	 * @param track_values whether the meter keeps a histogram of the values passed to record()
+	 */
+	public RateMeter(String name, boolean track_values){
+		this.name = name;
+		buckets = new Bucket[NR_BUCKETS];
+		for(int i=0; i<NR_BUCKETS; i++) buckets[i] = new Bucket(track_values);
+		merged_histogram = track_values ? new int[HISTOGRAM_SIZE] : null;
+
+		Snapshot[] empty = new Snapshot[Window.values().length];
+		for(int i=0; i<empty.length; i++) empty[i] = EMPTY;
+		snapshots = empty;
+
+		buckets[0].reset(System.nanoTime());
+		current = buckets[0];
+		register(this);
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * Counts one event
+	 */
+	public void mark(){
+		current.count.increment();
+	}
+
+	/**
+	 * Counts n events at once, for counting bytes and such
+	 */
+	public void mark(long n){
+		current.count.add(n);
+	}
+
+	/**
+	 * Counts one event with a value, the value is ignored unless the meter tracks values
+	 */
+	public void record(long value){
+		Bucket bucket = current;
+		bucket.count.increment();
+		if( bucket.histogram == null ) return;
+
+		bucket.value_sum.add(value);
+		bucket.histogram.incrementAndGet(indexFor(value));
+
+		AtomicLong min = bucket.min;
+		long m = min.get();
+		while( value < m && !min.compareAndSet(m, value) ) m = min.get();
+		AtomicLong max = bucket.max;
+		m = max.get();
+		while( value > m && !max.compareAndSet(m, value) ) m = max.get();
+	}
+
+	/**
+	 * @return the statistics of the window as of the last roll-over (at most a second old)
+	 */
+	public Snapshot getSnapshot(Window window){
+		return snapshots[window.ordinal()];
+	}
+
+	public float getRate(Window window){
+		return getSnapshot(window).rate;
+	}
+
+	/**
+	 * @return the number of events in the second that is currently being filled
+	 */
+	public long getCurrentCount(){
+		return current.count.sum();
+	}
+
+	/**
+	 * Stops the shared thread from rolling this meter over, the meter keeps its last snapshots
+	 */
+	public void close(){
+		closed = true;
+	}
+
+	/*
+	 * Roll-over, only called from the shared thread
+	 */
+	private void roll(long now_ns){
+		Bucket finished = buckets[current_index];
+		int next_index = (current_index + 1) % NR_BUCKETS;
+		Bucket next = buckets[next_index];
+		next.reset(now_ns);
+		current = next;
+		current_index = next_index;
+		finished.end_ns = now_ns;
+		if( nr_completed < NR_BUCKETS-1 ) nr_completed++;
+
+		Window[] windows = Window.values();
+		Snapshot[] snaps = new Snapshot[windows.length];
+		for(int i=0; i<windows.length; i++) snaps[i] = computeSnapshot(windows[i].seconds);
+		snapshots = snaps;
+	}
+
+	private Snapshot computeSnapshot(int seconds){
+		int n = Math.min(seconds, nr_completed);
+		if( n == 0 ) return EMPTY;
+
+		long count = 0, value_sum = 0;
+		long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+		long end_ns = 0, start_ns = 0;
+		if( merged_histogram != null ) Arrays.fill(merged_histogram, 0);
+
+		for(int k=1; k<=n; k++){
+			Bucket b = buckets[(current_index - k + NR_BUCKETS) % NR_BUCKETS];
+			if( k == 1 ) end_ns = b.end_ns;
+			start_ns = b.start_ns;
+			count += b.count.sum();
+			if( b.histogram != null ){
+				value_sum += b.value_sum.sum();
+				min = Math.min(min, b.min.get());
+				max = Math.max(max, b.max.get());
+				for(int i=0; i<HISTOGRAM_SIZE; i++) merged_histogram[i] += b.histogram.get(i);
+			}
+		}
+
+		float rate = end_ns > start_ns ? (float)(count * 1.0E9 / (end_ns - start_ns)) : 0;
+
+		long value_count = 0;
+		if( merged_histogram != null ){
+			for(int i=0; i<HISTOGRAM_SIZE; i++) value_count += merged_histogram[i];
+		}
+		if( value_count == 0 ) return new Snapshot(count, rate, 0, 0, 0, 0, 0, 0, 0);
+
+		return new Snapshot(count, rate, value_count, min, max, value_sum / (double)value_count,
+				clamp(percentile(value_count, 0.50), min, max),
+				clamp(percentile(value_count, 0.90), min, max),
+				clamp(percentile(value_count, 0.99), min, max));
+	}
+
+	private long percentile(long value_count, double p){
+		long rank = (long)Math.ceil(p * value_count);
+		long seen = 0;
+		for(int i=0; i<HISTOGRAM_SIZE; i++){
+			seen += merged_histogram[i];
+			if( seen >= rank ) return valueFor(i);
+		}
+		return valueFor(HISTOGRAM_SIZE-1);
+	}
+
+	private static long clamp(long value, long min, long max){
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/*
+	 * Log-linear histogram indexing, values below SUB_BUCKETS are exact
+	 */
+	private static int indexFor(long value){
+		if( value < SUB_BUCKETS ) return value < 0 ? 0 : (int)value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if( exponent > MAX_EXPONENT ) return HISTOGRAM_SIZE-1;
+		int sub = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS-1);
+		return SUB_BUCKETS * (exponent - SUB_BUCKET_BITS + 1) + sub;
+	}
+
+	/**
+	 * @return the middle of the value range of a histogram slot
+	 */
+	private static long valueFor(int index){
+		if( index < SUB_BUCKETS ) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		int sub = index % SUB_BUCKETS;
+		long lower = (long)(SUB_BUCKETS + sub) << shift;
+		return lower + ((1L << shift) >> 1);
+	}
+
+	/*
+	 * The shared roll-over thread
+	 */
+	private static final Object registry_lock = new Object();
+	private static final ArrayList<WeakReference<RateMeter>> meters = new ArrayList<WeakReference<RateMeter>>();
+	private static ScheduledExecutorService scheduler;
+
+	private static void register(RateMeter meter){
+		synchronized (registry_lock) {
+			meters.add(new WeakReference<RateMeter>(meter));
+			if( scheduler == null ){
+				scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "MCBMiniRateMeter");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				scheduler.scheduleAtFixedRate(new Runnable() {
+					@Override
+					public void run() {
+						rollAll();
+					}
+				}, 1, 1, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	private static void rollAll(){
+		long now_ns = System.nanoTime();
+		synchronized (registry_lock) {
+			for(int i=meters.size()-1; i>=0; i--){
+				RateMeter meter = meters.get(i).get();
+				if( meter == null || meter.closed ){
+					meters.remove(i);
+					continue;
+				}
+				try{
+					meter.roll(now_ns);
+				}
+				catch(RuntimeException e){
+					Log.println("RateMeter "+meter.name+" failed to roll over: "+e, true);
+				}
+			}
+		}
+	}
+}
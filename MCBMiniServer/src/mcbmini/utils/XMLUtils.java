@@ -39,6 +39,8 @@ import mcbmini.MCBMiniConstants.ExtraPinMode;
 import mcbmini.MCBMiniConstants.MotorPolarity;
 import mcbmini.MCBMiniConstants.ControlMode;
 import mcbmini.MCBMiniServer;
+import mcbmini.joints.Joint;
+import mcbmini.joints.JointGroup;
 
 import org.jdom.Attribute;
 import org.jdom.Document;
@@ -58,6 +60,7 @@ public class XMLUtils {
 		public ArrayList<MCBMiniBoard> boards;
 		public String port_name;
 		public int minimum_firmware_version;
+		public JointGroup joints;
 	}
 
 	public static Element loadXMLFile(String path) throws Exception{
@@ -147,9 +150,51 @@ public class XMLUtils {
 			res.boards.add(miniBoard);
 		}
 
+		// The joints are optional
+		res.joints = parseJoints(root.getChild("Joints"), res.boards);
+
 		return res;
 	}
 
+	/**
+	 * @param joints the <Joints> element, can be null
+	 * @param boards
+	 * @return the joints, empty if there is no <Joints> element
+	 */
+	public static JointGroup parseJoints(Element joints, List<MCBMiniBoard> boards){
+		ArrayList<Joint> list = new ArrayList<Joint>();
+		if( joints == null ) return new JointGroup(list);
+
+		for(Object o : joints.getChildren()){
+			Element joint = (Element)o;
+			if( !joint.getName().equals("Joint") ) throw new RuntimeException("XML error: Unexpected element "+joint.getName()+" in Joints");
+
+			String name = getRequired(joint, "name");
+			int board_id = Integer.parseInt(getRequired(joint, "board"));
+			MCBMiniConstants.Channel channel = getRequiredEnum(joint, "channel", MCBMiniConstants.Channel.values());
+
+			MCBMiniBoard board = null;
+			for (MCBMiniBoard b : boards) {
+				if( b.getId() == board_id ) board = b;
+			}
+			if( board == null ) throw new RuntimeException("XML error: Joint "+name+" refers to board "+board_id+" which isn't in MiniBoards");
+
+			double gear_ratio = Double.parseDouble(getRequired(joint, "gear_ratio"));
+			String optional = getOptional(joint, "offset");
+			int offset = optional == null ? 0 : Integer.parseInt(optional);
+			optional = getOptional(joint, "min");
+			double min = optional == null ? Double.NEGATIVE_INFINITY : Double.parseDouble(optional);
+			optional = getOptional(joint, "max");
+			double max = optional == null ? Double.POSITIVE_INFINITY : Double.parseDouble(optional);
+
+			// Only the limits that are given replace the board limits
+			Joint j = new Joint(name, board, channel, gear_ratio, offset, min, max);
+			j.applyLimits();
+			list.add(j);
+		}
+		return new JointGroup(list);
+	}
+
 
 	public static MCBMiniBoard parseMCBMiniBoard(Element board){
 		if( !board.getName().equals("MiniBoard") ) throw new RuntimeException("XML error: Can't parse parameters for MCBMiniBoard");